@@ -0,0 +1,144 @@
+package com.googlecode.jsonrpc4j;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.googlecode.jsonrpc4j.processor.JsonRpcServiceProcessor;
+
+/**
+ * Finds the classes {@link JsonRpcServiceProcessor} generated for a
+ * {@link JsonRpcService} interface, the {@link JsonRpcDispatcher} used
+ * by {@link JsonRpcServer} and the client stub used by {@link ProxyUtil}
+ * in place of a {@link java.lang.reflect.Proxy}.  They're looked for
+ * next to the interface, once per interface, and when they aren't
+ * there everything works through reflection as it always did.
+ */
+final class GeneratedServices {
+
+	private static final ClassValue<GeneratedServices> generatedServices
+		= new ClassValue<GeneratedServices>() {
+		@Override
+		protected GeneratedServices computeValue(Class<?> clazz) {
+			return new GeneratedServices(clazz);
+		}
+	};
+
+	private final JsonRpcDispatcher dispatcher;
+	private final Map<String, Integer> dispatchIndexes = new HashMap<String, Integer>();
+	private final Constructor<?> stubConstructor;
+
+	private GeneratedServices(Class<?> clazz) {
+		JsonRpcDispatcher dispatcher = null;
+		Constructor<?> stubConstructor = null;
+		if (clazz.isInterface() && clazz.isAnnotationPresent(JsonRpcService.class)) {
+			Class<?> dispatcherClass = findClass(clazz, JsonRpcServiceProcessor.DISPATCHER_SUFFIX);
+			if (dispatcherClass!=null) {
+				try {
+					dispatcher = JsonRpcDispatcher.class.cast(
+						dispatcherClass.getConstructor().newInstance());
+				} catch (Exception e) {
+					throw new IllegalStateException(
+						"Unable to create "+dispatcherClass.getName(), e);
+				}
+				String[] keys = dispatcher.getMethodKeys();
+				for (int i=0; i<keys.length; i++) {
+					dispatchIndexes.put(keys[i], i);
+				}
+			}
+			Class<?> stubClass = findClass(clazz, JsonRpcServiceProcessor.STUB_SUFFIX);
+			if (stubClass!=null) {
+				try {
+					stubConstructor = stubClass.getConstructor(InvocationHandler.class);
+				} catch (NoSuchMethodException e) {
+					throw new IllegalStateException(
+						"Unable to find the constructor of "+stubClass.getName(), e);
+				}
+			}
+		}
+		this.dispatcher			= dispatcher;
+		this.stubConstructor	= stubConstructor;
+	}
+
+	private static Class<?> findClass(Class<?> clazz, String suffix) {
+		try {
+			return Class.forName(clazz.getName()+suffix, true, clazz.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the generated {@link JsonRpcDispatcher} of the interface
+	 * declaring the given method, if it has one and it invokes the method.
+	 *
+	 * @param method the {@link Method}
+	 * @return the {@link JsonRpcDispatcher} or null
+	 */
+	static JsonRpcDispatcher getDispatcher(Method method) {
+		GeneratedServices generated = generatedServices.get(method.getDeclaringClass());
+		return (generated.dispatcher!=null && generated.dispatchIndexes.containsKey(methodKey(method)))
+			? generated.dispatcher
+			: null;
+	}
+
+	/**
+	 * Returns the index of the given method in the {@link JsonRpcDispatcher}
+	 * returned by {@link #getDispatcher(Method)}.
+	 *
+	 * @param method the {@link Method}
+	 * @return the index, or -1 if there isn't a dispatcher for it
+	 */
+	static int getDispatchIndex(Method method) {
+		Integer index = generatedServices.get(method.getDeclaringClass())
+			.dispatchIndexes.get(methodKey(method));
+		return (index!=null) ? index : -1;
+	}
+
+	/**
+	 * Creates an instance of the generated client stub of the
+	 * given interface, which passes every call to the given
+	 * {@link InvocationHandler} like a {@link java.lang.reflect.Proxy}.
+	 *
+	 * @param <T> the interface type
+	 * @param proxyInterface the interface
+	 * @param handler the {@link InvocationHandler}
+	 * @return the stub, or null if the interface doesn't have one
+	 */
+	static <T> T newStub(Class<T> proxyInterface, InvocationHandler handler) {
+		Constructor<?> constructor = generatedServices.get(proxyInterface).stubConstructor;
+		if (constructor==null) {
+			return null;
+		}
+		try {
+			return proxyInterface.cast(constructor.newInstance(handler));
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException(e.getTargetException());
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the key of the given method, as used by
+	 * {@link JsonRpcDispatcher#getMethodKeys()}.
+	 *
+	 * @param method the {@link Method}
+	 * @return the key
+	 */
+	static String methodKey(Method method) {
+		StringBuilder key = new StringBuilder(method.getName()).append('(');
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		for (int i=0; i<parameterTypes.length; i++) {
+			if (i>0) {
+				key.append(',');
+			}
+			key.append(parameterTypes[i].getTypeName());
+		}
+		return key.append(')').toString();
+	}
+
+}
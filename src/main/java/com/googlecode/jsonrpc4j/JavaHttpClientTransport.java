@@ -0,0 +1,497 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A {@link JsonRpcHttpTransport} on the {@link HttpClient} of Java 11
+ * and later, which keeps connections alive between calls and speaks
+ * HTTP/2 to servers that support it.  Over TLS HTTP/2 is negotiated
+ * with ALPN, over plain HTTP the first request asks for an h2c upgrade.
+ * Once a server has agreed, concurrent calls are multiplexed over a
+ * single connection, otherwise each concurrent call has its own pooled
+ * HTTP/1.1 connection (the size of that pool is bounded by the
+ * {@code jdk.httpclient.connectionPoolSize} system property).
+ * <p>
+ * Timeouts, proxies and TLS are configured on the {@link HttpClient},
+ * the corresponding settings of the {@link JsonRpcHttpClient} only
+ * apply to its built in {@link java.net.HttpURLConnection} transport.
+ * <p>
+ * A request that fits in a {@link #setChunkLength(int) chunk} is sent
+ * with a {@code Content-Length}.  A larger one is sent as soon as it
+ * outgrows the chunk, and the rest of its body is streamed to the
+ * {@link HttpClient} in a chunked body as it's serialized, through a
+ * few reused chunk buffers, so that sending a request of any size
+ * needs no more memory than those.  This doesn't depend on the
+ * {@link JsonRpcHttpClient#setStreamingRequests(boolean)} setting.
+ */
+public class JavaHttpClientTransport
+	implements JsonRpcHttpTransport {
+
+	private static final int CHUNKS			= 3;
+	private static final long POLL_MILLIS	= 100;
+
+	private static final ByteBuffer END		= ByteBuffer.allocate(0);
+	private static final ByteBuffer ABORTED	= ByteBuffer.allocate(0);
+
+	private final HttpClient httpClient;
+	private Duration requestTimeout = Duration.ofMinutes(2);
+	private int chunkLength			= 64 * 1024;
+
+	private final AtomicLong requests		= new AtomicLong();
+	private final AtomicLong http2Responses	= new AtomicLong();
+	private final AtomicLong failures		= new AtomicLong();
+	private final AtomicInteger inFlight	= new AtomicInteger();
+	private final AtomicInteger maxInFlight	= new AtomicInteger();
+
+	/**
+	 * Creates the transport on the given {@link HttpClient}.
+	 *
+	 * @param httpClient the {@link HttpClient}
+	 */
+	public JavaHttpClientTransport(HttpClient httpClient) {
+		this.httpClient = httpClient;
+	}
+
+	/**
+	 * Creates the transport on a new {@link HttpClient} that
+	 * prefers the given version of HTTP.
+	 *
+	 * @param version the HTTP version
+	 * @param connectionTimeoutMillis the connection timeout
+	 */
+	public JavaHttpClientTransport(HttpClient.Version version, int connectionTimeoutMillis) {
+		this(HttpClient.newBuilder()
+			.version(version)
+			.connectTimeout(Duration.ofMillis(connectionTimeoutMillis))
+			.followRedirects(HttpClient.Redirect.NORMAL)
+			.build());
+	}
+
+	/**
+	 * Creates the transport on a new {@link HttpClient} that
+	 * prefers HTTP/2.
+	 */
+	public JavaHttpClientTransport() {
+		this(HttpClient.Version.HTTP_2, 60 * 1000);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public InputStream post(URL url, Map<String, String> headers, RequestBody body)
+		throws IOException {
+
+		URI uri = toUri(url);
+		HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+			.timeout(requestTimeout);
+		for (Entry<String, String> entry : headers.entrySet()) {
+			request.setHeader(entry.getKey(), entry.getValue());
+		}
+
+		// write the request, which is sent once it's written
+		// or once it outgrows a chunk, whichever comes first
+		RequestStream ops = new RequestStream(request, uri);
+		boolean written = false;
+		try {
+			body.writeTo(ops);
+			ops.close();
+			written = true;
+		} finally {
+			if (!written) {
+				ops.abort();
+			}
+		}
+		HttpResponse<InputStream> response = ops.getResponse();
+		if (response.version()==HttpClient.Version.HTTP_2) {
+			http2Responses.incrementAndGet();
+		}
+
+		// read any error body so that the connection can be reused
+		if (response.statusCode()!=200) {
+			failures.incrementAndGet();
+			InputStream ips = response.body();
+			try {
+				byte[] discard = new byte[1024];
+				while (ips.read(discard)!=-1);
+			} finally {
+				ips.close();
+			}
+			throw new IOException(
+				"Server returned HTTP response code: "+response.statusCode()+" for URL: "+url);
+		}
+		return response.body();
+	}
+
+	/**
+	 * Opens connections to the server ahead of the first calls
+	 * with as many concurrent body-less requests.  Any status the
+	 * server answers these with is fine, they're only sent to set up
+	 * the connections (and to have the h2c upgrade done, if the
+	 * server supports it).
+	 *
+	 * @param url the URL of the server
+	 * @param connections the number of connections
+	 * @throws IOException on error
+	 */
+	public void preconnect(URL url, int connections)
+		throws IOException {
+		HttpRequest request = HttpRequest.newBuilder(toUri(url))
+			.timeout(requestTimeout)
+			.method("OPTIONS", HttpRequest.BodyPublishers.noBody())
+			.build();
+		List<CompletableFuture<HttpResponse<Void>>> responses
+			= new ArrayList<CompletableFuture<HttpResponse<Void>>>();
+		for (int i=0; i<connections; i++) {
+			responses.add(httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()));
+		}
+		for (CompletableFuture<HttpResponse<Void>> response : responses) {
+			try {
+				response.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while connecting to "+url);
+			} catch (ExecutionException e) {
+				throw new IOException("Unable to connect to "+url, e.getCause());
+			}
+		}
+	}
+
+	private CompletableFuture<HttpResponse<InputStream>> sendAsync(HttpRequest request) {
+		requests.incrementAndGet();
+		int current = inFlight.incrementAndGet();
+		int max = maxInFlight.get();
+		while (current>max && !maxInFlight.compareAndSet(max, current)) {
+			max = maxInFlight.get();
+		}
+		return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+	}
+
+	private HttpResponse<InputStream> await(
+		CompletableFuture<HttpResponse<InputStream>> response, URI uri)
+		throws IOException {
+		try {
+			return response.get();
+		} catch (InterruptedException e) {
+			failures.incrementAndGet();
+			response.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while calling "+uri);
+		} catch (CancellationException e) {
+			failures.incrementAndGet();
+			throw new IOException("The call to "+uri+" was aborted", e);
+		} catch (ExecutionException e) {
+			failures.incrementAndGet();
+			if (IOException.class.isInstance(e.getCause())) {
+				throw IOException.class.cast(e.getCause());
+			}
+			throw new IOException("Unable to call "+uri, e.getCause());
+		} finally {
+			inFlight.decrementAndGet();
+		}
+	}
+
+	private static URI toUri(URL url)
+		throws IOException {
+		try {
+			return url.toURI();
+		} catch (URISyntaxException e) {
+			throw new IOException("Invalid URL "+url, e);
+		}
+	}
+
+	/**
+	 * The body of a request.  It holds up to a chunk, and once the
+	 * body outgrows that it sends the request and hands the chunks
+	 * to the {@link HttpClient} as they fill up, through a queue of
+	 * full chunks and a queue of free ones.  The writer gives up when
+	 * the call is over before the body is, and the {@link HttpClient}
+	 * fails the call when the writer gives up.
+	 */
+	private final class RequestStream
+		extends OutputStream {
+
+		private final HttpRequest.Builder request;
+		private final URI uri;
+		private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<ByteBuffer>(CHUNKS);
+		private final BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<ByteBuffer>(CHUNKS+1);
+		private ByteBuffer chunk = ByteBuffer.allocate(chunkLength);
+		private CompletableFuture<HttpResponse<InputStream>> response;
+		private HttpResponse<InputStream> result;
+		private boolean completed;
+		private boolean closed;
+
+		RequestStream(HttpRequest.Builder request, URI uri) {
+			this.request	= request;
+			this.uri		= uri;
+		}
+
+		@Override
+		public void write(int b)
+			throws IOException {
+			if (!chunk.hasRemaining()) {
+				sendChunk();
+			}
+			chunk.put((byte)b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len)
+			throws IOException {
+			while (len>0) {
+				if (!chunk.hasRemaining()) {
+					sendChunk();
+				}
+				int n = Math.min(len, chunk.remaining());
+				chunk.put(b, off, n);
+				off += n;
+				len -= n;
+			}
+		}
+
+		/**
+		 * Sends the request if it fits in a chunk, or ends its body.
+		 */
+		@Override
+		public void close()
+			throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			if (response==null) {
+				response = sendAsync(request
+					.POST(HttpRequest.BodyPublishers.ofByteArray(chunk.array(), 0, chunk.position()))
+					.build());
+			} else {
+				chunk.flip();
+				put(chunk);
+				put(END);
+			}
+		}
+
+		/**
+		 * Hands the full chunk over, sending the request first if it
+		 * hasn't been sent yet, and takes a free one to carry on with.
+		 */
+		private void sendChunk()
+			throws IOException {
+			if (response==null) {
+				for (int i=1; i<CHUNKS; i++) {
+					free.add(ByteBuffer.allocate(chunkLength));
+				}
+				response = sendAsync(request
+					.POST(HttpRequest.BodyPublishers.ofInputStream(new Supplier<InputStream>() {
+						private final AtomicBoolean supplied = new AtomicBoolean();
+						public InputStream get() {
+							if (supplied.compareAndSet(false, true)) {
+								return new ChunkInputStream();
+							}
+							return new InputStream() {
+								@Override
+								public int read()
+									throws IOException {
+									throw new IOException("A streamed request body can't be sent again");
+								}
+							};
+						}
+					}))
+					.build());
+			}
+			chunk.flip();
+			put(chunk);
+			try {
+				ByteBuffer next = free.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				while (next==null) {
+					checkResponse();
+					next = free.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				}
+				chunk = next;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while sending a request to "+uri);
+			}
+		}
+
+		private void put(ByteBuffer buffer)
+			throws IOException {
+			try {
+				while (!full.offer(buffer, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+					checkResponse();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while sending a request to "+uri);
+			}
+		}
+
+		/**
+		 * Fails the writer when the call is over, as nothing
+		 * reads the rest of the body then.
+		 */
+		private void checkResponse()
+			throws IOException {
+			if (response.isDone()) {
+				getResponse().body().close();
+				throw new IOException("The server answered before the request to "+uri+" was sent");
+			}
+		}
+
+		/**
+		 * Waits for the response, once the request has been sent.
+		 * @return the response
+		 * @throws IOException on error
+		 */
+		HttpResponse<InputStream> getResponse()
+			throws IOException {
+			if (!completed) {
+				completed = true;
+				result = await(response, uri);
+			}
+			return result;
+		}
+
+		/**
+		 * Fails a streamed request whose body couldn't be written.
+		 */
+		void abort() {
+			if (response==null || completed) {
+				return;
+			}
+			full.clear();
+			full.offer(ABORTED);
+			response.cancel(true);
+			try {
+				getResponse().body().close();
+			} catch (IOException e) {
+				// the call failed, as it should
+			}
+		}
+
+		/**
+		 * The body as the {@link HttpClient} reads it, giving the
+		 * chunks back to the writer once they've been read.
+		 */
+		private final class ChunkInputStream
+			extends InputStream {
+
+			private ByteBuffer current;
+
+			@Override
+			public int read()
+				throws IOException {
+				byte[] b = new byte[1];
+				return (read(b, 0, 1)==-1) ? -1 : (b[0] & 0xff);
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len)
+				throws IOException {
+				while (current==null || !current.hasRemaining()) {
+					if (current==END) {
+						return -1;
+					} else if (current==ABORTED) {
+						throw new IOException("The request to "+uri+" was aborted");
+					} else if (current!=null) {
+						current.clear();
+						free.offer(current);
+					}
+					try {
+						current = full.take();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted while sending a request to "+uri);
+					}
+				}
+				int n = Math.min(len, current.remaining());
+				current.get(b, off, n);
+				return n;
+			}
+		}
+	}
+
+	/**
+	 * @return the {@link HttpClient}
+	 */
+	public HttpClient getHttpClient() {
+		return httpClient;
+	}
+
+	/**
+	 * Sets the size of the chunks that requests are sent in once
+	 * they outgrow one.  Up to {@value #CHUNKS} chunks are used to
+	 * send a request, the memory needed to send a request of any size.
+	 * @param chunkLength the chunk length in bytes
+	 */
+	public void setChunkLength(int chunkLength) {
+		this.chunkLength = chunkLength;
+	}
+
+	/**
+	 * @param requestTimeoutMillis the time to wait for a response
+	 */
+	public void setRequestTimeoutMillis(int requestTimeoutMillis) {
+		this.requestTimeout = Duration.ofMillis(requestTimeoutMillis);
+	}
+
+	/**
+	 * @return the number of requests sent
+	 */
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	/**
+	 * @return the number of responses that came over HTTP/2
+	 */
+	public long getHttp2ResponseCount() {
+		return http2Responses.get();
+	}
+
+	/**
+	 * @return the number of requests that failed
+	 */
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	/**
+	 * @return the number of requests waiting for a response
+	 */
+	public int getInFlightCount() {
+		return inFlight.get();
+	}
+
+	/**
+	 * @return the largest number of requests that
+	 * have been waiting for a response at once
+	 */
+	public int getMaxInFlightCount() {
+		return maxInFlight.get();
+	}
+
+}
@@ -0,0 +1,87 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Produces the request of a {@link JsonRpcHttpAsyncClient} call from
+ * the {@link PagedByteBuffer} the request was serialized into, handing
+ * the pages to the reactor's encoder as the connection takes them.
+ */
+class JsonRpcAsyncRequestProducer
+	implements HttpAsyncRequestProducer {
+
+	private final HttpHost target;
+	private final HttpEntityEnclosingRequest request;
+	private final PagedByteBuffer body;
+	private final Future<?> call;
+
+	/**
+	 * @param target the host the request is sent to
+	 * @param request the request, without an entity
+	 * @param body the serialized request body
+	 * @param call the call, the request isn't sent once it's done
+	 */
+	JsonRpcAsyncRequestProducer(
+		HttpHost target, HttpEntityEnclosingRequest request, PagedByteBuffer body, Future<?> call) {
+		this.target = target;
+		this.request = request;
+		this.body = body;
+		this.call = call;
+
+		// the entity only describes the body, for the headers
+		BasicHttpEntity entity = new BasicHttpEntity();
+		entity.setContentLength(body.length());
+		if (request.getFirstHeader("Content-Type")==null) {
+			entity.setContentType(ContentType.APPLICATION_JSON.toString());
+		}
+		request.setEntity(entity);
+	}
+
+	public HttpHost getTarget() {
+		return target;
+	}
+
+	public HttpRequest generateRequest() {
+		return request;
+	}
+
+	public void produceContent(ContentEncoder encoder, IOControl ioctrl)
+		throws IOException {
+
+		// an exchange aborted while it was getting its connection
+		// fails here, which closes the connection
+		if (call.isDone()) {
+			throw new IOException("Request was aborted");
+		}
+		body.writeTo(encoder);
+	}
+
+	public void requestCompleted(HttpContext context) {
+	}
+
+	public void failed(Exception e) {
+	}
+
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	public void resetRequest() {
+		body.rewind();
+	}
+
+	public void close() {
+	}
+
+}
@@ -0,0 +1,75 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Consumes the response of a {@link JsonRpcHttpAsyncClient} call by
+ * reading its body straight from the reactor's decoder into the pages
+ * of a {@link PagedByteBuffer}, which it's decoded from once it's
+ * complete.  Only the bodies of {@code 200} responses are kept, others
+ * are read through a small buffer and dropped.
+ */
+class JsonRpcAsyncResponseConsumer
+	extends AbstractAsyncResponseConsumer<HttpResponse> {
+
+	private static final int DISCARD_BUFFER_SIZE = 1024;
+
+	private HttpResponse response;
+	private PagedByteBuffer body;
+	private ByteBuffer discard;
+
+	@Override
+	protected void onResponseReceived(HttpResponse response) {
+		this.response = response;
+		if (response.getStatusLine().getStatusCode()==200) {
+			body = new PagedByteBuffer();
+		} else {
+			discard = ByteBuffer.allocate(DISCARD_BUFFER_SIZE);
+		}
+	}
+
+	@Override
+	protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+	}
+
+	@Override
+	protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl)
+		throws IOException {
+		if (body!=null) {
+			body.readFrom(decoder);
+			return;
+		}
+		while (decoder.read(discard)>0) {
+			discard.clear();
+		}
+	}
+
+	@Override
+	protected HttpResponse buildResult(HttpContext context) {
+		return response;
+	}
+
+	@Override
+	protected void releaseResources() {
+		discard = null;
+	}
+
+	/**
+	 * @return an {@link InputStream} over the body of a complete
+	 * {@code 200} response
+	 */
+	InputStream getContent() {
+		return body!=null ? body.getInputStream() : new PagedByteBuffer().getInputStream();
+	}
+
+}
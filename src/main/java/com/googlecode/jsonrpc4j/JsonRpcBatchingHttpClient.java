@@ -0,0 +1,282 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+/**
+ * A {@link JsonRpcHttpClient} that coalesces concurrent calls into
+ * JSON-RPC batch requests.  The first call of a batch waits up to
+ * {@link #setMaxBatchDelayMillis(long)} for other calls to join it,
+ * or until the batch holds {@link #setMaxBatchSize(int)} calls,
+ * then sends the batch on its own thread and hands every response
+ * to the call with the matching {@code id}.  Error responses the
+ * server couldn't give an {@code id}, such as to an invalid request,
+ * go to the calls left without a response.  Calls made while a
+ * batch is full start the next one, and calls with different extra
+ * headers are never batched together.
+ * <p>
+ * Since {@link ProxyUtil#createClientProxy(ClassLoader, Class, JsonRpcHttpClient)}
+ * goes through {@link #invoke(String, Object, Type, Map)}, proxies
+ * of this client batch their calls without further ado.
+ */
+public class JsonRpcBatchingHttpClient
+	extends JsonRpcHttpClient {
+
+	private final Object lock = new Object();
+	private final Map<Map<String, String>, Batch> openBatches
+		= new HashMap<Map<String, String>, Batch>();
+	private final AtomicLong nextId = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+
+	private int maxBatchSize = 100;
+	private long maxBatchDelayMillis = 5;
+
+	/**
+	 * Creates the client bound to the given {@code serviceUrl}.
+	 *
+	 * @see JsonRpcHttpClient#JsonRpcHttpClient(ObjectMapper, URL, Map)
+	 * @param mapper the {@link ObjectMapper} to use for json<->java conversion
+	 * @param serviceUrl the service end-point URL
+	 * @param headers the headers
+	 */
+	public JsonRpcBatchingHttpClient(ObjectMapper mapper, URL serviceUrl, Map<String, String> headers) {
+		super(mapper, serviceUrl, headers);
+	}
+
+	/**
+	 * Creates the client bound to the given {@code serviceUrl}.
+	 *
+	 * @param serviceUrl the service end-point URL
+	 */
+	public JsonRpcBatchingHttpClient(URL serviceUrl) {
+		this(new ObjectMapper(), serviceUrl, new HashMap<String, String>());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Object invoke(
+		String methodName, Object argument, Type returnType,
+		Map<String, String> extraHeaders)
+		throws Throwable {
+
+		// write the request up front
+		Call call = new Call(Long.toString(nextId.incrementAndGet()));
+		writeRequest(methodName, argument, call.request, call.id);
+
+		// join the open batch, or open one
+		Map<String, String> headers = new HashMap<String, String>(extraHeaders);
+		Batch batch;
+		boolean leader = false;
+		synchronized (lock) {
+			batch = openBatches.get(headers);
+			if (batch==null) {
+				batch = new Batch();
+				openBatches.put(headers, batch);
+				leader = true;
+			}
+			batch.calls.add(call);
+			if (batch.calls.size()>=maxBatchSize) {
+				close(headers, batch);
+			}
+		}
+
+		// the first call waits for the others and sends the batch
+		if (leader) {
+			boolean interrupted = false;
+			synchronized (lock) {
+				long deadline = System.currentTimeMillis()+maxBatchDelayMillis;
+				long remaining = maxBatchDelayMillis;
+				while (!batch.closed && remaining>0) {
+					try {
+						lock.wait(remaining);
+					} catch (InterruptedException e) {
+						// the others are counting on this batch being sent
+						interrupted = true;
+						break;
+					}
+					remaining = deadline-System.currentTimeMillis();
+				}
+				if (!batch.closed) {
+					close(headers, batch);
+				}
+			}
+			send(batch, headers);
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		// and everyone reads their own response
+		return readResponse(returnType, call.await());
+	}
+
+	private void close(Map<String, String> headers, Batch batch) {
+		openBatches.remove(headers);
+		batch.closed = true;
+		lock.notifyAll();
+	}
+
+	/**
+	 * Sends a batch and hands the responses to its calls.
+	 */
+	private void send(final Batch batch, Map<String, String> headers) {
+		batches.incrementAndGet();
+		try {
+			InputStream ips = post(new JsonRpcHttpTransport.RequestBody() {
+				public void writeTo(OutputStream ops)
+					throws IOException {
+
+					// a lone call goes out as a plain request
+					if (batch.calls.size()==1) {
+						batch.calls.get(0).request.writeTo(ops);
+						ops.flush();
+						return;
+					}
+					ops.write('[');
+					for (int i=0; i<batch.calls.size(); i++) {
+						if (i>0) {
+							ops.write(',');
+						}
+						batch.calls.get(i).request.writeTo(ops);
+					}
+					ops.write(']');
+					ops.flush();
+				}
+			}, headers);
+			JsonNode responses;
+			try {
+				responses = getObjectMapper().readTree(ips);
+			} finally {
+				ips.close();
+			}
+
+			// a single response (to a lone call, or a parse error) is everyone's
+			if (!responses.isArray()) {
+				for (Call call : batch.calls) {
+					call.complete(responses);
+				}
+				return;
+			}
+			Map<String, Call> calls = new LinkedHashMap<String, Call>();
+			for (Call call : batch.calls) {
+				calls.put(call.id, call);
+			}
+			List<JsonNode> uncorrelated = new ArrayList<JsonNode>();
+			for (JsonNode response : responses) {
+				JsonNode id = response.get("id");
+				Call call = (id!=null && !id.isNull()) ? calls.remove(id.asText()) : null;
+				if (call!=null) {
+					call.complete(response);
+				} else if (response.has("error")) {
+					uncorrelated.add(response);
+				}
+			}
+
+			// errors the server couldn't tie to a request, such as an
+			// invalid one, go to the calls left without a response if
+			// there's one for each, otherwise which error belongs to
+			// which call can't be told and they all fail with them
+			if (uncorrelated.size()==calls.size()) {
+				Iterator<JsonNode> errors = uncorrelated.iterator();
+				for (Call call : calls.values()) {
+					call.complete(errors.next());
+				}
+				return;
+			}
+			ArrayNode errors = uncorrelated.isEmpty()
+				? null : getObjectMapper().createArrayNode().addAll(uncorrelated);
+			for (Call call : calls.values()) {
+				call.fail(new JsonRpcClientException(0, "No response to request "+call.id+" in batch", errors));
+			}
+
+		} catch (Throwable t) {
+			for (Call call : batch.calls) {
+				call.fail(t);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of batches sent
+	 */
+	public long getBatchCount() {
+		return batches.get();
+	}
+
+	/**
+	 * @param maxBatchSize the largest number of calls sent in one batch
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * @param maxBatchDelayMillis how long the first call of a batch
+	 * waits for others to join it
+	 */
+	public void setMaxBatchDelayMillis(long maxBatchDelayMillis) {
+		this.maxBatchDelayMillis = maxBatchDelayMillis;
+	}
+
+	/**
+	 * Calls that are sent together.
+	 */
+	private static class Batch {
+		private final List<Call> calls = new ArrayList<Call>();
+		private boolean closed;
+	}
+
+	/**
+	 * A call waiting for its response.
+	 */
+	private static class Call {
+
+		private final String id;
+		private final ByteArrayOutputStream request = new ByteArrayOutputStream();
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile JsonNode response;
+		private volatile Throwable error;
+
+		private Call(String id) {
+			this.id = id;
+		}
+
+		private void complete(JsonNode response) {
+			this.response = response;
+			done.countDown();
+		}
+
+		private void fail(Throwable error) {
+			this.error = error;
+			done.countDown();
+		}
+
+		private JsonNode await()
+			throws Throwable {
+			done.await();
+			if (error!=null) {
+				throw error;
+			}
+			return response;
+		}
+	}
+
+}
@@ -0,0 +1,34 @@
+package com.googlecode.jsonrpc4j;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation for marking methods of a service interface whose
+ * results client proxies may cache, see {@link JsonRpcResultCache}.
+ * Only methods whose results depend on nothing but their arguments
+ * should be marked.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface JsonRpcCacheable {
+
+	/**
+	 * How long, in milliseconds, a result is served from the cache.
+	 */
+	long ttl();
+
+	/**
+	 * How long, in milliseconds, after the {@link #ttl()} a result
+	 * is still served while it's being refreshed in the background.
+	 */
+	long staleWhileRevalidate() default 0;
+
+	/**
+	 * The most results of the method that are kept.
+	 */
+	int maxEntries() default 1000;
+
+}
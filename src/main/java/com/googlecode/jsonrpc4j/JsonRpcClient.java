@@ -4,19 +4,27 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Type;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 
 /**
  * A JSON-RPC client.
@@ -27,10 +35,23 @@ public class JsonRpcClient {
 
 	private static final String JSON_RPC_VERSION = "2.0";
 
+	private static final SerializedString ID_KEY = new SerializedString("id");
+	private static final SerializedString JSONRPC_KEY = new SerializedString("jsonrpc");
+	private static final SerializedString METHOD_KEY = new SerializedString("method");
+	private static final SerializedString PARAMS_KEY = new SerializedString("params");
+	private static final SerializedString JSON_RPC_VERSION_VALUE = new SerializedString(JSON_RPC_VERSION);
+
+	private static final int MAX_CACHED_METHOD_NAMES = 1024;
+
 	private ObjectMapper mapper;
-	private Random random;
+	private final ObjectWriter paramWriter;
+	private final ResultReaderCache resultReaders;
+	private final ConcurrentMap<String, SerializedString> methodNames
+		= new ConcurrentHashMap<String, SerializedString>();
 	private RequestListener requestListener;
 	private ExceptionResolver exceptionResolver = DefaultExceptionResolver.INSTANCE;
+	private boolean streamingRequests = false;
+	private volatile JsonRpcResultCache resultCache;
 
 	/**
 	 * Creates a client that uses the given {@link ObjectMapper} to
@@ -39,7 +60,14 @@ public class JsonRpcClient {
 	 */
 	public JsonRpcClient(ObjectMapper mapper) {
 		this.mapper = mapper;
-		this.random = new Random(System.currentTimeMillis());
+
+		// flushing is left to the end, the stream may be sending chunks.
+		// Arguments are written by their runtime type with this one
+		// writer: writers for declared parameter types would only be
+		// usable for final types (like the server's result writers)
+		// and this API is only given a method name and its arguments.
+		this.paramWriter = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		this.resultReaders = new ResultReaderCache(mapper);
 	}
 
 	/**
@@ -77,7 +105,7 @@ public class JsonRpcClient {
 		OutputStream ops, InputStream ips)
 		throws Throwable {
 		return invokeAndReadResponse(
-			methodName, argument, returnType, ops, ips, random.nextLong()+"");
+			methodName, argument, returnType, ops, ips, nextId());
 	}
 
 	/**
@@ -169,7 +197,7 @@ public class JsonRpcClient {
 	public void invoke(
 		String methodName, Object argument, OutputStream ops)
 		throws IOException {
-		invoke(methodName, argument, ops, random.nextLong()+"");
+		invoke(methodName, argument, ops, nextId());
 	}
 
 	/**
@@ -237,8 +265,94 @@ public class JsonRpcClient {
 	public Object readResponse(Type returnType, InputStream ips)
 		throws Throwable {
 
-		// read the response
-		JsonNode response = mapper.readTree(new NoCloseInputStream(ips));
+		// a listener is shown the whole response as a tree
+		if (requestListener!=null) {
+			JsonNode response = mapper.readTree(new NoCloseInputStream(ips));
+			return readResponse(returnType, response);
+		}
+
+		// otherwise it's streamed
+		JsonParser parser = mapper.getFactory().createParser(new NoCloseInputStream(ips));
+		try {
+			return streamResponse(returnType, parser);
+		} finally {
+			parser.close();
+		}
+	}
+
+	/**
+	 * Reads a response without building a tree of it first, giving
+	 * the same results as {@link #readResponse(Type, JsonNode)}.  The
+	 * result is bound as it's read once the id has been, otherwise it's
+	 * buffered until the rest of the response shows it isn't an error.
+	 * @param returnType the expected return type
+	 * @param parser the {@link JsonParser} to read from
+	 * @return the object returned by the JSON-RPC response
+	 * @throws Throwable on error
+	 */
+	private Object streamResponse(Type returnType, JsonParser parser)
+		throws Throwable {
+
+		// bail on invalid response
+		JsonToken token = parser.nextToken();
+		if (token!=JsonToken.START_OBJECT) {
+			return readResponse(returnType,
+				token!=null ? mapper.<JsonNode>readTree(parser) : MissingNode.getInstance());
+		}
+
+		// everything but the result is read as a tree
+		ObjectNode jsonObject = mapper.createObjectNode();
+		Object result = null;
+		TokenBuffer bufferedResult = null;
+		while (parser.nextToken()==JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			token = parser.nextToken();
+			if (!name.equals("result")) {
+				jsonObject.set(name, mapper.<JsonNode>readTree(parser));
+
+			} else if (token==JsonToken.VALUE_NULL || isError(jsonObject)) {
+				parser.skipChildren();
+
+			} else if (returnType==null) {
+				LOGGER.warning(
+					"Server returned result but returnType is null");
+				parser.skipChildren();
+
+			// bind it now, or once we know it's not an error
+			} else if (jsonObject.has("id")) {
+				result = resultReaders.get(returnType).readValue(parser);
+			} else {
+				bufferedResult = new TokenBuffer(parser);
+				bufferedResult.copyCurrentStructure(parser);
+			}
+		}
+		if (LOGGER.isLoggable(Level.FINE)) {
+			LOGGER.log(Level.FINE, "JSON-PRC Response: "+jsonObject.toString()+" (result streamed)");
+		}
+
+		// detect errors
+		if (isError(jsonObject)) {
+			throw resolveException(jsonObject);
+		}
+
+		// convert the buffered result
+		if (bufferedResult!=null) {
+			return resultReaders.get(returnType).readValue(bufferedResult.asParser(mapper));
+		}
+		return result;
+	}
+
+	/**
+	 * Processes a JSON-RPC response that has already been read
+	 * from the server.
+	 *
+	 * @param returnType the expected return type
+	 * @param response the response
+	 * @return the object returned by the JSON-RPC response
+	 * @throws Throwable on error
+	 */
+	protected Object readResponse(Type returnType, JsonNode response)
+		throws Throwable {
 		if (LOGGER.isLoggable(Level.FINE)) {
 			LOGGER.log(Level.FINE, "JSON-PRC Response: "+response.toString());
 		}
@@ -255,16 +369,8 @@ public class JsonRpcClient {
 		}
 
 		// detect errors
-		if (jsonObject.has("error")
-			&& jsonObject.get("error")!=null
-			&& !jsonObject.get("error").isNull()) {
-
-			// resolve and throw the exception
-			if (exceptionResolver==null) {
-				throw DefaultExceptionResolver.INSTANCE.resolveException(jsonObject);
-			} else {
-				throw exceptionResolver.resolveException(jsonObject);
-			}
+		if (isError(jsonObject)) {
+			throw resolveException(jsonObject);
 		}
 
 		// convert it to a return object
@@ -277,16 +383,36 @@ public class JsonRpcClient {
 				return null;
 			}
 			
-			JsonParser returnJsonParser = mapper.treeAsTokens(jsonObject.get("result"));
-			JavaType returnJavaType = TypeFactory.defaultInstance().constructType(returnType);
-			
-			return mapper.readValue(returnJsonParser, returnJavaType);
+			return resultReaders.get(returnType).readValue(jsonObject.get("result"));
 		}
 
 		// no return type
 		return null;
 	}
 
+	/**
+	 * @param response the response
+	 * @return whether or not the response is an error
+	 */
+	private boolean isError(ObjectNode response) {
+		return response.has("error")
+			&& response.get("error")!=null
+			&& !response.get("error").isNull();
+	}
+
+	/**
+	 * Resolves the exception of an error response.
+	 * @param response the response
+	 * @return the exception to throw
+	 */
+	private Throwable resolveException(ObjectNode response) {
+		if (exceptionResolver==null) {
+			return DefaultExceptionResolver.INSTANCE.resolveException(response);
+		} else {
+			return exceptionResolver.resolveException(response);
+		}
+	}
+
 	/**
 	 * Writes a JSON-RPC request to the given {@link OutputStream}.
 	 * If the value passed for argument is null then the {@code params}
@@ -352,6 +478,13 @@ public class JsonRpcClient {
 	private void internalWriteRequest(
 		String methodName, Object arguments, OutputStream ops, String id)
 		throws IOException {
+
+		// serialize straight from the arguments, unless
+		// a listener is to be shown the request as a tree
+		if (requestListener==null) {
+			streamRequest(methodName, arguments, ops, id);
+			return;
+		}
 		
 		// create the request
 		ObjectNode request = mapper.createObjectNode();
@@ -414,6 +547,89 @@ public class JsonRpcClient {
 		writeAndFlushValue(ops, request);
 	}
 
+	/**
+	 * Writes a request without building a tree of it first, giving
+	 * the same output as {@link #internalWriteRequest(String, Object, OutputStream, String)}.
+	 * @param methodName the method name
+	 * @param arguments the arguments
+	 * @param ops the stream
+	 * @param id the optional id
+	 * @throws IOException on error
+	 */
+	private void streamRequest(
+		String methodName, Object arguments, OutputStream ops, String id)
+		throws IOException {
+		if (LOGGER.isLoggable(Level.FINE)) {
+			LOGGER.log(Level.FINE, "JSON-PRC Request: "+methodName+" (streamed)");
+		}
+
+		JsonGenerator gen = mapper.getFactory().createGenerator(ops);
+		gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		gen.writeStartObject();
+		if (id!=null) {
+			gen.writeFieldName(ID_KEY);
+			gen.writeString(id);
+		}
+		gen.writeFieldName(JSONRPC_KEY);
+		gen.writeString(JSON_RPC_VERSION_VALUE);
+		gen.writeFieldName(METHOD_KEY);
+		gen.writeString(methodName(methodName));
+
+		// indexed args, serialized one at a time like valueToTree does
+		Collection<?> args = null;
+		if (arguments!=null && arguments.getClass().isArray()) {
+			args = Arrays.asList(Object[].class.cast(arguments));
+		} else if (arguments!=null && Collection.class.isInstance(arguments)) {
+			args = Collection.class.cast(arguments);
+		}
+		if (args!=null) {
+			if (!args.isEmpty()) {
+				gen.writeFieldName(PARAMS_KEY);
+				gen.writeStartArray();
+				for (Object arg : args) {
+					paramWriter.writeValue(gen, arg);
+				}
+				gen.writeEndArray();
+			}
+
+		// map and other args
+		} else if (arguments!=null
+			&& !(Map.class.isInstance(arguments) && Map.class.cast(arguments).isEmpty())) {
+			gen.writeFieldName(PARAMS_KEY);
+			paramWriter.writeValue(gen, arguments);
+		}
+
+		gen.writeEndObject();
+		gen.close();
+		ops.flush();
+	}
+
+	/**
+	 * Returns the method name encoded for writing, keeping
+	 * the encodings of the first few names used.
+	 * @param methodName the method name
+	 * @return the encoded name
+	 */
+	private SerializedString methodName(String methodName) {
+		SerializedString name = methodNames.get(methodName);
+		if (name==null) {
+			name = new SerializedString(methodName);
+			if (methodNames.size()<MAX_CACHED_METHOD_NAMES) {
+				methodNames.putIfAbsent(methodName, name);
+			}
+		}
+		return name;
+	}
+
+	/**
+	 * Generates a request id, without sharing any state
+	 * between the threads calling.
+	 * @return the id
+	 */
+	private String nextId() {
+		return Long.toString(ThreadLocalRandom.current().nextLong());
+	}
+
 	/**
 	 * Writes and flushes a value to the given {@link OutputStream}
 	 * and prevents Jackson from closing it.
@@ -436,6 +652,58 @@ public class JsonRpcClient {
 		return mapper;
 	}
 
+	/**
+	 * Sets whether or not requests are sent as they're serialized
+	 * instead of being buffered by the transport first, which
+	 * {@link JsonRpcHttpClient} does by sending them chunked.
+	 * Requests are always serialized straight from the arguments,
+	 * and aren't logged in full, unless a {@link RequestListener}
+	 * is set, when they're built as a tree it can be shown.
+	 *
+	 * @param streamingRequests true or false
+	 */
+	public void setStreamingRequests(boolean streamingRequests) {
+		this.streamingRequests = streamingRequests;
+	}
+
+	/**
+	 * @return whether or not requests are sent
+	 * as they're serialized
+	 */
+	public boolean isStreamingRequests() {
+		return streamingRequests;
+	}
+
+	/**
+	 * Returns the cache that proxies of this client keep the results
+	 * of {@link JsonRpcCacheable} methods in, creating it on first use.
+	 * @return the {@link JsonRpcResultCache}
+	 */
+	public JsonRpcResultCache getResultCache() {
+		JsonRpcResultCache cache = resultCache;
+		if (cache==null) {
+			synchronized (this) {
+				if (resultCache==null) {
+					resultCache = new JsonRpcResultCache(mapper);
+				}
+				cache = resultCache;
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Sets the cache that proxies of this client keep the
+	 * results of {@link JsonRpcCacheable} methods in, such
+	 * as one shared with other clients.  Results stay apart
+	 * by service URL and headers for HTTP proxies, and by
+	 * proxy for the others.
+	 * @param resultCache the {@link JsonRpcResultCache}
+	 */
+	public void setResultCache(JsonRpcResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+
 	/**
 	 * @param exceptionResolver the exceptionResolver to set
 	 */
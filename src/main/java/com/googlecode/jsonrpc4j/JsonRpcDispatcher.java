@@ -0,0 +1,35 @@
+package com.googlecode.jsonrpc4j;
+
+/**
+ * Invokes the methods of a {@link JsonRpcService} interface without
+ * reflection.  Implementations are generated at compile time by
+ * {@link com.googlecode.jsonrpc4j.processor.JsonRpcServiceProcessor},
+ * and {@link JsonRpcServer} uses them for the methods declared by
+ * the interface when they're found next to it.
+ */
+public interface JsonRpcDispatcher {
+
+	/**
+	 * Returns the keys of the methods the dispatcher invokes, in
+	 * the order of their indexes.  A key is the method's name
+	 * followed by the {@link Class#getTypeName()}s of its erased
+	 * parameter types, such as {@code add(int,java.lang.String[])}.
+	 *
+	 * @return the method keys
+	 */
+	String[] getMethodKeys();
+
+	/**
+	 * Invokes a method on the given target.  Anything the method
+	 * throws is thrown as it is.
+	 *
+	 * @param index the index of the method
+	 * @param target the object implementing the interface
+	 * @param arguments the converted arguments
+	 * @return the return value (or null if no return)
+	 * @throws Throwable on error
+	 */
+	Object invoke(int index, Object target, Object[] arguments)
+		throws Throwable;
+
+}
@@ -1,77 +1,64 @@
 package com.googlecode.jsonrpc4j;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InterruptedIOException;
 import java.lang.reflect.Type;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.net.ssl.SSLContext;
 
-import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
-import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.concurrent.FutureCallback;
-import org.apache.http.entity.ByteArrayEntity;
-import org.apache.http.entity.ContentType;
-import org.apache.http.impl.DefaultConnectionReuseStrategy;
-import org.apache.http.impl.nio.DefaultHttpClientIODispatch;
-import org.apache.http.impl.nio.pool.BasicNIOConnFactory;
-import org.apache.http.impl.nio.pool.BasicNIOConnPool;
-import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
-import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.apache.http.message.BasicHttpEntityEnclosingRequest;
-import org.apache.http.nio.protocol.BasicAsyncRequestProducer;
-import org.apache.http.nio.protocol.BasicAsyncResponseConsumer;
+import org.apache.http.nio.NHttpClientConnection;
+import org.apache.http.nio.protocol.HttpAsyncRequestExecutionHandler;
 import org.apache.http.nio.protocol.HttpAsyncRequestExecutor;
-import org.apache.http.nio.protocol.HttpAsyncRequester;
-import org.apache.http.nio.reactor.ConnectingIOReactor;
-import org.apache.http.nio.reactor.IOEventDispatch;
-import org.apache.http.nio.reactor.IOReactorException;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.CoreConnectionPNames;
-import org.apache.http.params.CoreProtocolPNames;
-import org.apache.http.params.HttpParams;
 import org.apache.http.protocol.BasicHttpContext;
-import org.apache.http.protocol.HttpProcessor;
-import org.apache.http.protocol.ImmutableHttpProcessor;
-import org.apache.http.protocol.RequestConnControl;
-import org.apache.http.protocol.RequestContent;
-import org.apache.http.protocol.RequestExpectContinue;
-import org.apache.http.protocol.RequestTargetHost;
-import org.apache.http.protocol.RequestUserAgent;
-
-import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.databind.JavaType;
+import org.apache.http.protocol.ExecutionContext;
+
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.type.TypeFactory;
 
 /**
  * Implements an asynchronous JSON-RPC 2.0 HTTP client. This class has a
  * dependency on Apache Commons Codec, Apache
  * 
- * Because this implementation uses an HTTP request pool, timeouts are
- * controlled at a global level, rather than per-request.
+ * Requests are sent through a {@link JsonRpcHttpAsyncTransport}, which holds
+ * the IO reactor and connection pool. Clients created without one share the
+ * {@link JsonRpcHttpAsyncTransport#getDefault() default transport}, a
+ * transport configured with {@link JsonRpcHttpAsyncTransport#builder()} may
+ * be given to any number of clients.
+ * <p>
+ * Because this implementation uses an HTTP request pool, socket timeouts are
+ * controlled at the transport level, rather than per-request. A call can be given
+ * its own deadline through
+ * {@link #invokeAsync(String, Object, Type, Map, long, TimeUnit)}, and
+ * cancelling the {@code CompletableFuture} of a call, or missing its
+ * deadline, aborts the HTTP exchange and frees its pooled connection.
  * <p>
- * The following JVM system properties control the behavior of the pool:
+ * The following JVM system properties control the behavior of the default
+ * transport:
  * <ul>
  * <li>com.googlecode.jsonrpc4j.async.socket.timeout - overall socket idle
  * (keep-alive) timeout in milliseconds, default is 30 seconds</li>
@@ -87,7 +74,7 @@ import com.fasterxml.jackson.databind.type.TypeFactory;
  * <li>com.googlecode.jsonrpc4j.async.max.inflight.total - maximum number of
  * total in-flight requests (across all providers), default is 500</li>
  * <li>com.googlecode.jsonrpc4j.async.reactor.threads - number of asynchronous
- * IO reactor threads, default is 2 (more than sufficient for most clients)</li>
+ * IO reactor threads, default is the number of cores</li>
  * </ul>
  * 
  * @author Brett Wooldridge
@@ -98,23 +85,15 @@ public class JsonRpcHttpAsyncClient {
 
 	private static final String JSON_RPC_VERSION = "2.0";
 
-	private static HttpAsyncRequester requester;
-	private static BasicNIOConnPool pool;
-	private static SSLContext sslContext;
-
-	private static AtomicBoolean initialized = new AtomicBoolean();
-
 	private static AtomicLong nextId = new AtomicLong();
 
 	private ExceptionResolver exceptionResolver = DefaultExceptionResolver.INSTANCE;
 	private Map<String, String> headers = new HashMap<String, String>();
 	private ObjectMapper mapper;
+	private ObjectWriter paramWriter;
+	private ResultReaderCache resultReaders;
 	private URL serviceUrl;
-
-	// Instance initializer
-	{
-		initialize();
-	}
+	private JsonRpcHttpAsyncTransport transport;
 
 	/**
 	 * Creates the {@link JsonRpcHttpAsyncClient} bound to the given
@@ -156,21 +135,56 @@ public class JsonRpcHttpAsyncClient {
 	 */
 	public JsonRpcHttpAsyncClient(ObjectMapper mapper, URL serviceUrl,
 			Map<String, String> headers) {
+		this(mapper, serviceUrl, headers, JsonRpcHttpAsyncTransport
+				.getDefault());
+	}
+
+	/**
+	 * Creates the {@link JsonRpcHttpAsyncClient} using the specified
+	 * {@code ObjectMapper}, bound to the given {@code serviceUrl} and sending
+	 * its requests through the given {@code transport}. The headers provided in
+	 * the {@code headers} map are added to every request made to the
+	 * {@code serviceUrl}.
+	 * 
+	 * @param mapper
+	 *            the {@link ObjectMapper} to use for json<->java conversion
+	 * @param serviceUrl
+	 *            the service end-point URL
+	 * @param headers
+	 *            the headers
+	 * @param transport
+	 *            the {@link JsonRpcHttpAsyncTransport}, which the caller
+	 *            closes
+	 */
+	public JsonRpcHttpAsyncClient(ObjectMapper mapper, URL serviceUrl,
+			Map<String, String> headers, JsonRpcHttpAsyncTransport transport) {
 		this.mapper = mapper;
+		this.paramWriter = mapper.writer().without(
+				SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		this.resultReaders = new ResultReaderCache(mapper);
 		this.serviceUrl = serviceUrl;
 		this.headers.putAll(headers);
+		this.transport = transport;
 	}
 
 	/**
-	 * Set the SSLContext to be used to create SSL connections. This method most
-	 * be called before the first {@code JsonRpcHttpAsyncClient} is constructed,
-	 * otherwise it has no effect.
+	 * Set the SSLContext to be used to create SSL connections by the default
+	 * {@link JsonRpcHttpAsyncTransport}. This method most be called before the
+	 * first {@code JsonRpcHttpAsyncClient} without a transport of its own is
+	 * constructed, otherwise it has no effect.
 	 * 
 	 * @param sslContext
 	 *            the {@code SSLContext to use}
 	 */
 	public static void setSSLContext(SSLContext sslContext) {
-		JsonRpcHttpAsyncClient.sslContext = sslContext;
+		JsonRpcHttpAsyncTransport.setDefaultSSLContext(sslContext);
+	}
+
+	/**
+	 * @return the {@link JsonRpcHttpAsyncTransport} requests are sent through
+	 */
+	public JsonRpcHttpAsyncTransport getTransport() {
+		return transport;
 	}
 
 	/**
@@ -226,8 +240,97 @@ public class JsonRpcHttpAsyncClient {
 	 */
 	public <T> Future<T> invoke(String methodName, Object argument,
 			Class<T> returnType, Map<String, String> extraHeaders) {
+		return doInvoke(methodName, argument, returnType, extraHeaders, 0);
+	}
+
+	/**
+	 * Invokes the given method with the given arguments and returns
+	 * immediately. The returned {@code CompletableFuture<T>} is completed with
+	 * the result on the callback executor of the transport (see
+	 * {@link JsonRpcHttpAsyncTransport.Builder#callbackExecutor}), which also
+	 * runs dependent stages that don't ask for an executor of their own.
+	 * Cancelling it aborts the call.
+	 * 
+	 * @param methodName
+	 *            the name of the method to invoke
+	 * @param argument
+	 *            the arguments to the method
+	 * @param returnType
+	 *            the return type
+	 * @return the response {@code CompletableFuture<T>}
+	 */
+	public <T> CompletableFuture<T> invokeAsync(String methodName,
+			Object argument, Class<T> returnType) {
+		return invokeAsync(methodName, argument, (Type) returnType);
+	}
+
+	/**
+	 * Invokes the given method with the given arguments and returns
+	 * immediately, converting the result to the given (possibly generic)
+	 * {@code returnType}.
+	 * 
+	 * @param methodName
+	 *            the name of the method to invoke
+	 * @param argument
+	 *            the arguments to the method
+	 * @param returnType
+	 *            the return type
+	 * @return the response {@code CompletableFuture<T>}
+	 * @see #invokeAsync(String, Object, Class)
+	 */
+	public <T> CompletableFuture<T> invokeAsync(String methodName,
+			Object argument, Type returnType) {
+		return invokeAsync(methodName, argument, returnType,
+				new HashMap<String, String>());
+	}
+
+	/**
+	 * Invokes the given method with the given arguments and returns
+	 * immediately. The {@code extraHeaders} are added to the request.
+	 * 
+	 * @param methodName
+	 *            the name of the method to invoke
+	 * @param argument
+	 *            the arguments to the method
+	 * @param returnType
+	 *            the return type
+	 * @param extraHeaders
+	 *            extra headers to add to the request
+	 * @return the response {@code CompletableFuture<T>}
+	 * @see #invokeAsync(String, Object, Class)
+	 */
+	public <T> CompletableFuture<T> invokeAsync(String methodName,
+			Object argument, Type returnType, Map<String, String> extraHeaders) {
+		return doInvoke(methodName, argument, returnType, extraHeaders, 0);
+	}
+
+	/**
+	 * Invokes the given method with the given arguments and returns
+	 * immediately. The {@code extraHeaders} are added to the request. If the
+	 * call hasn't completed within the given {@code timeout} the
+	 * {@code CompletableFuture<T>} fails with a {@link TimeoutException} and
+	 * the call is aborted.
+	 * 
+	 * @param methodName
+	 *            the name of the method to invoke
+	 * @param argument
+	 *            the arguments to the method
+	 * @param returnType
+	 *            the return type
+	 * @param extraHeaders
+	 *            extra headers to add to the request
+	 * @param timeout
+	 *            how long the call may take, 0 for no deadline
+	 * @param unit
+	 *            the unit of the {@code timeout}
+	 * @return the response {@code CompletableFuture<T>}
+	 * @see #invokeAsync(String, Object, Class)
+	 */
+	public <T> CompletableFuture<T> invokeAsync(String methodName,
+			Object argument, Type returnType,
+			Map<String, String> extraHeaders, long timeout, TimeUnit unit) {
 		return doInvoke(methodName, argument, returnType, extraHeaders,
-				new JsonRpcFuture<T>());
+				unit.toMillis(timeout));
 	}
 
 	/**
@@ -286,13 +389,23 @@ public class JsonRpcHttpAsyncClient {
 	 */
 	private <T> void invoke(String methodName, Object argument,
 			Class<T> returnType, Map<String, String> extraHeaders,
-			JsonRpcCallback<T> callback) {
-		doInvoke(methodName, argument, returnType, extraHeaders, callback);
+			final JsonRpcCallback<T> callback) {
+		JsonRpcFuture<T> future = doInvoke(methodName, argument, returnType,
+				extraHeaders, 0);
+		future.whenComplete(new BiConsumer<T, Throwable>() {
+			public void accept(T result, Throwable t) {
+				if (t != null) {
+					callback.onError(t);
+				} else {
+					callback.onComplete(result);
+				}
+			}
+		});
 	}
 
 	/**
-	 * Invokes the given method with the given arguments and invokes the
-	 * {@code JsonRpcCallback} with the result cast to the given
+	 * Invokes the given method with the given arguments and returns the
+	 * {@code JsonRpcFuture} completed with the result converted to the given
 	 * {@code returnType}, or null if void. The {@code extraHeaders} are added
 	 * to the request.
 	 * 
@@ -300,123 +413,131 @@ public class JsonRpcHttpAsyncClient {
 	 *            the name of the method to invoke
 	 * @param arguments
 	 *            the arguments to the method
-	 * @param extraHeaders
-	 *            extra headers to add to the request
 	 * @param returnType
 	 *            the return type
-	 * @param callback
-	 *            the {@code JsonRpcCallback}
+	 * @param extraHeaders
+	 *            extra headers to add to the request
+	 * @param timeoutMillis
+	 *            how long the call may take, 0 for no deadline
+	 * @return the response {@code JsonRpcFuture<T>}
 	 */
-	@SuppressWarnings("unchecked")
-	private <T> Future<T> doInvoke(String methodName, Object argument,
-			Class<T> returnType, Map<String, String> extraHeaders,
-			JsonRpcCallback<T> callback) {
+	private <T> JsonRpcFuture<T> doInvoke(String methodName, Object argument,
+			Type returnType, Map<String, String> extraHeaders,
+			long timeoutMillis) {
 
 		String path = serviceUrl.getPath()
 				+ (serviceUrl.getQuery() != null ? "?" + serviceUrl.getQuery()
 						: "");
-		int port = serviceUrl.getPort() != -1 ? serviceUrl.getPort()
-				: serviceUrl.getDefaultPort();
 
 		// create the HttpRequest
-		HttpRequest request = new BasicHttpEntityEnclosingRequest("POST", path);
+		HttpEntityEnclosingRequest request = new BasicHttpEntityEnclosingRequest(
+				"POST", path);
 
 		addHeaders(request, headers);
 		addHeaders(request, extraHeaders);
 
+		final JsonRpcFuture<T> future = new JsonRpcFuture<T>();
+
 		// create the JSON payload
+		PagedByteBuffer body = new PagedByteBuffer();
 		try {
-			writeRequest(methodName, argument, request);
+			writeRequest(methodName, argument, body);
 		} catch (IOException e) {
-			callback.onError(e);
+			future.completeExceptionally(e);
+			return future;
 		}
 
-		HttpHost target = new HttpHost(serviceUrl.getHost(), port,
-				serviceUrl.getProtocol());
-		BasicAsyncRequestProducer asyncRequestProducer = new BasicAsyncRequestProducer(
-				target, request);
-		BasicAsyncResponseConsumer asyncResponseConsumer = new BasicAsyncResponseConsumer();
+		HttpHost target = JsonRpcHttpAsyncTransport.toHttpHost(serviceUrl);
+		JsonRpcAsyncRequestProducer asyncRequestProducer = new JsonRpcAsyncRequestProducer(
+				target, request, body, future);
+		JsonRpcAsyncResponseConsumer asyncResponseConsumer = new JsonRpcAsyncResponseConsumer();
 
 		RequestAsyncFuture<T> futureCallback = new RequestAsyncFuture<T>(
-				returnType, callback);
+				returnType, asyncResponseConsumer, future);
+
+		// the deadline
+		if (timeoutMillis > 0) {
+			final long timeout = timeoutMillis;
+			future.deadline = transport.schedule(new Runnable() {
+				public void run() {
+					if (future.completeExceptionally(new TimeoutException(
+							"No response within " + timeout + "ms"))) {
+						future.abort();
+					}
+				}
+			}, timeoutMillis);
+		}
 
-		BasicHttpContext httpContext = new BasicHttpContext();
-		requester.execute(asyncRequestProducer, asyncResponseConsumer, pool,
-				httpContext, futureCallback);
+		try {
+			future.exchange = transport.execute(asyncRequestProducer,
+					asyncResponseConsumer, future.httpContext, futureCallback);
+		} catch (RuntimeException e) {
+			// the transport has been closed
+			future.completeExceptionally(e);
+			return future;
+		}
 
-		return (callback instanceof JsonRpcFuture ? (Future<T>) callback : null);
+		// cancelled, or timed out, before the exchange got under way
+		if (future.isCompletedExceptionally()) {
+			future.abort();
+		}
+		return future;
 	}
 
 	/**
-	 * Writes a request.
+	 * Writes a request, serializing the arguments straight into the body.
 	 * 
 	 * @param methodName
 	 *            the method name
 	 * @param arguments
 	 *            the arguments
-	 * @param ops
-	 *            the stream
-	 * @param id
-	 *            the optional id
+	 * @param body
+	 *            the request body
 	 * @throws IOException
 	 *             on error
 	 */
 	private void writeRequest(String methodName, Object arguments,
-			HttpRequest httpRequest) throws IOException {
-
-		// create the request
-		ObjectNode request = mapper.createObjectNode();
+			PagedByteBuffer body) throws IOException {
 
-		request.put("id", nextId.getAndIncrement());
+		JsonGenerator gen = mapper.getFactory().createGenerator(body);
+		gen.writeStartObject();
+		gen.writeNumberField("id", nextId.getAndIncrement());
 
 		// add protocol and method
-		request.put("jsonrpc", JSON_RPC_VERSION);
-		request.put("method", methodName);
+		gen.writeStringField("jsonrpc", JSON_RPC_VERSION);
+		gen.writeStringField("method", methodName);
 
-		// object array args
+		// object array and collection args, written one at a time
+		// like valueToTree does
+		Collection<?> args = null;
 		if (arguments != null && arguments.getClass().isArray()) {
-			Object[] args = Object[].class.cast(arguments);
-			if (args.length > 0) {
-				request.put("params",
-						mapper.valueToTree(Object[].class.cast(arguments)));
-			}
-
-			// collection args
+			args = Arrays.asList(Object[].class.cast(arguments));
 		} else if (arguments != null && Collection.class.isInstance(arguments)) {
-			if (!Collection.class.cast(arguments).isEmpty()) {
-				request.put("params", mapper.valueToTree(arguments));
-			}
-
-			// map args
-		} else if (arguments != null && Map.class.isInstance(arguments)) {
-			if (!Map.class.cast(arguments).isEmpty()) {
-				request.put("params", mapper.valueToTree(arguments));
+			args = Collection.class.cast(arguments);
+		}
+		if (args != null) {
+			if (!args.isEmpty()) {
+				gen.writeArrayFieldStart("params");
+				for (Object arg : args) {
+					paramWriter.writeValue(gen, arg);
+				}
+				gen.writeEndArray();
 			}
 
-			// other args
-		} else if (arguments != null) {
-			request.put("params", mapper.valueToTree(arguments));
+			// map and other args
+		} else if (arguments != null
+				&& !(Map.class.isInstance(arguments) && Map.class.cast(
+						arguments).isEmpty())) {
+			gen.writeFieldName("params");
+			paramWriter.writeValue(gen, arguments);
 		}
 
-		if (LOGGER.isLoggable(Level.FINE)) {
-			LOGGER.log(Level.FINE, "JSON-PRC Request: " + request.toString());
-		}
+		gen.writeEndObject();
+		gen.close();
 
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(512);
-		mapper.writeValue(baos, request);
-
-		HttpEntityEnclosingRequest entityRequest = (HttpEntityEnclosingRequest) httpRequest;
-
-		HttpEntity entity;
-		if (entityRequest.getFirstHeader("Content-Type") == null) {
-			// Set default content type if none is set.
-			entity = new ByteArrayEntity(baos.toByteArray(),
-					ContentType.APPLICATION_JSON);
-		} else {
-			entity = new ByteArrayEntity(baos.toByteArray());
+		if (LOGGER.isLoggable(Level.FINE)) {
+			LOGGER.log(Level.FINE, "JSON-PRC Request: " + body.toString());
 		}
-
-		entityRequest.setEntity(entity);
 	}
 
 	/**
@@ -464,18 +585,24 @@ public class JsonRpcHttpAsyncClient {
 		if (jsonObject.has("result") && !jsonObject.get("result").isNull()
 				&& jsonObject.get("result") != null) {
 
-			JsonParser returnJsonParser = mapper.treeAsTokens(jsonObject
-					.get("result"));
-			JavaType returnJavaType = TypeFactory.defaultInstance()
-					.constructType(returnType);
-
-			return mapper.readValue(returnJsonParser, returnJavaType);
+			return resultReaders.get(returnType).readValue(
+					jsonObject.get("result"));
 		}
 
 		// no return type
 		return null;
 	}
 
+	/**
+	 * Returns the {@link ObjectMapper} that the client is using for
+	 * JSON marshalling.
+	 * 
+	 * @return the {@link ObjectMapper}
+	 */
+	public ObjectMapper getObjectMapper() {
+		return mapper;
+	}
+
 	/**
 	 * Set the request headers.
 	 * 
@@ -489,106 +616,21 @@ public class JsonRpcHttpAsyncClient {
 		}
 	}
 
-	private void initialize() {
-		if (initialized.getAndSet(true)) {
-			return;
-		}
-
-		// HTTP parameters for the client
-		final HttpParams params = new BasicHttpParams();
-		params.setIntParameter(CoreConnectionPNames.SO_TIMEOUT, Integer
-				.getInteger("com.googlecode.jsonrpc4j.async.socket.timeout",
-						30000));
-		params.setIntParameter(CoreConnectionPNames.CONNECTION_TIMEOUT, Integer
-				.getInteger("com.googlecode.jsonrpc4j.async.connect.timeout",
-						30000));
-		params.setIntParameter(CoreConnectionPNames.SOCKET_BUFFER_SIZE, Integer
-				.getInteger("com.googlecode.jsonrpc4j.async.socket.buffer",
-						8 * 1024));
-		params.setBooleanParameter(CoreConnectionPNames.TCP_NODELAY, Boolean
-				.valueOf(System.getProperty(
-						"com.googlecode.jsonrpc4j.async.tcp.nodelay", "true")));
-		params.setParameter(CoreProtocolPNames.USER_AGENT, "jsonrpc4j/1.0");
-
-		// Create client-side I/O reactor
-		final ConnectingIOReactor ioReactor;
-		try {
-			IOReactorConfig config = new IOReactorConfig();
-			config.setIoThreadCount(Integer.getInteger(
-					"com.googlecode.jsonrpc4j.async.reactor.threads", 1));
-			ioReactor = new DefaultConnectingIOReactor(config);
-		} catch (IOReactorException e) {
-			throw new RuntimeException(
-					"Exception initializing asynchronous Apache HTTP Client", e);
-		}
-
-		// Create a default SSLSetupHandler that accepts any certificate
-		if (sslContext == null) {
-			try {
-				sslContext = SSLContext.getDefault();
-			} catch (Exception e) {
-				throw new RuntimeException(e);
-			}
-		}
-
-		// Create HTTP connection pool
-		BasicNIOConnFactory nioConnFactory = new BasicNIOConnFactory(
-				sslContext, null, params);
-		pool = new BasicNIOConnPool(ioReactor, nioConnFactory, params);
-		// Limit total number of connections to 500 by default
-		pool.setDefaultMaxPerRoute(Integer.getInteger(
-				"com.googlecode.jsonrpc4j.async.max.inflight.route", 500));
-		pool.setMaxTotal(Integer.getInteger(
-				"com.googlecode.jsonrpc4j.async.max.inflight.total", 500));
-
-		// Run the I/O reactor in a separate thread
-		Thread t = new Thread(new Runnable() {
-			public void run() {
-				try {
-					// Create client-side HTTP protocol handler
-					HttpAsyncRequestExecutor protocolHandler = new HttpAsyncRequestExecutor();
-					// Create client-side I/O event dispatch
-					IOEventDispatch ioEventDispatch = new DefaultHttpClientIODispatch(
-							protocolHandler, sslContext, params);
-					// Ready to go!
-					ioReactor.execute(ioEventDispatch);
-				} catch (InterruptedIOException ex) {
-					System.err.println("Interrupted");
-				} catch (IOException e) {
-					System.err.println("I/O error: " + e.getMessage());
-				}
-			}
-
-		}, "jsonrpc4j HTTP IOReactor");
-		// Start the client thread
-		t.setDaemon(true);
-		t.start();
-
-		// Create HTTP protocol processing chain
-		HttpProcessor httpproc = new ImmutableHttpProcessor(
-				new HttpRequestInterceptor[] {
-						// Use standard client-side protocol interceptors
-						new RequestContent(), new RequestTargetHost(),
-						new RequestConnControl(), new RequestUserAgent(),
-						new RequestExpectContinue() });
-
-		// Create HTTP requester
-		requester = new HttpAsyncRequester(httpproc,
-				new DefaultConnectionReuseStrategy(), params);
-	}
-
 	/**
 	 * Private class to handle the HttpResponse callback.
 	 * 
 	 * @param <T>
 	 */
 	private class RequestAsyncFuture<T> implements FutureCallback<HttpResponse> {
-		private JsonRpcCallback<T> callBack;
-		private Class<T> type;
+		private JsonRpcAsyncResponseConsumer consumer;
+		private JsonRpcFuture<T> future;
+		private Type type;
 
-		RequestAsyncFuture(Class<T> type, JsonRpcCallback<T> callBack) {
+		RequestAsyncFuture(Type type, JsonRpcAsyncResponseConsumer consumer,
+				JsonRpcFuture<T> future) {
 			this.type = type;
-			this.callBack = callBack;
+			this.consumer = consumer;
+			this.future = future;
 		}
 
 		public void completed(final HttpResponse response) {
@@ -596,98 +638,95 @@ public class JsonRpcHttpAsyncClient {
 				StatusLine statusLine = response.getStatusLine();
 				int statusCode = statusLine.getStatusCode();
 
-				InputStream stream;
 				if (statusCode == 200) {
-					HttpEntity entity = response.getEntity();
-					try {
-						stream = entity.getContent();
-					} catch (Exception e) {
-						failed(e);
-						return;
-					}
-
-					callBack.onComplete(type.cast(readResponse(type, stream)));
+					T result = readResponse(type, consumer.getContent());
+					future.complete(result);
 				} else {
-					callBack.onError(new RuntimeException(
+					future.completeExceptionally(new RuntimeException(
 							"Unexpected response code: " + statusCode));
 				}
 			} catch (Throwable t) {
-				callBack.onError(t);
+				future.completeExceptionally(t);
 			}
 		}
 
 		public void failed(final Exception ex) {
-			callBack.onError(ex);
+			future.completeExceptionally(ex);
 		}
 
 		public void cancelled() {
-			callBack.onError(new RuntimeException("HTTP Request was cancelled"));
+			future.cancel(false);
 		}
 	}
 
-	private class JsonRpcFuture<T> implements Future<T>, JsonRpcCallback<T> {
-
-		private T object;
-		private boolean done;
-		private ExecutionException exception;
-
-		// ---------------------------------------------------------------
-		// Future methods
-		// ---------------------------------------------------------------
-
-		public synchronized boolean isDone() {
-			return done;
-		}
+	/**
+	 * The {@code CompletableFuture} of a call, which aborts the HTTP exchange
+	 * when it's cancelled or misses its deadline.
+	 * 
+	 * @param <T>
+	 */
+	private static class JsonRpcFuture<T> extends CompletableFuture<T> {
 
-		public synchronized T get() throws InterruptedException,
-				ExecutionException {
-			while (!done) {
-				this.wait();
-			}
+		private final BasicHttpContext httpContext = new BasicHttpContext();
+		private volatile Future<HttpResponse> exchange;
+		private volatile ScheduledFuture<?> deadline;
 
-			if (exception != null) {
-				throw exception;
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled) {
+				abort();
 			}
-
-			return object;
+			return cancelled;
 		}
 
-		public synchronized T get(long timeout, TimeUnit unit)
-				throws InterruptedException, ExecutionException,
-				TimeoutException {
-			while (!done) {
-				this.wait(unit.toMillis(timeout));
-			}
-
-			if (exception != null) {
-				throw exception;
-			}
-
-			return object;
+		@Override
+		public boolean complete(T value) {
+			boolean completed = super.complete(value);
+			cancelDeadline();
+			return completed;
 		}
 
-		public boolean cancel(boolean mayInterruptIfRunning) {
-			return false;
+		@Override
+		public boolean completeExceptionally(Throwable ex) {
+			boolean completed = super.completeExceptionally(ex);
+			cancelDeadline();
+			return completed;
 		}
 
-		public boolean isCancelled() {
-			return false;
+		private void cancelDeadline() {
+			ScheduledFuture<?> deadline = this.deadline;
+			if (deadline != null) {
+				deadline.cancel(false);
+			}
 		}
 
-		// ---------------------------------------------------------------
-		// JsonRpcCallback methods
-		// ---------------------------------------------------------------
+		/**
+		 * Aborts the HTTP exchange, if it's still under way.
+		 */
+		private void abort() {
+			cancelDeadline();
 
-		public synchronized void onComplete(T result) {
-			object = result;
-			done = true;
-			this.notify();
-		}
+			// still waiting for a connection, which is handed straight back
+			Future<HttpResponse> exchange = this.exchange;
+			if (exchange == null || !exchange.cancel(true)) {
+				return;
+			}
 
-		public synchronized void onError(Throwable t) {
-			exception = new ExecutionException(t);
-			done = true;
-			this.notify();
+			// on a connection, which is closed and released by cancelling
+			// the handler of the exchange (unless the connection has moved
+			// on to another one)
+			Object conn = httpContext
+					.getAttribute(ExecutionContext.HTTP_CONNECTION);
+			if (conn instanceof NHttpClientConnection) {
+				Object handler = ((NHttpClientConnection) conn).getContext()
+						.getAttribute(HttpAsyncRequestExecutor.HTTP_HANDLER);
+				if (handler instanceof HttpAsyncRequestExecutionHandler
+						&& ((HttpAsyncRequestExecutionHandler<?>) handler)
+								.getContext() == httpContext) {
+					((HttpAsyncRequestExecutionHandler<?>) handler).cancel();
+				}
+			}
 		}
 	}
 }
@@ -0,0 +1,743 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.DefaultConnectionReuseStrategy;
+import org.apache.http.impl.nio.DefaultHttpClientIODispatch;
+import org.apache.http.impl.nio.DefaultNHttpClientConnection;
+import org.apache.http.impl.nio.pool.BasicNIOConnFactory;
+import org.apache.http.impl.nio.pool.BasicNIOConnPool;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.NHttpClientEventHandler;
+import org.apache.http.nio.protocol.HttpAsyncRequestExecutor;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncRequester;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.nio.reactor.IOEventDispatch;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.nio.reactor.IOReactorStatus;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.CoreConnectionPNames;
+import org.apache.http.params.CoreProtocolPNames;
+import org.apache.http.params.HttpParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpProcessor;
+import org.apache.http.protocol.ImmutableHttpProcessor;
+import org.apache.http.protocol.RequestConnControl;
+import org.apache.http.protocol.RequestContent;
+import org.apache.http.protocol.RequestExpectContinue;
+import org.apache.http.protocol.RequestTargetHost;
+import org.apache.http.protocol.RequestUserAgent;
+
+/**
+ * The IO reactor, connection pool and HTTP requester that
+ * {@link JsonRpcHttpAsyncClient}s send their requests through.
+ * A transport is configured with a {@link Builder}, and may be
+ * shared by any number of clients.  Its IO reactor runs on
+ * {@link Builder#reactorThreads(int)} daemon threads, one per
+ * core by default, and stays up until the transport is closed.
+ * <p>
+ * The reactor threads only do I/O.  Responses are decoded, and
+ * futures completed, on the {@link Builder#callbackExecutor(Executor)
+ * callback executor}, a small {@link ForkJoinPool} by default, so a
+ * large response or a slow callback doesn't hold up the other calls.
+ * How busy the reactor is can be watched with
+ * {@link #getReactorOccupancy()} and {@link #getMaxReactorEventNanos()}.
+ * <p>
+ * Clients created without a transport share the one returned by
+ * {@link #getDefault()}, which is configured from system properties
+ * (see {@link JsonRpcHttpAsyncClient}) and never closed.
+ */
+public class JsonRpcHttpAsyncTransport
+	implements Closeable {
+
+	private static final Logger LOGGER = Logger.getLogger(JsonRpcHttpAsyncTransport.class.getName());
+
+	private static SSLContext defaultSslContext;
+	private static JsonRpcHttpAsyncTransport defaultTransport;
+
+	private final DefaultConnectingIOReactor ioReactor;
+	private final BasicNIOConnPool pool;
+	private final HttpAsyncRequester requester;
+	private final ScheduledThreadPoolExecutor deadlines;
+	private final Executor callbackExecutor;
+	private final boolean ownCallbackExecutor;
+	private final int reactorThreads;
+	private final long startNanos = System.nanoTime();
+
+	private final Set<Exchange> exchanges
+		= Collections.newSetFromMap(new ConcurrentHashMap<Exchange, Boolean>());
+
+	private final AtomicLong requests		= new AtomicLong();
+	private final AtomicLong failures		= new AtomicLong();
+	private final AtomicLong cancellations	= new AtomicLong();
+	private final AtomicInteger inFlight	= new AtomicInteger();
+	private final AtomicInteger maxInFlight	= new AtomicInteger();
+	private final AtomicLong reactorEvents	= new AtomicLong();
+	private final AtomicLong reactorNanos	= new AtomicLong();
+	private final AtomicLong maxReactorNanos	= new AtomicLong();
+
+	private JsonRpcHttpAsyncTransport(Builder builder)
+		throws IOReactorException {
+		this.reactorThreads = builder.reactorThreads;
+		this.ownCallbackExecutor = builder.callbackExecutor==null;
+		this.callbackExecutor = ownCallbackExecutor
+			? createCallbackExecutor(builder.reactorThreads)
+			: builder.callbackExecutor;
+
+		// HTTP parameters for the connections
+		final HttpParams params = new BasicHttpParams();
+		params.setIntParameter(CoreConnectionPNames.SO_TIMEOUT, builder.socketTimeoutMillis);
+		params.setIntParameter(CoreConnectionPNames.CONNECTION_TIMEOUT, builder.connectTimeoutMillis);
+		params.setIntParameter(CoreConnectionPNames.SOCKET_BUFFER_SIZE, builder.socketBufferSize);
+		params.setBooleanParameter(CoreConnectionPNames.TCP_NODELAY, builder.tcpNoDelay);
+		params.setParameter(CoreProtocolPNames.USER_AGENT, builder.userAgent);
+
+		// the IO reactor
+		IOReactorConfig config = new IOReactorConfig();
+		config.setIoThreadCount(builder.reactorThreads);
+		config.setSoTimeout(builder.socketTimeoutMillis);
+		config.setConnectTimeout(builder.connectTimeoutMillis);
+		config.setTcpNoDelay(builder.tcpNoDelay);
+		ioReactor = new DefaultConnectingIOReactor(config, new DaemonThreadFactory("jsonrpc4j HTTP IOReactor worker"));
+
+		// the connection pool
+		final SSLContext sslContext = builder.sslContext;
+		pool = new BasicNIOConnPool(ioReactor, new BasicNIOConnFactory(sslContext, null, params), params);
+		pool.setDefaultMaxPerRoute(builder.maxConnectionsPerRoute);
+		pool.setMaxTotal(builder.maxConnections);
+		for (Entry<HttpHost, Integer> entry : builder.routeMaxConnections.entrySet()) {
+			pool.setMaxPerRoute(entry.getKey(), entry.getValue());
+		}
+
+		// run the IO reactor
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					IOEventDispatch ioEventDispatch = new TimedIODispatch(
+						new HttpAsyncRequestExecutor(), sslContext, params);
+					ioReactor.execute(ioEventDispatch);
+				} catch (InterruptedIOException e) {
+					LOGGER.log(Level.FINE, "IO reactor interrupted", e);
+				} catch (IOException e) {
+					LOGGER.log(Level.SEVERE, "IO reactor failed", e);
+				}
+			}
+		}, "jsonrpc4j HTTP IOReactor");
+		thread.setDaemon(true);
+		thread.start();
+
+		// the requester
+		HttpProcessor httpProcessor = new ImmutableHttpProcessor(new HttpRequestInterceptor[] {
+			new RequestContent(), new RequestTargetHost(), new RequestConnControl(),
+			new RequestUserAgent(), new RequestExpectContinue()
+		});
+		requester = new HttpAsyncRequester(httpProcessor, new DefaultConnectionReuseStrategy(), params);
+
+		// and the timer for deadlines of calls
+		deadlines = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("jsonrpc4j HTTP deadlines"));
+		deadlines.setRemoveOnCancelPolicy(true);
+	}
+
+	private static ForkJoinPool createCallbackExecutor(int reactorThreads) {
+		int parallelism = Math.max(2, Math.min(reactorThreads, 4));
+		return new ForkJoinPool(parallelism, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+			public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				thread.setName("jsonrpc4j HTTP callback "+thread.getPoolIndex());
+				return thread;
+			}
+		}, null, true);
+	}
+
+	/**
+	 * @return a {@link Builder} for a transport
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Returns the transport shared by clients created without one,
+	 * creating it from the system properties on first use.
+	 *
+	 * @return the default transport
+	 */
+	public static synchronized JsonRpcHttpAsyncTransport getDefault() {
+		if (defaultTransport==null) {
+			Builder builder = builder()
+				.socketTimeoutMillis(Integer.getInteger("com.googlecode.jsonrpc4j.async.socket.timeout", 30000))
+				.connectTimeoutMillis(Integer.getInteger("com.googlecode.jsonrpc4j.async.connect.timeout", 30000))
+				.socketBufferSize(Integer.getInteger("com.googlecode.jsonrpc4j.async.socket.buffer", 8 * 1024))
+				.tcpNoDelay(Boolean.valueOf(System.getProperty("com.googlecode.jsonrpc4j.async.tcp.nodelay", "true")))
+				.maxConnectionsPerRoute(Integer.getInteger("com.googlecode.jsonrpc4j.async.max.inflight.route", 500))
+				.maxConnections(Integer.getInteger("com.googlecode.jsonrpc4j.async.max.inflight.total", 500))
+				.reactorThreads(Integer.getInteger("com.googlecode.jsonrpc4j.async.reactor.threads",
+					Runtime.getRuntime().availableProcessors()));
+			if (defaultSslContext!=null) {
+				builder.sslContext(defaultSslContext);
+			}
+			defaultTransport = builder.build();
+		}
+		return defaultTransport;
+	}
+
+	/**
+	 * Sets the {@link SSLContext} of the default transport.  This has
+	 * no effect once the default transport has been created.
+	 *
+	 * @param sslContext the {@link SSLContext}
+	 */
+	static synchronized void setDefaultSSLContext(SSLContext sslContext) {
+		defaultSslContext = sslContext;
+	}
+
+	/**
+	 * Sends a request and hands its response to the given callback.
+	 *
+	 * @param producer produces the request
+	 * @param consumer consumes the response
+	 * @param context the context of the exchange
+	 * @param callback receives the response
+	 * @return the {@link Future} of the exchange, cancelling it frees
+	 * a connection still being waited for
+	 */
+	Future<HttpResponse> execute(
+		HttpAsyncRequestProducer producer, HttpAsyncResponseConsumer<HttpResponse> consumer,
+		HttpContext context, FutureCallback<HttpResponse> callback) {
+		requests.incrementAndGet();
+		int current = inFlight.incrementAndGet();
+		int max = maxInFlight.get();
+		while (current>max && !maxInFlight.compareAndSet(max, current)) {
+			max = maxInFlight.get();
+		}
+		Exchange exchange = new Exchange(callback);
+		exchanges.add(exchange);
+		try {
+			exchange.future = requester.execute(producer, consumer, pool, context, exchange);
+		} catch (RuntimeException e) {
+			// the pool has been shut down
+			exchange.failed(e);
+			throw e;
+		}
+		return exchange.future;
+	}
+
+	/**
+	 * Runs the given task once the given time has passed.
+	 *
+	 * @param task the task
+	 * @param delayMillis the time
+	 * @return the {@link ScheduledFuture} of the task
+	 */
+	ScheduledFuture<?> schedule(final Runnable task, long delayMillis) {
+		return deadlines.schedule(new Runnable() {
+			public void run() {
+				dispatch(task);
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Runs the given task on the callback executor, or right
+	 * away if the executor no longer takes tasks.
+	 */
+	private void dispatch(Runnable task) {
+		try {
+			callbackExecutor.execute(task);
+		} catch (RejectedExecutionException e) {
+			task.run();
+		}
+	}
+
+	/**
+	 * Closes the pooled connections and stops the IO reactor, failing
+	 * the calls still under way.
+	 *
+	 * @throws IOException on error
+	 */
+	public void close()
+		throws IOException {
+		deadlines.shutdownNow();
+		pool.shutdown(1000);
+
+		// closing a connection doesn't end its exchange
+		for (Exchange exchange : exchanges) {
+			exchange.fail(new ConnectionClosedException("Transport closed"));
+		}
+		if (ownCallbackExecutor) {
+			((ExecutorService) callbackExecutor).shutdown();
+		}
+	}
+
+	/**
+	 * @return whether the transport has been closed
+	 */
+	public boolean isClosed() {
+		return pool.isShutdown();
+	}
+
+	/**
+	 * @return the connections of all routes: leased, available,
+	 * waited for and the most allowed
+	 */
+	public PoolStats getPoolStats() {
+		return pool.getTotalStats();
+	}
+
+	/**
+	 * @param url a service URL
+	 * @return the connections of the route to the given URL
+	 */
+	public PoolStats getPoolStats(URL url) {
+		return pool.getStats(toHttpHost(url));
+	}
+
+	/**
+	 * @return the status of the IO reactor
+	 */
+	public IOReactorStatus getReactorStatus() {
+		return ioReactor.getStatus();
+	}
+
+	/**
+	 * @return the {@link Executor} responses are decoded
+	 * and futures completed on
+	 */
+	public Executor getCallbackExecutor() {
+		return callbackExecutor;
+	}
+
+	/**
+	 * @return the number of IO events the reactor threads handled
+	 */
+	public long getReactorEventCount() {
+		return reactorEvents.get();
+	}
+
+	/**
+	 * @return the time the reactor threads spent handling IO events,
+	 * in nanoseconds
+	 */
+	public long getReactorBusyNanos() {
+		return reactorNanos.get();
+	}
+
+	/**
+	 * @return the longest time a reactor thread spent on a single
+	 * IO event, in nanoseconds, which is how long it held up the
+	 * other connections of the thread
+	 */
+	public long getMaxReactorEventNanos() {
+		return maxReactorNanos.get();
+	}
+
+	/**
+	 * @return the share of the time since the transport was created
+	 * that the reactor threads spent handling IO events, between 0 and 1
+	 */
+	public double getReactorOccupancy() {
+		long elapsed = (System.nanoTime()-startNanos) * reactorThreads;
+		return elapsed>0 ? (double) reactorNanos.get() / elapsed : 0;
+	}
+
+	/**
+	 * @return the number of IO reactor threads
+	 */
+	public int getReactorThreadCount() {
+		return reactorThreads;
+	}
+
+	/**
+	 * @return the number of requests sent
+	 */
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	/**
+	 * @return the number of requests that failed
+	 */
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	/**
+	 * @return the number of requests that were cancelled
+	 */
+	public long getCancellationCount() {
+		return cancellations.get();
+	}
+
+	/**
+	 * @return the number of requests waiting for a response
+	 */
+	public int getInFlightCount() {
+		return inFlight.get();
+	}
+
+	/**
+	 * @return the largest number of requests that
+	 * have been waiting for a response at once
+	 */
+	public int getMaxInFlightCount() {
+		return maxInFlight.get();
+	}
+
+	/**
+	 * @param url a URL
+	 * @return the route to the given URL
+	 */
+	static HttpHost toHttpHost(URL url) {
+		int port = url.getPort()!=-1 ? url.getPort() : url.getDefaultPort();
+		return new HttpHost(url.getHost(), port, url.getProtocol());
+	}
+
+	/**
+	 * Configures a {@link JsonRpcHttpAsyncTransport}.
+	 */
+	public static class Builder {
+
+		private int reactorThreads = Runtime.getRuntime().availableProcessors();
+		private int socketTimeoutMillis = 30000;
+		private int connectTimeoutMillis = 30000;
+		private int socketBufferSize = 8 * 1024;
+		private boolean tcpNoDelay = true;
+		private int maxConnectionsPerRoute = 500;
+		private int maxConnections = 500;
+		private final Map<HttpHost, Integer> routeMaxConnections = new HashMap<HttpHost, Integer>();
+		private SSLContext sslContext;
+		private String userAgent = "jsonrpc4j/1.0";
+		private Executor callbackExecutor;
+
+		private Builder() {
+		}
+
+		/**
+		 * @param reactorThreads the number of IO reactor threads,
+		 * the number of cores by default
+		 * @return this builder
+		 */
+		public Builder reactorThreads(int reactorThreads) {
+			this.reactorThreads = reactorThreads;
+			return this;
+		}
+
+		/**
+		 * @param socketTimeoutMillis how long a connection may be idle,
+		 * 30 seconds by default
+		 * @return this builder
+		 */
+		public Builder socketTimeoutMillis(int socketTimeoutMillis) {
+			this.socketTimeoutMillis = socketTimeoutMillis;
+			return this;
+		}
+
+		/**
+		 * @param connectTimeoutMillis how long connecting may take,
+		 * 30 seconds by default
+		 * @return this builder
+		 */
+		public Builder connectTimeoutMillis(int connectTimeoutMillis) {
+			this.connectTimeoutMillis = connectTimeoutMillis;
+			return this;
+		}
+
+		/**
+		 * @param socketBufferSize the socket buffer size in bytes, 8Kb by default
+		 * @return this builder
+		 */
+		public Builder socketBufferSize(int socketBufferSize) {
+			this.socketBufferSize = socketBufferSize;
+			return this;
+		}
+
+		/**
+		 * @param tcpNoDelay whether to use TCP_NODELAY, true by default
+		 * @return this builder
+		 */
+		public Builder tcpNoDelay(boolean tcpNoDelay) {
+			this.tcpNoDelay = tcpNoDelay;
+			return this;
+		}
+
+		/**
+		 * @param maxConnectionsPerRoute the most connections to
+		 * one route (unique URL, minus path and query), 500 by default
+		 * @return this builder
+		 */
+		public Builder maxConnectionsPerRoute(int maxConnectionsPerRoute) {
+			this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+			return this;
+		}
+
+		/**
+		 * @param url a service URL
+		 * @param maxConnections the most connections to its route,
+		 * instead of {@link #maxConnectionsPerRoute(int)}
+		 * @return this builder
+		 */
+		public Builder maxConnectionsPerRoute(URL url, int maxConnections) {
+			this.routeMaxConnections.put(toHttpHost(url), maxConnections);
+			return this;
+		}
+
+		/**
+		 * @param maxConnections the most connections to all
+		 * routes together, 500 by default
+		 * @return this builder
+		 */
+		public Builder maxConnections(int maxConnections) {
+			this.maxConnections = maxConnections;
+			return this;
+		}
+
+		/**
+		 * @param sslContext the {@link SSLContext} for https
+		 * connections, the JVM's default by default
+		 * @return this builder
+		 */
+		public Builder sslContext(SSLContext sslContext) {
+			this.sslContext = sslContext;
+			return this;
+		}
+
+		/**
+		 * @param userAgent the User-Agent header of requests
+		 * @return this builder
+		 */
+		public Builder userAgent(String userAgent) {
+			this.userAgent = userAgent;
+			return this;
+		}
+
+		/**
+		 * @param callbackExecutor the {@link Executor} responses are
+		 * decoded and futures completed on, which the transport doesn't
+		 * shut down.  By default the transport has a {@link ForkJoinPool}
+		 * of its own, with as many threads as reactor threads (at least 2,
+		 * at most 4).
+		 * @return this builder
+		 */
+		public Builder callbackExecutor(Executor callbackExecutor) {
+			this.callbackExecutor = callbackExecutor;
+			return this;
+		}
+
+		/**
+		 * Creates the transport and starts its IO reactor.
+		 *
+		 * @return the transport
+		 */
+		public JsonRpcHttpAsyncTransport build() {
+			if (sslContext==null) {
+				try {
+					sslContext = SSLContext.getDefault();
+				} catch (Exception e) {
+					throw new RuntimeException("Unable to get the default SSLContext", e);
+				}
+			}
+			try {
+				return new JsonRpcHttpAsyncTransport(this);
+			} catch (IOReactorException e) {
+				throw new RuntimeException("Exception initializing asynchronous Apache HTTP Client", e);
+			}
+		}
+	}
+
+	/**
+	 * A request waiting for its response.
+	 */
+	private class Exchange
+		implements FutureCallback<HttpResponse> {
+
+		private final FutureCallback<HttpResponse> callback;
+		private volatile Future<HttpResponse> future;
+
+		private Exchange(FutureCallback<HttpResponse> callback) {
+			this.callback = callback;
+		}
+
+		@SuppressWarnings("unchecked")
+		private void fail(Exception e) {
+			if (future instanceof BasicFuture) {
+				((BasicFuture<HttpResponse>) future).failed(e);
+			}
+		}
+
+		private boolean end() {
+			if (!exchanges.remove(this)) {
+				return false;
+			}
+			inFlight.decrementAndGet();
+			return true;
+		}
+
+		public void completed(final HttpResponse response) {
+			if (end()) {
+				dispatch(new Runnable() {
+					public void run() {
+						callback.completed(response);
+					}
+				});
+			}
+		}
+
+		public void failed(final Exception e) {
+			if (end()) {
+				failures.incrementAndGet();
+				dispatch(new Runnable() {
+					public void run() {
+						callback.failed(e);
+					}
+				});
+			}
+		}
+
+		public void cancelled() {
+			if (end()) {
+				cancellations.incrementAndGet();
+				dispatch(new Runnable() {
+					public void run() {
+						callback.cancelled();
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Times the IO events handled by the reactor threads.
+	 */
+	private class TimedIODispatch
+		extends DefaultHttpClientIODispatch {
+
+		private TimedIODispatch(NHttpClientEventHandler handler, SSLContext sslContext, HttpParams params) {
+			super(handler, sslContext, params);
+		}
+
+		private void record(long started) {
+			long nanos = System.nanoTime()-started;
+			reactorEvents.incrementAndGet();
+			reactorNanos.addAndGet(nanos);
+			long max = maxReactorNanos.get();
+			while (nanos>max && !maxReactorNanos.compareAndSet(max, nanos)) {
+				max = maxReactorNanos.get();
+			}
+		}
+
+		@Override
+		protected void onConnected(DefaultNHttpClientConnection conn) {
+			long started = System.nanoTime();
+			try {
+				super.onConnected(conn);
+			} finally {
+				record(started);
+			}
+		}
+
+		@Override
+		protected void onClosed(DefaultNHttpClientConnection conn) {
+			long started = System.nanoTime();
+			try {
+				super.onClosed(conn);
+			} finally {
+				record(started);
+			}
+		}
+
+		@Override
+		protected void onException(DefaultNHttpClientConnection conn, IOException e) {
+			long started = System.nanoTime();
+			try {
+				super.onException(conn, e);
+			} finally {
+				record(started);
+			}
+		}
+
+		@Override
+		protected void onInputReady(DefaultNHttpClientConnection conn) {
+			long started = System.nanoTime();
+			try {
+				super.onInputReady(conn);
+			} finally {
+				record(started);
+			}
+		}
+
+		@Override
+		protected void onOutputReady(DefaultNHttpClientConnection conn) {
+			long started = System.nanoTime();
+			try {
+				super.onOutputReady(conn);
+			} finally {
+				record(started);
+			}
+		}
+
+		@Override
+		protected void onTimeout(DefaultNHttpClientConnection conn) {
+			long started = System.nanoTime();
+			try {
+				super.onTimeout(conn);
+			} finally {
+				record(started);
+			}
+		}
+	}
+
+	/**
+	 * Creates daemon threads.
+	 */
+	private static class DaemonThreadFactory
+		implements ThreadFactory {
+
+		private final String name;
+		private final AtomicInteger count = new AtomicInteger();
+
+		private DaemonThreadFactory(String name) {
+			this.name = name;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, name+" "+count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
@@ -7,6 +7,7 @@ import java.lang.reflect.Type;
 import java.net.HttpURLConnection;
 import java.net.Proxy;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -20,7 +21,13 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * A JSON-RPC client that uses the HTTP protocol.
- *
+ * <p>
+ * With {@link #setStreamingRequests(boolean)} requests are sent in a
+ * chunked request body as they're serialized from the arguments, so
+ * that sending even very large arguments needs no more memory than a chunk.
+ * Without it {@link HttpURLConnection} buffers every request in full to
+ * set its {@code Content-Length}.  A {@link JavaHttpClientTransport}
+ * streams the requests that outgrow a chunk either way.
  */
 public class JsonRpcHttpClient
 	extends JsonRpcClient {
@@ -33,6 +40,8 @@ public class JsonRpcHttpClient
 	private SSLContext sslContext 				= null;
 	private HostnameVerifier hostNameVerifier 	= null;
 	private Map<String, String> headers			= new HashMap<String, String>();
+	private JsonRpcHttpTransport transport		= null;
+	private int chunkLength						= 64 * 1024;
 
 	/**
 	 * Creates the {@link JsonRpcHttpClient} bound to the given {@code serviceUrl}.
@@ -137,27 +146,106 @@ public class JsonRpcHttpClient
 		Map<String, String> extraHeaders)
 		throws Throwable {
 
+		// send it and read the response
+		InputStream ips = post(requestBody(methodName, argument), extraHeaders);
+		try {
+			return super.readResponse(returnType, ips);
+		} finally {
+			ips.close();
+		}
+	}
+
+	/**
+	 * POSTs a request body to the service, through the transport
+	 * if one is set, and returns the body of the response.
+	 * @param body writes the request body
+	 * @param extraHeaders extra headers to add to the request
+	 * @return the response body, to be closed by the caller
+	 * @throws IOException on error
+	 */
+	protected InputStream post(
+		JsonRpcHttpTransport.RequestBody body, Map<String, String> extraHeaders)
+		throws IOException {
+
+		// hand it to the transport
+		if (transport!=null) {
+			return transport.post(serviceUrl, prepareHeaders(extraHeaders), body);
+		}
+
 		// create URLConnection
 		HttpURLConnection con = prepareConnection(extraHeaders);
 		con.connect();
 
-		// invoke it
+		// write the request
 		OutputStream ops = con.getOutputStream();
 		try {
-			super.invoke(methodName, argument, ops);
+			body.writeTo(ops);
 		} finally {
 			ops.close();
 		}
 
-		// read and return value
-		InputStream ips = con.getInputStream();
+		// and return the response
+		return getInputStream(con);
+	}
+
+	/**
+	 * Returns the stream of the response, consuming the error
+	 * stream of a failed response so that the connection isn't
+	 * dropped from the JDK's keep-alive cache.
+	 */
+	private InputStream getInputStream(HttpURLConnection con)
+		throws IOException {
 		try {
-			return super.readResponse(returnType, ips);
-		} finally {
-			ips.close();
+			return con.getInputStream();
+		} catch (IOException e) {
+			InputStream err = con.getErrorStream();
+			if (err!=null) {
+				try {
+					byte[] discard = new byte[1024];
+					while (err.read(discard)!=-1);
+				} finally {
+					err.close();
+				}
+			}
+			throw e;
 		}
 	}
 
+	private JsonRpcHttpTransport.RequestBody requestBody(
+		final String methodName, final Object argument) {
+		return new JsonRpcHttpTransport.RequestBody() {
+			public void writeTo(OutputStream ops)
+				throws IOException {
+				JsonRpcHttpClient.super.invoke(methodName, argument, ops);
+			}
+		};
+	}
+
+	/**
+	 * Prepares the headers of a request for the {@link JsonRpcHttpTransport}.
+	 * @param extraHeaders extra headers to add to the request
+	 * @return the headers
+	 */
+	protected Map<String, String> prepareHeaders(Map<String, String> extraHeaders) {
+		Map<String, String> ret = new HashMap<String, String>(headers);
+		ret.putAll(extraHeaders);
+		ret.put("Content-Type", "application/json-rpc");
+		return ret;
+	}
+
+	/**
+	 * Returns the scope that the {@link JsonRpcResultCache} keys the
+	 * results of requests with the given extra headers on: the service
+	 * URL and every header sent, so that callers with different headers,
+	 * such as credentials, or clients of different services don't share
+	 * results.
+	 * @param extraHeaders extra headers to add to the request
+	 * @return the scope
+	 */
+	public Object getResultCacheScope(Map<String, String> extraHeaders) {
+		return Arrays.asList(String.valueOf(serviceUrl), prepareHeaders(extraHeaders));
+	}
+
 	/**
 	 * Invokes the given method with the given arguments and returns
 	 * an object of the given type, or null if void.
@@ -199,6 +287,11 @@ public class JsonRpcHttpClient
 		con.setInstanceFollowRedirects(true);
 		con.setRequestMethod("POST");
 
+		// send streamed requests as they're written instead of buffering them
+		if (isStreamingRequests()) {
+			con.setChunkedStreamingMode(chunkLength);
+		}
+
 		// do stuff for ssl
 		if (HttpsURLConnection.class.isInstance(con)) {
 			HttpsURLConnection https = HttpsURLConnection.class.cast(con);
@@ -223,6 +316,26 @@ public class JsonRpcHttpClient
 		return con;
 	}
 
+	/**
+	 * @return the transport, or null when requests go
+	 * through {@link #prepareConnection(Map)}
+	 */
+	public JsonRpcHttpTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Sets the transport that carries the requests.  By default
+	 * (or when set to null) a {@link HttpURLConnection} is opened
+	 * for every request with {@link #prepareConnection(Map)}, in
+	 * which case the connection proxy, timeouts and SSL settings of
+	 * this client apply.
+	 * @param transport the transport
+	 */
+	public void setTransport(JsonRpcHttpTransport transport) {
+		this.transport = transport;
+	}
+
 	/**
 	 * @return the serviceUrl
 	 */
@@ -294,6 +407,16 @@ public class JsonRpcHttpClient
 		this.headers.putAll(headers);
 	}
 
+	/**
+	 * Sets the size of the chunks that requests are sent in when
+	 * {@link #setStreamingRequests(boolean) streaming requests}, the
+	 * memory needed to send a request of any size.
+	 * @param chunkLength the chunk length in bytes
+	 */
+	public void setChunkLength(int chunkLength) {
+		this.chunkLength = chunkLength;
+	}
+
 	/**
 	 * @param sslContext the sslContext to set
 	 */
@@ -0,0 +1,46 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Carries the requests of a {@link JsonRpcHttpClient} to the server,
+ * see {@link JsonRpcHttpClient#setTransport(JsonRpcHttpTransport)}.
+ * Implementations must be thread safe.
+ */
+public interface JsonRpcHttpTransport {
+
+	/**
+	 * POSTs a request to the given URL and returns the body of
+	 * the response, which the caller closes once it has been read.
+	 * A response with a status other than 200 is consumed by the
+	 * transport, so that its connection can be reused, and reported
+	 * as an {@link IOException}.
+	 *
+	 * @param url the URL
+	 * @param headers the request headers
+	 * @param body writes the request body
+	 * @return the response body
+	 * @throws IOException on error
+	 */
+	InputStream post(URL url, Map<String, String> headers, RequestBody body)
+		throws IOException;
+
+	/**
+	 * Writes the body of a request.
+	 */
+	interface RequestBody {
+
+		/**
+		 * Writes the body to the given stream.
+		 * @param ops the {@link OutputStream}
+		 * @throws IOException on error
+		 */
+		void writeTo(OutputStream ops)
+			throws IOException;
+	}
+
+}
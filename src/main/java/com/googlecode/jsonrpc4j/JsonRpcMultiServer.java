@@ -63,6 +63,7 @@ public class JsonRpcMultiServer extends JsonRpcServer {
 		if (remoteInterface != null) {
 			interfaceMap.put(name, remoteInterface);
 		}
+		prepareDispatchTable(name);
 		return this;
 	}
 
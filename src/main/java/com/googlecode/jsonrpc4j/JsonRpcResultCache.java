@@ -0,0 +1,310 @@
+package com.googlecode.jsonrpc4j;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Caches the results of the {@link JsonRpcCacheable} methods called
+ * through client proxies, keyed on the method, the scope of the call
+ * and its arguments (as JSON with sorted properties, so equal scopes
+ * and arguments share a result).  The scope tells apart the calls
+ * that may answer differently, such as calls to different services
+ * or with different headers, so the result of one caller isn't
+ * returned to another.
+ * Each method keeps at most {@link JsonRpcCacheable#maxEntries()}
+ * results, evicting the oldest first.  Concurrent calls missing the
+ * same result wait for a single remote call, and a result past its
+ * {@link JsonRpcCacheable#ttl()} but within its
+ * {@link JsonRpcCacheable#staleWhileRevalidate()} is returned while
+ * one background call refreshes it.  Failed calls aren't cached.
+ * <p>
+ * Cached results are shared between callers, so they shouldn't
+ * be modified.
+ */
+public class JsonRpcResultCache {
+
+	private static final Logger LOGGER = Logger.getLogger(JsonRpcResultCache.class.getName());
+
+	private final ObjectWriter keyWriter;
+	private final Executor refreshExecutor;
+	private final ConcurrentMap<Method, MethodCache> methodCaches
+		= new ConcurrentHashMap<Method, MethodCache>();
+
+	private final AtomicLong hits		= new AtomicLong();
+	private final AtomicLong staleHits	= new AtomicLong();
+	private final AtomicLong misses		= new AtomicLong();
+	private final AtomicLong evictions	= new AtomicLong();
+
+	/**
+	 * Creates the cache.
+	 *
+	 * @param mapper the {@link ObjectMapper} the arguments are keyed with
+	 * @param refreshExecutor the {@link Executor} stale results are refreshed on
+	 */
+	public JsonRpcResultCache(ObjectMapper mapper, Executor refreshExecutor) {
+		this.keyWriter = mapper.copy()
+			.configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true)
+			.writer()
+			.with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+		this.refreshExecutor = refreshExecutor;
+	}
+
+	/**
+	 * Creates the cache, refreshing stale results on daemon threads.
+	 *
+	 * @param mapper the {@link ObjectMapper} the arguments are keyed with
+	 */
+	public JsonRpcResultCache(ObjectMapper mapper) {
+		this(mapper, Executors.newCachedThreadPool(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "JsonRpcResultCache-refresh");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}));
+	}
+
+	/**
+	 * Returns the result of calling the given method with the given
+	 * arguments, from the cache if the method is {@link JsonRpcCacheable}
+	 * and a fresh enough result is held for the given scope, from the
+	 * given call otherwise.
+	 *
+	 * @param scope where the call goes, serialized into the key
+	 * @param method the method
+	 * @param args the arguments
+	 * @param call makes the remote call
+	 * @return the result
+	 * @throws Throwable on error
+	 */
+	public Object get(Object scope, Method method, Object[] args, RemoteCall call)
+		throws Throwable {
+		MethodCache methodCache = methodCaches.get(method);
+		if (methodCache==null) {
+			JsonRpcCacheable cacheable = method.getAnnotation(JsonRpcCacheable.class);
+			methodCache = new MethodCache(cacheable);
+			MethodCache existing = methodCaches.putIfAbsent(method, methodCache);
+			if (existing!=null) {
+				methodCache = existing;
+			}
+		}
+		if (methodCache.cacheable==null) {
+			return call.call();
+		}
+		String key = keyWriter.writeValueAsString(
+			new Object[] {scope, args!=null ? args : new Object[0]});
+		return methodCache.get(key, call);
+	}
+
+	/**
+	 * Makes a remote call.
+	 */
+	public interface RemoteCall {
+
+		/**
+		 * @return the result of the call
+		 * @throws Throwable on error
+		 */
+		Object call()
+			throws Throwable;
+	}
+
+	/**
+	 * @return the number of calls answered with a fresh result,
+	 * or by waiting for another caller's remote call
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of calls answered with a stale
+	 * result while it was refreshed
+	 */
+	public long getStaleHitCount() {
+		return staleHits.get();
+	}
+
+	/**
+	 * @return the number of calls that made a remote call
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of results evicted to keep
+	 * within {@link JsonRpcCacheable#maxEntries()}
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * The results of one method.
+	 */
+	private class MethodCache {
+
+		private final JsonRpcCacheable cacheable;
+		private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+		private final ConcurrentLinkedQueue<Entry> insertionOrder = new ConcurrentLinkedQueue<Entry>();
+		private final AtomicInteger queued = new AtomicInteger();
+
+		private MethodCache(JsonRpcCacheable cacheable) {
+			this.cacheable = cacheable;
+		}
+
+		private Object get(String key, RemoteCall call)
+			throws Throwable {
+			while (true) {
+				Entry entry = entries.get(key);
+
+				// a result, or a call under way
+				if (entry!=null) {
+					long now = System.currentTimeMillis();
+					if (!entry.isDone() || now<entry.loadedAt+cacheable.ttl()) {
+						hits.incrementAndGet();
+						return entry.getResult();
+					}
+					if (now<entry.loadedAt+cacheable.ttl()+cacheable.staleWhileRevalidate()) {
+						staleHits.incrementAndGet();
+						refresh(entry, call);
+						return entry.getResult();
+					}
+					entries.remove(key, entry);
+				}
+
+				// make the call, unless someone beat us to it
+				Entry created = new Entry(key, call);
+				if (entries.putIfAbsent(key, created)!=null) {
+					continue;
+				}
+				misses.incrementAndGet();
+				enqueue(created);
+				evict();
+				created.run();
+				return created.getResult();
+			}
+		}
+
+		private void refresh(final Entry stale, RemoteCall call) {
+			if (!stale.refreshing.compareAndSet(false, true)) {
+				return;
+			}
+			final Entry fresh = new Entry(stale.key, call);
+			refreshExecutor.execute(new Runnable() {
+				public void run() {
+					fresh.run();
+					try {
+						fresh.get();
+						if (entries.replace(stale.key, stale, fresh)) {
+							enqueue(fresh);
+						}
+					} catch (Exception e) {
+						// keep serving the stale result, the next call retries
+						stale.refreshing.set(false);
+						if (LOGGER.isLoggable(Level.FINE)) {
+							LOGGER.log(Level.FINE, "Unable to refresh cached result", e);
+						}
+					}
+				}
+			});
+		}
+
+		private void enqueue(Entry entry) {
+			insertionOrder.add(entry);
+			queued.incrementAndGet();
+		}
+
+		private void evict() {
+
+			// the oldest results beyond the limit
+			while (entries.size()>cacheable.maxEntries()) {
+				Entry oldest = insertionOrder.poll();
+				if (oldest==null) {
+					return;
+				}
+				queued.decrementAndGet();
+				if (entries.remove(oldest.key, oldest)) {
+					evictions.incrementAndGet();
+				}
+			}
+
+			// and the expired or refreshed ones left in the queue
+			for (int i=queued.get(); i>0 && queued.get()>2*cacheable.maxEntries(); i--) {
+				Entry oldest = insertionOrder.poll();
+				if (oldest==null) {
+					return;
+				}
+				queued.decrementAndGet();
+				if (entries.get(oldest.key)==oldest) {
+					enqueue(oldest);
+				}
+			}
+		}
+
+		/**
+		 * A result, loaded once.
+		 */
+		private class Entry
+			extends FutureTask<Object> {
+
+			private final String key;
+			private volatile long loadedAt;
+			private final AtomicBoolean refreshing = new AtomicBoolean();
+
+			private Entry(String key, final RemoteCall call) {
+				super(new Callable<Object>() {
+					public Object call()
+						throws Exception {
+						try {
+							return call.call();
+						} catch (Exception e) {
+							throw e;
+						} catch (Error e) {
+							throw e;
+						} catch (Throwable t) {
+							throw new UndeclaredThrowableException(t);
+						}
+					}
+				});
+				this.key = key;
+			}
+
+			@Override
+			protected void done() {
+				loadedAt = System.currentTimeMillis();
+			}
+
+			private Object getResult()
+				throws Throwable {
+				try {
+					return get();
+				} catch (ExecutionException e) {
+					entries.remove(key, this);
+					throw e.getCause();
+				}
+			}
+		}
+	}
+
+}
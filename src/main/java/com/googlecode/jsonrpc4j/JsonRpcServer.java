@@ -1,18 +1,14 @@
 package com.googlecode.jsonrpc4j;
 
-import static com.googlecode.jsonrpc4j.ReflectionUtil.findMethods;
-import static com.googlecode.jsonrpc4j.ReflectionUtil.getParameterAnnotations;
-import static com.googlecode.jsonrpc4j.ReflectionUtil.getParameterTypes;
-
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.lang.reflect.Type;
 import java.math.BigDecimal;
 import java.net.URLDecoder;
 import java.util.ArrayList;
@@ -21,6 +17,14 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -29,16 +33,22 @@ import javax.portlet.ResourceResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.googlecode.jsonrpc4j.ErrorResolver.JsonError;
+import com.googlecode.jsonrpc4j.MethodDispatchTable.Overloads;
 
 /**
  * A JSON-RPC request server reads JSON-RPC requests from an
@@ -53,28 +63,31 @@ public class JsonRpcServer {
 	public static final ErrorResolver DEFAULT_ERRROR_RESOLVER
 		= new MultipleErrorResolver(AnnotationsErrorResolver.INSTANCE, DefaultErrorResolver.INSTANCE);
 
-	private static Class<?> WEBPARAM_ANNOTATION_CLASS;
-	private static Method WEBPARAM_NAME_METHOD;
+	private static final String DEFAULT_SERVICE_KEY = "";
 
 	private boolean backwardsComaptible		= true;
 	private boolean rethrowExceptions 		= false;
 	private boolean allowExtraParams 		= false;
 	private boolean allowLessParams			= false;
+	private boolean streamingRequests		= false;
+	private boolean bufferResults			= false;
 	private ErrorResolver errorResolver	= null;
+	private Executor batchExecutor		= null;
+	private int maxBatchParallelism		= 0;
+	private Semaphore serverPermits		= null;
 	private ObjectMapper mapper;
 	private Object handler;
 	private Class<?> remoteInterface;
 	private Level exceptionLogLevel = Level.WARNING;
+	private final boolean treeResponses;
+	private final boolean invokeOverridden;
+	private final boolean handlersOverridden;
+	private final ObjectWriter treeWriter;
 
-	static {
-		ClassLoader classLoader = JsonRpcServer.class.getClassLoader();
-		try {
-			WEBPARAM_ANNOTATION_CLASS = classLoader.loadClass("javax.jws.WebParam");
-			WEBPARAM_NAME_METHOD  = WEBPARAM_ANNOTATION_CLASS.getMethod("name");
-		} catch (Exception e) {
-			// Must be Java 1.5
-		}
-	}
+	private final ConcurrentMap<String, MethodDispatchTable> dispatchTables
+		= new ConcurrentHashMap<String, MethodDispatchTable>();
+	private final ConcurrentMap<Method, MethodDescriptor> methodDescriptors
+		= new ConcurrentHashMap<Method, MethodDescriptor>();
 
 	/**
 	 * Creates the server with the given {@link ObjectMapper} delegating
@@ -90,6 +103,27 @@ public class JsonRpcServer {
 		this.mapper				= mapper;
 		this.handler 			= handler;
 		this.remoteInterface	= remoteInterface;
+
+		// results are streamed straight into the response unless
+		// a subclass customizes them as trees
+		this.invokeOverridden	= isOverridden("invoke", Object.class, Method.class, List.class);
+		this.treeResponses		= invokeOverridden
+			|| isOverridden("createSuccessResponse", String.class, Object.class, JsonNode.class);
+
+		// requests go through the public handlers if a subclass
+		// customizes any of them
+		this.handlersOverridden	= isOverridden("handleNode", JsonNode.class, OutputStream.class)
+			|| isOverridden("handleArray", ArrayNode.class, OutputStream.class)
+			|| isOverridden("handleObject", ObjectNode.class, OutputStream.class);
+
+		// responses are written into a shared generator that's flushed once
+		this.treeWriter			= mapper.writer()
+			.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+		// build the dispatch table up front
+		if (handler!=null) {
+			prepareDispatchTable(null);
+		}
 	}
 
 	/**
@@ -219,6 +253,10 @@ public class JsonRpcServer {
 	 */
 	public void handle(InputStream ips, OutputStream ops)
 		throws IOException {
+		if (streamingRequests && !invokeOverridden && !handlersOverridden) {
+			handleStream(ips, ops);
+			return;
+		}
 		JsonNode jsonNode = null;
 		try {
 			jsonNode = mapper.readTree(new NoCloseInputStream(ips));
@@ -276,7 +314,78 @@ public class JsonRpcServer {
 		}
 	}
 
-	
+	/**
+	 * (Re)builds the dispatch table for the given service from
+	 * {@link #getHandlerInterfaces(String)}.  This is done once
+	 * when the server is created and should be called again by
+	 * subclasses whenever the handler of a service changes.
+	 *
+	 * @param serviceName the optional name of a service
+	 */
+	protected void prepareDispatchTable(String serviceName) {
+		MethodDispatchTable table = MethodDispatchTable.create(
+			getHandlerInterfaces(serviceName), mapper);
+		for (MethodDescriptor descriptor : table.getMethods()) {
+			methodDescriptors.put(descriptor.getMethod(), descriptor);
+		}
+		dispatchTables.put(serviceKey(serviceName), table);
+	}
+
+	/**
+	 * Returns the dispatch table for the given service, building
+	 * it if it hasn't been prepared yet.
+	 *
+	 * @param serviceName the optional name of a service
+	 * @return the {@link MethodDispatchTable}
+	 */
+	private MethodDispatchTable getDispatchTable(String serviceName) {
+		MethodDispatchTable table = dispatchTables.get(serviceKey(serviceName));
+		if (table==null) {
+			prepareDispatchTable(serviceName);
+			table = dispatchTables.get(serviceKey(serviceName));
+		}
+		return table;
+	}
+
+	/**
+	 * Returns the {@link MethodDescriptor} of the given {@link Method}.
+	 *
+	 * @param method the {@link Method}
+	 * @return the {@link MethodDescriptor}
+	 */
+	private MethodDescriptor getMethodDescriptor(Method method) {
+		MethodDescriptor descriptor = methodDescriptors.get(method);
+		if (descriptor==null) {
+			descriptor = new MethodDescriptor(method, mapper);
+			methodDescriptors.put(method, descriptor);
+		}
+		return descriptor;
+	}
+
+	private static String serviceKey(String serviceName) {
+		return (serviceName!=null) ? serviceName : DEFAULT_SERVICE_KEY;
+	}
+
+	/**
+	 * Checks whether a subclass overrides the given method
+	 * declared by {@link JsonRpcServer}.
+	 *
+	 * @param name the method name
+	 * @param parameterTypes the parameter types
+	 * @return true if it's overridden
+	 */
+	private boolean isOverridden(String name, Class<?>... parameterTypes) {
+		for (Class<?> clazz = getClass(); clazz!=JsonRpcServer.class; clazz = clazz.getSuperclass()) {
+			try {
+				clazz.getDeclaredMethod(name, parameterTypes);
+				return true;
+			} catch (NoSuchMethodException e) {
+				// keep looking
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Handles the given {@link JsonNode} and writes the
 	 * responses to the given {@link OutputStream}.
@@ -288,43 +397,272 @@ public class JsonRpcServer {
 	public void handleNode(JsonNode node, OutputStream ops)
 		throws IOException {
 
+		// arrays are framed as a batch
+		if (node.isArray()) {
+			handleArray(ArrayNode.class.cast(node), ops);
+			return;
+		}
+
+		// objects go through the public handler if it's overridden
+		if (handlersOverridden && node.isObject()) {
+			handleObject(ObjectNode.class.cast(node), ops);
+			return;
+		}
+
+		Responses responses = new Responses(ops, false);
+		try {
+			handleNode(node, responses);
+		} finally {
+			responses.finish();
+		}
+	}
+
+	/**
+	 * Handles the given {@link JsonNode} and writes the
+	 * responses to the given {@link Responses}.
+	 *
+	 * @param node the {@link JsonNode}
+	 * @param responses the {@link Responses}
+	 * @throws IOException on error
+	 */
+	private void handleNode(JsonNode node, Responses responses)
+		throws IOException {
+
 		// handle objects
 		if (node.isObject()) {
-			handleObject(ObjectNode.class.cast(node), ops);
+			handleObject(ObjectNode.class.cast(node), responses);
 
-		// handle arrays
+		// handle nested arrays, one element at a time since the
+		// element holding them may already hold a server permit
 		} else if (node.isArray()) {
-			handleArray(ArrayNode.class.cast(node), ops);
+			JsonGenerator generator = responses.next();
+			generator.writeStartArray();
+			Responses nested = new Responses(generator);
+			for (int i=0; i<node.size(); i++) {
+				handleElement(node.get(i), nested);
+			}
+			generator.writeEndArray();
 
 		// bail on bad data
 		} else {
-			this.writeAndFlushValue(
-				ops, this.createErrorResponse(
+			writeResponse(responses, createErrorResponse(
 				"2.0", "null", -32600, "Invalid Request", null));
 		}
 	}
 
 	/**
 	 * Handles the given {@link ArrayNode} and writes the
-	 * responses to the given {@link OutputStream}.
+	 * responses to the given {@link OutputStream}.  Responses
+	 * to notifications are left out, and nothing at all is
+	 * written if every element was a notification.
 	 *
 	 * @param node the {@link JsonNode}
 	 * @param ops the {@link OutputStream}
 	 * @throws IOException on error
 	 */
 	public void handleArray(ArrayNode node, OutputStream ops)
+		throws IOException {
+		Responses responses = new Responses(ops, true);
+		try {
+			handleArray(node, responses);
+		} finally {
+			responses.finish();
+		}
+	}
+
+	/**
+	 * Handles the elements of the given {@link ArrayNode} and
+	 * writes their responses to the given {@link Responses}.
+	 *
+	 * @param node the {@link ArrayNode}
+	 * @param responses the {@link Responses}
+	 * @throws IOException on error
+	 */
+	private void handleArray(ArrayNode node, Responses responses)
 		throws IOException {
 		if (LOGGER.isLoggable(Level.FINE)) {
 			LOGGER.log(Level.FINE, "Handing "+node.size()+" requests");
 		}
 
+		// execute the elements concurrently if we can
+		if (batchExecutor!=null && node.size()>1) {
+			handleArrayConcurrently(node, responses);
+			return;
+		}
+
 		// loop through each array element
-		ops.write('[');
 		for (int i=0; i<node.size(); i++) {
-			handleNode(node.get(i), ops);
-			if (i != node.size() - 1) ops.write(','); 
+			handleElement(node.get(i), responses);
+		}
+	}
+
+	/**
+	 * Handles an element of a batch and writes its response to
+	 * the given {@link Responses}.  If a subclass overrides the
+	 * public handlers the element goes through
+	 * {@link #handleNode(JsonNode, OutputStream)}, except for
+	 * nested arrays which are always handled one element at a
+	 * time.
+	 *
+	 * @param node the {@link JsonNode}
+	 * @param responses the {@link Responses}
+	 * @throws IOException on error
+	 */
+	private void handleElement(JsonNode node, Responses responses)
+		throws IOException {
+		if (!handlersOverridden || node.isArray()) {
+			handleNode(node, responses);
+			return;
+		}
+		ByteArrayOutputStream element = new ByteArrayOutputStream();
+		handleNode(node, element);
+		if (element.size()>0) {
+			responses.next().writeRawValue(element.toString("UTF-8"));
+		}
+	}
+
+	/**
+	 * Handles the elements of the given {@link ArrayNode} on the
+	 * {@link #setBatchExecutor(Executor) batch executor} and writes
+	 * their responses, in request order, to the given
+	 * {@link Responses}.  The calling thread works on the batch
+	 * too, so it completes even if the executor is saturated.
+	 *
+	 * @param node the {@link ArrayNode}
+	 * @param responses the {@link Responses}
+	 * @throws IOException on error
+	 */
+	private void handleArrayConcurrently(final ArrayNode node, Responses responses)
+		throws IOException {
+		final TokenBuffer[] buffers = new TokenBuffer[node.size()];
+		final AtomicInteger next = new AtomicInteger();
+		final Semaphore permits = serverPermits;
+
+		// each worker handles elements until there are none left,
+		// buffering the responses until the whole batch is done
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final Runnable worker = new Runnable() {
+			public void run() {
+				try {
+					for (int i=next.getAndIncrement(); i<buffers.length; i=next.getAndIncrement()) {
+						TokenBuffer buffer = new TokenBuffer(mapper, false);
+						Responses elementResponses = new Responses(buffer);
+						if (permits!=null) {
+							permits.acquireUninterruptibly();
+						}
+						try {
+							handleElement(node.get(i), elementResponses);
+						} finally {
+							if (permits!=null) {
+								permits.release();
+							}
+						}
+						if (elementResponses.hasResponses()) {
+							buffers[i] = buffer;
+						}
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			}
+		};
+
+		// start the workers, the calling thread being one of them
+		final BatchWorkers workers = new BatchWorkers();
+		int workerCount = (maxBatchParallelism>0)
+			? Math.min(maxBatchParallelism, buffers.length)
+			: buffers.length;
+		List<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>();
+		for (int i=1; i<workerCount; i++) {
+			FutureTask<Object> task = new FutureTask<Object>(new Runnable() {
+				public void run() {
+					if (workers.enter()) {
+						try {
+							worker.run();
+						} finally {
+							workers.exit();
+						}
+					}
+				}
+			}, null);
+			try {
+				batchExecutor.execute(task);
+			} catch (RejectedExecutionException e) {
+				break;
+			}
+			tasks.add(task);
+		}
+		worker.run();
+
+		// every element has been taken once the calling thread is done,
+		// so wait for the workers that are running and cancel the rest,
+		// which may still be queued behind other work
+		try {
+			workers.close();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while handling batch", e);
+		} finally {
+			for (FutureTask<Object> task : tasks) {
+				task.cancel(false);
+			}
+		}
+
+		// re-throw the first failure
+		Throwable thrown = failure.get();
+		if (IOException.class.isInstance(thrown)) {
+			throw IOException.class.cast(thrown);
+		} else if (RuntimeException.class.isInstance(thrown)) {
+			throw RuntimeException.class.cast(thrown);
+		} else if (thrown!=null) {
+			throw Error.class.cast(thrown);
+		}
+
+		// write the responses, notifications have none
+		for (TokenBuffer buffer : buffers) {
+			if (buffer!=null) {
+				buffer.serialize(responses.next());
+			}
+		}
+	}
+
+	/**
+	 * Keeps count of the executor's workers on a batch.  Workers
+	 * that start after the batch is closed don't run at all, so
+	 * the calling thread only waits for the ones already running.
+	 */
+	private static final class BatchWorkers {
+
+		private int running;
+		private boolean closed;
+
+		/**
+		 * @return true if the worker may run, false if the batch is closed
+		 */
+		synchronized boolean enter() {
+			if (closed) {
+				return false;
+			}
+			running++;
+			return true;
+		}
+
+		synchronized void exit() {
+			running--;
+			notifyAll();
+		}
+
+		/**
+		 * Closes the batch and waits for the running workers.
+		 * @throws InterruptedException if interrupted while waiting
+		 */
+		synchronized void close()
+			throws InterruptedException {
+			closed = true;
+			while (running>0) {
+				wait();
+			}
 		}
-		ops.write(']');
 	}
 
 	/**
@@ -336,6 +674,24 @@ public class JsonRpcServer {
 	 * @throws IOException on error
 	 */
 	public void handleObject(ObjectNode node, OutputStream ops)
+		throws IOException {
+		Responses responses = new Responses(ops, false);
+		try {
+			handleObject(node, responses);
+		} finally {
+			responses.finish();
+		}
+	}
+
+	/**
+	 * Handles the given {@link ObjectNode} and writes the
+	 * response to the given {@link Responses}.
+	 *
+	 * @param node the {@link JsonNode}
+	 * @param responses the {@link Responses}
+	 * @throws IOException on error
+	 */
+	private void handleObject(ObjectNode node, Responses responses)
 		throws IOException {
 		if (LOGGER.isLoggable(Level.FINE)) {
 			LOGGER.log(Level.FINE, "Request: "+node.toString());
@@ -343,7 +699,7 @@ public class JsonRpcServer {
 
 		// validate request
 		if (!backwardsComaptible && !node.has("jsonrpc") || !node.has("method")) {
-			writeAndFlushValue(ops, createErrorResponse(
+			writeResponse(responses, createErrorResponse(
 				"2.0", "null", -32600, "Invalid Request", null));
 			return;
 		}
@@ -361,10 +717,9 @@ public class JsonRpcServer {
 		Object id			= parseId(idNode);
 
 		// find methods
-		Set<Method> methods = new HashSet<Method>();
-		methods.addAll(findMethods(getHandlerInterfaces(serviceName), methodName));
-		if (methods.isEmpty()) {
-			writeAndFlushValue(ops, createErrorResponse(
+		Overloads methods = getDispatchTable(serviceName).getOverloads(methodName);
+		if (methods==null) {
+			writeResponse(responses, createErrorResponse(
 				jsonRpc, id, -32601, "Method not found", null));
 			return;
 		}
@@ -372,18 +727,51 @@ public class JsonRpcServer {
 		// choose a method
 		MethodAndArgs methodArgs = findBestMethodByParamsNode(methods, paramsNode);
 		if (methodArgs==null) {
-			writeAndFlushValue(ops, createErrorResponse(
+			writeResponse(responses, createErrorResponse(
 				jsonRpc, id, -32602, "Invalid method parameters", null));
 			return;
 		}
 
-		// invoke the method
-		JsonNode result = null;
-		Throwable thrown = null;
-		try {
-			result = invoke(getHandler(serviceName), methodArgs.method, methodArgs.arguments);
-		} catch (Throwable e) {
-			thrown = e;
+		// invoke the method and respond
+		invokeAndRespond(responses, jsonRpc, id, serviceName, methodArgs);
+	}
+
+	/**
+	 * Invokes the method chosen for a request and writes the
+	 * response unless the request is a notification.
+	 *
+	 * @param responses the {@link Responses}
+	 * @param jsonRpc the jsonrpc string
+	 * @param id the id
+	 * @param serviceName the optional name of a service
+	 * @param methodArgs the method and its arguments
+	 * @throws IOException on error
+	 */
+	private void invokeAndRespond(
+		Responses responses, String jsonRpc, Object id, String serviceName, MethodAndArgs methodArgs)
+		throws IOException {
+
+		// invoke the method, unless binding the arguments already failed
+		Object result = null;
+		Throwable thrown = methodArgs.bindError;
+		if (thrown==null) {
+			try {
+				Object target = getHandler(serviceName);
+				if (treeResponses) {
+					result = (methodArgs.convertedArguments!=null)
+						? mapper.valueToTree(invokeMethod(
+							target, methodArgs.descriptor, methodArgs.convertedArguments))
+						: invoke(target, methodArgs.method, methodArgs.arguments);
+				} else {
+					result = serializeResult(methodArgs.descriptor, invokeMethod(
+						target, methodArgs.descriptor,
+						(methodArgs.convertedArguments!=null)
+							? methodArgs.convertedArguments
+							: convertParams(methodArgs.descriptor, methodArgs.arguments)));
+				}
+			} catch (Throwable e) {
+				thrown = e;
+			}
 		}
 
 		// respond if it's not a notification request
@@ -415,21 +803,21 @@ public class JsonRpcServer {
 				}
 			}
 
-			// the resoponse object
-			ObjectNode response = null;
-
-			// build error
+			// write error
 			if (error!=null) {
-				response = createErrorResponse(
-					jsonRpc, id, error.getCode(), error.getMessage(), error.getData());
+				writeResponse(responses, createErrorResponse(
+					jsonRpc, id, error.getCode(), error.getMessage(), error.getData()));
+
+			// write success as a tree
+			} else if (treeResponses) {
+				writeResponse(responses, createSuccessResponse(
+					jsonRpc, id, JsonNode.class.cast(result)));
 
-			// build success
+			// or stream it
 			} else {
-				response = createSuccessResponse(jsonRpc, id, result);
+				writeSuccessResponse(
+					responses, jsonRpc, id, methodArgs.descriptor, result);
 			}
-
-			// write it
-			writeAndFlushValue(ops, response);
 		}
 
 		// log and potentially re-throw errors
@@ -443,6 +831,248 @@ public class JsonRpcServer {
 		}
 	}
 
+	/**
+	 * Handles a single request, or batch of requests, read from the
+	 * given {@link InputStream} without first reading it into a tree.
+	 * The envelope is read with a {@link JsonParser} and, when the
+	 * target method isn't overloaded, the {@code params} are bound
+	 * straight from the token stream into the method's parameter
+	 * types.  They are only buffered if they precede the
+	 * {@code method}.
+	 *
+	 * @param ips the {@link InputStream}
+	 * @param ops the {@link OutputStream}
+	 * @throws IOException on error
+	 */
+	private void handleStream(InputStream ips, OutputStream ops)
+		throws IOException {
+		JsonParser parser = mapper.getFactory().createParser(new NoCloseInputStream(ips));
+		Responses responses = null;
+		try {
+			JsonToken token = parser.nextToken();
+
+			// batches executed concurrently need all of their elements
+			if (token==JsonToken.START_ARRAY && batchExecutor!=null) {
+				handleArray(mapper.<ArrayNode>readTree(parser), ops);
+				return;
+			}
+
+			// handle arrays
+			responses = new Responses(ops, token==JsonToken.START_ARRAY);
+			if (token==JsonToken.START_ARRAY) {
+				while (parser.nextToken()!=JsonToken.END_ARRAY) {
+					if (parser.getCurrentToken()==JsonToken.START_OBJECT) {
+						handleStreamedObject(parser, responses);
+					} else {
+						handleNode(mapper.<JsonNode>readTree(parser), responses);
+					}
+				}
+
+			// handle objects
+			} else if (token==JsonToken.START_OBJECT) {
+				handleStreamedObject(parser, responses);
+
+			// bail on bad data
+			} else {
+				writeResponse(responses, createErrorResponse(
+					"2.0", "null", -32600, "Invalid Request", null));
+			}
+		} catch (JsonParseException e) {
+			if (responses==null) {
+				responses = new Responses(ops, false);
+			}
+			writeResponse(responses, createErrorResponse(
+				"jsonrpc", "null", -32700, "Parse error", null));
+		} finally {
+			parser.close();
+			if (responses!=null) {
+				responses.finish();
+			}
+		}
+	}
+
+	/**
+	 * Handles the request object the given {@link JsonParser} is
+	 * positioned at and writes the response to the given
+	 * {@link Responses}.  On return the parser is positioned
+	 * at the end of the object.
+	 *
+	 * @param parser the {@link JsonParser}
+	 * @param responses the {@link Responses}
+	 * @throws IOException on error
+	 */
+	private void handleStreamedObject(JsonParser parser, Responses responses)
+		throws IOException {
+
+		// read the envelope, binding the params as soon as the method is known
+		JsonNode jsonPrcNode	= null;
+		JsonNode methodNode		= null;
+		JsonNode idNode			= null;
+		Overloads methods		= null;
+		boolean hasParams		= false;
+		TokenBuffer paramsBuffer	= null;
+		MethodAndArgs methodArgs	= null;
+		while (parser.nextToken()==JsonToken.FIELD_NAME) {
+			String fieldName = parser.getCurrentName();
+			parser.nextToken();
+			if (fieldName.equals("jsonrpc")) {
+				jsonPrcNode = mapper.readTree(parser);
+			} else if (fieldName.equals("method")) {
+				methodNode = mapper.readTree(parser);
+				methods = getDispatchTable(getServiceName(methodNode))
+					.getOverloads(getMethodName(methodNode));
+			} else if (fieldName.equals("id")) {
+				idNode = mapper.readTree(parser);
+			} else if (fieldName.equals("params") && parser.getCurrentToken()!=JsonToken.VALUE_NULL) {
+				hasParams = true;
+				if (methodNode!=null) {
+					methodArgs = bindParams(parser, methods);
+				} else {
+					paramsBuffer = new TokenBuffer(parser);
+					paramsBuffer.copyCurrentStructure(parser);
+				}
+			} else {
+				parser.skipChildren();
+			}
+		}
+
+		// validate request
+		if (!backwardsComaptible && jsonPrcNode==null || methodNode==null) {
+			writeResponse(responses, createErrorResponse(
+				"2.0", "null", -32600, "Invalid Request", null));
+			return;
+		}
+
+		// get node values
+		String jsonRpc		= (jsonPrcNode!=null && !jsonPrcNode.isNull()) ? jsonPrcNode.asText() : "2.0";
+		String serviceName	= getServiceName(methodNode);
+		Object id			= parseId(idNode);
+
+		// make sure the method exists
+		if (methods==null) {
+			writeResponse(responses, createErrorResponse(
+				jsonRpc, id, -32601, "Method not found", null));
+			return;
+		}
+
+		// bind params that came before the method
+		if (paramsBuffer!=null) {
+			JsonParser bufferParser = paramsBuffer.asParser(parser.getCodec());
+			bufferParser.nextToken();
+			methodArgs = bindParams(bufferParser, methods);
+		} else if (!hasParams) {
+			methodArgs = findBestMethodUsingParamIndexes(methods, 0, null);
+		}
+		if (methodArgs==null) {
+			writeResponse(responses, createErrorResponse(
+				jsonRpc, id, -32602, "Invalid method parameters", null));
+			return;
+		}
+
+		// invoke the method and respond
+		invokeAndRespond(responses, jsonRpc, id, serviceName, methodArgs);
+	}
+
+	/**
+	 * Binds the {@code params} value the given {@link JsonParser}
+	 * is positioned at.  If the method isn't overloaded they are
+	 * read directly into its parameter types, otherwise they are
+	 * read as a tree so that the best overload can be chosen.  On
+	 * return the parser is positioned at the end of the value.
+	 *
+	 * @param parser the {@link JsonParser}
+	 * @param methods the {@link Overloads}, or null if the method doesn't exist
+	 * @return the {@link MethodAndArgs}, or null if the params don't fit
+	 * @throws IOException on error
+	 */
+	private MethodAndArgs bindParams(JsonParser parser, Overloads methods)
+		throws IOException {
+		JsonToken token = parser.getCurrentToken();
+
+		// no method to bind to
+		if (methods==null) {
+			parser.skipChildren();
+			return null;
+
+		// overloaded methods need the tree
+		} else if (methods.getMethods().size()>1
+			|| (token!=JsonToken.START_ARRAY && token!=JsonToken.START_OBJECT)) {
+			return findBestMethodByParamsNode(methods, mapper.<JsonNode>readTree(parser));
+		}
+
+		// bind each param as it is read
+		MethodDescriptor method	= methods.getMethods().get(0);
+		int numParameters		= method.getParameterCount();
+		Object[] arguments		= new Object[numParameters];
+		boolean[] bound			= new boolean[numParameters];
+		Throwable bindError		= null;
+		int numParams			= 0;
+		int numMatchingParams	= 0;
+		boolean named			= token==JsonToken.START_OBJECT;
+		JsonStreamContext paramsContext = parser.getParsingContext();
+
+		while (parser.nextToken()!=(named ? JsonToken.END_OBJECT : JsonToken.END_ARRAY)) {
+
+			// find the parameter this value belongs to
+			int index = -1;
+			if (named) {
+				String paramName = parser.getCurrentName();
+				parser.nextToken();
+				for (int i=0; i<numParameters && index<0; i++) {
+					if (paramName.equals(method.getParameterName(i))) {
+						index = i;
+					}
+				}
+			} else if (numParams<numParameters) {
+				index = numParams;
+			}
+			numParams++;
+			if (index>=0) {
+				numMatchingParams++;
+			}
+
+			// skip it, or read it into the parameter's type
+			if (index<0 || bindError!=null) {
+				parser.skipChildren();
+			} else {
+				try {
+					arguments[index] = method.getParameterReader(index).readValue(parser);
+					bound[index] = true;
+				} catch (JsonMappingException e) {
+
+					// keep the error for the response and skip
+					// the rest of the value that failed to bind
+					bindError = e;
+					while (parser.getParsingContext()!=paramsContext) {
+						parser.nextToken();
+					}
+				}
+			}
+		}
+
+		// check the number of params like the tree path does
+		int numArgs = named ? numMatchingParams : numParams;
+		if (!allowExtraParams && (numParams>numParameters || numArgs>numParameters)
+			|| !allowLessParams && (numParams<numParameters || numArgs<numParameters)) {
+			return null;
+		}
+
+		// missing params are null
+		for (int i=0; i<numParameters && bindError==null; i++) {
+			if (!bound[i]) {
+				arguments[i] = method.getParameterReader(i).readValue(NullNode.getInstance());
+			}
+		}
+
+		// create return
+		MethodAndArgs ret = new MethodAndArgs();
+		ret.method = method.getMethod();
+		ret.descriptor = method;
+		ret.convertedArguments = arguments;
+		ret.bindError = bindError;
+		return ret;
+	}
+
 	/**
 	 * Get the service name from the methodNode.  In this class, it is always
 	 * <code>null</code>.  Subclasses may parse the methodNode for service name.
@@ -494,24 +1124,72 @@ public class JsonRpcServer {
 		IllegalAccessException,
 		InvocationTargetException {
 
+		// invoke the method
+		MethodDescriptor descriptor = getMethodDescriptor(m);
+		Object[] convertedParams = convertParams(descriptor, params);
+		Object result;
+		try {
+			result = invokeMethod(target, descriptor, convertedParams);
+		} catch (Throwable e) {
+			throw new InvocationTargetException(e);
+		}
+		return (m.getGenericReturnType()!=null) ? mapper.valueToTree(result) : null;
+	}
+
+	/**
+	 * Converts the given {@code params} to the parameter
+	 * types of the given method.
+	 *
+	 * @param descriptor the {@link MethodDescriptor} of the method
+	 * @param params the params
+	 * @return the converted params
+	 * @throws IOException on error
+	 */
+	private Object[] convertParams(MethodDescriptor descriptor, List<JsonNode> params)
+		throws IOException {
+		Object[] convertedParams = new Object[params.size()];
+
+		for (int i=0; i<descriptor.getParameterCount(); i++) {
+			convertedParams[i] = descriptor.getParameterReader(i).readValue(params.get(i));
+		}
+		return convertedParams;
+	}
+
+	/**
+	 * Invokes the given method on the {@code target} passing
+	 * it the already converted {@code params}.  A composite service
+	 * proxy is skipped by invoking the method on the service
+	 * behind it.
+	 *
+	 * @param target the object to invoke the Method on
+	 * @param descriptor the {@link MethodDescriptor} of the method to invoke
+	 * @param params the converted params
+	 * @return the return value (or null if no return)
+	 * @throws Throwable whatever the method throws
+	 */
+	private Object invokeMethod(Object target, MethodDescriptor descriptor, Object[] params)
+		throws Throwable {
+		Method m = descriptor.getMethod();
+
 		// debug log
 		if (LOGGER.isLoggable(Level.FINE)) {
 			LOGGER.log(Level.FINE, "Invoking method: "+m.getName());
 		}
 
-		// convert the parameters
-		Object[] convertedParams = new Object[params.size()];
-		Type[] parameterTypes = m.getGenericParameterTypes();
-		
-		for (int i=0; i<parameterTypes.length; i++) {
-		    JsonParser paramJsonParser = mapper.treeAsTokens(params.get(i));
-		    JavaType paramJavaType = TypeFactory.defaultInstance().constructType(parameterTypes[i]);
-			convertedParams[i] = mapper.readValue(paramJsonParser, paramJavaType);
+		// call the service behind a composite proxy directly
+		if (target instanceof Proxy) {
+			InvocationHandler invocationHandler = Proxy.getInvocationHandler(target);
+			if (invocationHandler instanceof ProxyUtil.CompositeServiceHandler) {
+				Object service = ((ProxyUtil.CompositeServiceHandler)invocationHandler)
+					.getService(m.getDeclaringClass());
+				if (service!=null) {
+					target = service;
+				}
+			}
 		}
 
 		// invoke the method
-		Object result = m.invoke(target, convertedParams);
-		return (m.getGenericReturnType()!=null) ? mapper.valueToTree(result) : null;
+		return descriptor.invoke(target, params);
 	}
 
 	/**
@@ -579,15 +1257,98 @@ public class JsonRpcServer {
 	}
 
 	/**
-	 * Finds the {@link Method} from the supplied {@link Set} that
+	 * Serializes a result with the method's result writer into a
+	 * {@link TokenBuffer} if {@link #setBufferResults(boolean)} is
+	 * enabled, before anything of its response is written, so that
+	 * a result that can't be serialized fails the call with an error
+	 * response.  Otherwise, and for scalars which always serialize,
+	 * the result is returned as it is.
+	 *
+	 * @param descriptor the {@link MethodDescriptor} of the invoked method
+	 * @param result the result
+	 * @return the result, or a {@link TokenBuffer} holding it
+	 * @throws IOException if the result can't be serialized
+	 */
+	private Object serializeResult(MethodDescriptor descriptor, Object result)
+		throws IOException {
+		if (!bufferResults
+			|| result==null
+			|| result instanceof String
+			|| result instanceof Boolean
+			|| result instanceof Integer
+			|| result instanceof Long
+			|| result instanceof Double) {
+			return result;
+		}
+		TokenBuffer buffer = new TokenBuffer(mapper, false);
+		descriptor.getResultWriter().writeValue(buffer, result);
+		return buffer;
+	}
+
+	/**
+	 * Writes a success response straight to the given {@link Responses},
+	 * with the {@code result} as serialized by
+	 * {@link #serializeResult(MethodDescriptor, Object)} rather than
+	 * converted to a tree.
+	 *
+	 * @param responses the {@link Responses}
+	 * @param jsonRpc the jsonrpc string
+	 * @param id the id
+	 * @param descriptor the {@link MethodDescriptor} of the invoked method
+	 * @param result the serialized result
+	 * @throws IOException on error
+	 */
+	private void writeSuccessResponse(
+		Responses responses, String jsonRpc, Object id, MethodDescriptor descriptor, Object result)
+		throws IOException {
+		JsonGenerator generator = responses.next();
+		generator.writeStartObject();
+		generator.writeStringField("jsonrpc", jsonRpc);
+		generator.writeFieldName("id");
+		writeId(generator, id);
+		generator.writeFieldName("result");
+		if (result instanceof TokenBuffer) {
+			TokenBuffer.class.cast(result).serialize(generator);
+		} else {
+			descriptor.getResultWriter().writeValue(generator, result);
+		}
+		generator.writeEndObject();
+	}
+
+	/**
+	 * Writes an id as parsed by {@link #parseId(JsonNode)}.
+	 *
+	 * @param generator the {@link JsonGenerator}
+	 * @param id the id
+	 * @throws IOException on error
+	 */
+	private static void writeId(JsonGenerator generator, Object id)
+		throws IOException {
+		if (Integer.class.isInstance(id)) {
+			generator.writeNumber(Integer.class.cast(id).intValue());
+		} else if (Long.class.isInstance(id)) {
+			generator.writeNumber(Long.class.cast(id).longValue());
+		} else if (Float.class.isInstance(id)) {
+			generator.writeNumber(Float.class.cast(id).floatValue());
+		} else if (Double.class.isInstance(id)) {
+			generator.writeNumber(Double.class.cast(id).doubleValue());
+		} else if (BigDecimal.class.isInstance(id)) {
+			generator.writeNumber(BigDecimal.class.cast(id));
+		} else {
+			generator.writeString(String.class.cast(id));
+		}
+	}
+
+	/**
+	 * Finds the {@link Method} from the supplied {@link Overloads} that
 	 * best matches the rest of the arguments supplied and returns
 	 * it as a {@link MethodAndArgs} class.
 	 *
-	 * @param methods the {@link Method}s
+	 * @param methods the {@link Overloads}
 	 * @param paramsNode the {@link JsonNode} passed as the parameters
 	 * @return the {@link MethodAndArgs}
 	 */
-	private MethodAndArgs findBestMethodByParamsNode(Set<Method> methods, JsonNode paramsNode) {
+	private MethodAndArgs findBestMethodByParamsNode(Overloads methods, JsonNode paramsNode) {
 
 		// no parameters
 		if (paramsNode==null || paramsNode.isNull()) {
@@ -613,32 +1374,37 @@ public class JsonRpcServer {
 	}
 
 	/**
-	 * Finds the {@link Method} from the supplied {@link Set} that
+	 * Finds the {@link Method} from the supplied {@link Overloads} that
 	 * best matches the rest of the arguments supplied and returns
 	 * it as a {@link MethodAndArgs} class.
 	 *
-	 * @param methods the {@link Method}s
+	 * @param methods the {@link Overloads}
 	 * @param paramCount the number of expect parameters
 	 * @param paramNodes the parameters for matching types
 	 * @return the {@link MethodAndArgs}
 	 */
 	private MethodAndArgs findBestMethodUsingParamIndexes(
-		Set<Method> methods, int paramCount, ArrayNode paramNodes) {
+		Overloads methods, int paramCount, ArrayNode paramNodes) {
 
 		// get param count
 		int numParams = paramNodes!=null && !paramNodes.isNull()
 			? paramNodes.size() : 0;
 
+		// without extra or less params only the exact arity
+		// can match, otherwise every overload is a candidate
+		List<MethodDescriptor> candidates = (!allowExtraParams && !allowLessParams)
+			? methods.getMethods(paramCount)
+			: methods.getMethods();
+
 		// determine param count
-		int bestParamNumDiff		= Integer.MAX_VALUE;
-		Set<Method> matchedMethods	= new HashSet<Method>();
+		int bestParamNumDiff					= Integer.MAX_VALUE;
+		List<MethodDescriptor> matchedMethods	= new ArrayList<MethodDescriptor>(candidates.size());
 
 		// check every method
-		for (Method method : methods) {
+		for (MethodDescriptor method : candidates) {
 
 			// get parameter types
-			Class<?>[] paramTypes = method.getParameterTypes();
-			int paramNumDiff = paramTypes.length-paramCount;
+			int paramNumDiff = method.getParameterCount()-paramCount;
 
 			// we've already found a better match
 			if (Math.abs(paramNumDiff)>Math.abs(bestParamNumDiff)) {
@@ -668,20 +1434,19 @@ public class JsonRpcServer {
 
 		// now narrow it down to the best method
 		// based on argument types
-		Method bestMethod = null;
+		MethodDescriptor bestMethod = null;
 		if (matchedMethods.size()==1 || numParams==0) {
-			bestMethod = matchedMethods.iterator().next();
+			bestMethod = matchedMethods.get(0);
 
 		} else {
 
 			// check the matching methods for
 			// matching parameter types
 			int mostMatches	= -1;
-			for (Method method : matchedMethods) {
-				List<Class<?>> parameterTypes = getParameterTypes(method);
+			for (MethodDescriptor method : matchedMethods) {
 				int numMatches = 0;
-				for (int i=0; i<parameterTypes.size() && i<numParams; i++) {
-					if (isMatchingType(paramNodes.get(i), parameterTypes.get(i))) {
+				for (int i=0; i<method.getParameterCount() && i<numParams; i++) {
+					if (isMatchingType(paramNodes.get(i), method.getParameterType(i))) {
 						numMatches++;
 					}
 				}
@@ -694,10 +1459,11 @@ public class JsonRpcServer {
 
 		// create return
 		MethodAndArgs ret = new MethodAndArgs();
-		ret.method = bestMethod;
+		ret.method = bestMethod.getMethod();
+		ret.descriptor = bestMethod;
 
 		// now fill arguments
-		int numParameters = bestMethod.getParameterTypes().length;
+		int numParameters = bestMethod.getParameterCount();
 		for (int i=0; i<numParameters; i++) {
 			if (i<numParams) {
 				ret.arguments.add(paramNodes.get(i));
@@ -711,108 +1477,50 @@ public class JsonRpcServer {
 	}
 
 	/**
-	 * Finds the {@link Method} from the supplied {@link Set} that
+	 * Finds the {@link Method} from the supplied {@link Overloads} that
 	 * best matches the rest of the arguments supplied and returns
 	 * it as a {@link MethodAndArgs} class.
 	 *
-	 * @param methods the {@link Method}s
+	 * @param methods the {@link Overloads}
 	 * @param paramNames the parameter names
 	 * @param paramNodes the parameters for matching types
 	 * @return the {@link MethodAndArgs}
 	 */
-	@SuppressWarnings("deprecation")
 	private MethodAndArgs findBestMethodUsingParamNames(
-		Set<Method> methods, Set<String> paramNames, ObjectNode paramNodes) {
+		Overloads methods, Set<String> paramNames, ObjectNode paramNodes) {
 
 		// determine param count
-		int maxMatchingParams 				= -1;
-		int maxMatchingParamTypes			= -1;
-		Method bestMethod 					= null;
-		List<JsonRpcParam> bestAnnotations	= null;
+		int maxMatchingParams 			= -1;
+		int maxMatchingParamTypes		= -1;
+		MethodDescriptor bestMethod 	= null;
 
-		for (Method method : methods) {
+		for (MethodDescriptor method : methods.getMethods()) {
 
-			// get parameter types
-			List<Class<?>> parameterTypes = getParameterTypes(method);
+			// get parameter count
+			int numParameters = method.getParameterCount();
 
 			// bail early if possible
-			if (!allowExtraParams && paramNames.size()>parameterTypes.size()) {
+			if (!allowExtraParams && paramNames.size()>numParameters) {
 				continue;
-			} else if (!allowLessParams && paramNames.size()<parameterTypes.size()) {
+			} else if (!allowLessParams && paramNames.size()<numParameters) {
 				continue;
 			}
 
-			// list of params
-			List<JsonRpcParam> annotations = new ArrayList<JsonRpcParam>();
-
-			// try the deprecated parameter first
-			List<List<JsonRpcParamName>> depMethodAnnotations = getParameterAnnotations(method, JsonRpcParamName.class);
-			for (List<JsonRpcParamName> annots : depMethodAnnotations) {
-				if (annots.size()>0) {
-					final JsonRpcParamName annotation = annots.get(0);
-					annotations.add(new JsonRpcParam() {
-						public Class<? extends Annotation> annotationType() {
-							return JsonRpcParam.class;
-						}
-						public String value() {
-							return annotation.value();
-						}
-					});
-				} else {
-					annots.add(null);
-				}
-			}
-
-			@SuppressWarnings("unchecked")
-			List<List<Annotation>> jaxwsAnnotations = WEBPARAM_ANNOTATION_CLASS != null
-				? getParameterAnnotations(method, (Class<Annotation>) WEBPARAM_ANNOTATION_CLASS)
-				: new ArrayList<List<Annotation>>();
-			for (List<Annotation> annots : jaxwsAnnotations) {
-				if (annots.size()>0) {
-					final Annotation annotation = annots.get(0);
-					annotations.add(new JsonRpcParam() {
-						public Class<? extends Annotation> annotationType() {
-							return JsonRpcParam.class;
-						}
-						public String value() {
-							try {
-								return (String) WEBPARAM_NAME_METHOD.invoke(annotation);
-							} catch (Exception e) {
-								throw new RuntimeException(e);
-							}
-						}
-					});
-				} else {
-					annots.add(null);
-				}
-			}
-
-			// now try the non-deprecated parameters
-			List<List<JsonRpcParam>> methodAnnotations = getParameterAnnotations(method, JsonRpcParam.class);
-			for (List<JsonRpcParam> annots : methodAnnotations) {
-				if (annots.size()>0) {
-					annotations.add(annots.get(0));
-				} else {
-					annots.add(null);
-				}
-			}
-
 			// count the matching params for this method
 			int numMatchingParamTypes = 0;
 			int numMatchingParams = 0;
-			for (int i=0; i<annotations.size(); i++) {
+			for (int i=0; i<numParameters; i++) {
 
 				// skip parameters that didn't have an annotation
-				JsonRpcParam annotation	= annotations.get(i);
-				if (annotation==null) {
+				String paramName = method.getParameterName(i);
+				if (paramName==null) {
 					continue;
 				}
 
 				// check for a match
-				String paramName			= annotation.value();
-				boolean hasParamName 		= paramNames.contains(paramName);
+				boolean hasParamName = paramNames.contains(paramName);
 
-				if (hasParamName && isMatchingType(paramNodes.get(paramName), parameterTypes.get(i))) {
+				if (hasParamName && isMatchingType(paramNodes.get(paramName), method.getParameterType(i))) {
 					numMatchingParamTypes++;
 					numMatchingParams++;
 
@@ -824,9 +1532,9 @@ public class JsonRpcServer {
 
 			// check for exact param matches
 			// bail early if possible
-			if (!allowExtraParams && numMatchingParams>parameterTypes.size()) {
+			if (!allowExtraParams && numMatchingParams>numParameters) {
 				continue;
-			} else if (!allowLessParams && numMatchingParams<parameterTypes.size()) {
+			} else if (!allowLessParams && numMatchingParams<numParameters) {
 				continue;
 			}
 
@@ -836,7 +1544,6 @@ public class JsonRpcServer {
 				bestMethod 				= method;
 				maxMatchingParams 		= numMatchingParams;
 				maxMatchingParamTypes 	= numMatchingParamTypes;
-				bestAnnotations 		= annotations;
 			}
 		}
 
@@ -847,14 +1554,15 @@ public class JsonRpcServer {
 
 		// create return
 		MethodAndArgs ret = new MethodAndArgs();
-		ret.method = bestMethod;
+		ret.method = bestMethod.getMethod();
+		ret.descriptor = bestMethod;
 
 		// now fill arguments
-		int numParameters = bestMethod.getParameterTypes().length;
+		int numParameters = bestMethod.getParameterCount();
 		for (int i=0; i<numParameters; i++) {
-			JsonRpcParam param = bestAnnotations.get(i);
-			if (param!=null && paramNames.contains(param.value())) {
-				ret.arguments.add(paramNodes.get(param.value()));
+			String paramName = bestMethod.getParameterName(i);
+			if (paramName!=null && paramNames.contains(paramName)) {
+				ret.arguments.add(paramNodes.get(paramName));
 			} else {
 				ret.arguments.add(NullNode.getInstance());
 			}
@@ -932,12 +1640,109 @@ public class JsonRpcServer {
 		ops.flush();
 	}
 
+	/**
+	 * Writes a response to the given {@link Responses}.
+	 * @param responses the {@link Responses}
+	 * @param response the response
+	 * @throws IOException on error
+	 */
+	private void writeResponse(Responses responses, ObjectNode response)
+		throws IOException {
+		treeWriter.writeValue(responses.next(), response);
+	}
+
+	/**
+	 * The responses to a request, or to a batch of requests, all
+	 * written through a single {@link JsonGenerator} that's only
+	 * created when the first response is written.  A batch is
+	 * framed as an array, which is left out entirely if none of
+	 * its elements got a response.
+	 */
+	private final class Responses {
+
+		private final OutputStream ops;
+		private final boolean batch;
+		private JsonGenerator generator;
+		private boolean hasResponses = false;
+
+		/**
+		 * Responses written to an {@link OutputStream}, which is
+		 * flushed once by {@link #finish()}.
+		 *
+		 * @param ops the {@link OutputStream}
+		 * @param batch whether to frame the responses as a batch
+		 */
+		private Responses(OutputStream ops, boolean batch) {
+			this.ops	= ops;
+			this.batch	= batch;
+		}
+
+		/**
+		 * Responses written to a {@link JsonGenerator} owned by
+		 * the caller.
+		 *
+		 * @param generator the {@link JsonGenerator}
+		 */
+		private Responses(JsonGenerator generator) {
+			this.ops		= null;
+			this.batch		= false;
+			this.generator	= generator;
+		}
+
+		/**
+		 * Returns the {@link JsonGenerator} to write the next
+		 * response with.
+		 *
+		 * @return the {@link JsonGenerator}
+		 * @throws IOException on error
+		 */
+		private JsonGenerator next()
+			throws IOException {
+			if (generator==null) {
+				generator = mapper.createGenerator(new NoCloseOutputStream(ops));
+				if (batch) {
+					generator.writeStartArray();
+				}
+			}
+			hasResponses = true;
+			return generator;
+		}
+
+		/**
+		 * @return whether anything has been written
+		 */
+		private boolean hasResponses() {
+			return hasResponses;
+		}
+
+		/**
+		 * Ends the batch, if any, and flushes everything
+		 * written to the {@link OutputStream}.
+		 *
+		 * @throws IOException on error
+		 */
+		private void finish()
+			throws IOException {
+			if (ops==null || generator==null) {
+				return;
+			}
+			if (batch && generator.getOutputContext().inArray()) {
+				generator.writeEndArray();
+			}
+			generator.close();
+			ops.flush();
+		}
+	}
+
 	/**
 	 * Simple inner class for the {@code findXXX} methods.
 	 */
 	private static class MethodAndArgs {
 		private Method method = null;
+		private MethodDescriptor descriptor = null;
 		private List<JsonNode> arguments = new ArrayList<JsonNode>();
+		private Object[] convertedArguments = null;
+		private Throwable bindError = null;
 	}
 
 	/**
@@ -964,6 +1769,13 @@ public class JsonRpcServer {
 		throw new IllegalArgumentException("Unknown id type");
 	}
 
+	/**
+	 * @return the {@link ObjectMapper} used to read requests and write responses
+	 */
+	ObjectMapper getObjectMapper() {
+		return mapper;
+	}
+
 	/**
 	 * Sets whether or not the server should be backwards
 	 * compatible to JSON-RPC 1.0.  This only includes the
@@ -1005,6 +1817,77 @@ public class JsonRpcServer {
 		this.allowLessParams = allowLessParams;
 	}
 
+	/**
+	 * Sets whether or not requests passed to
+	 * {@link #handle(InputStream, OutputStream)} are parsed as a
+	 * stream instead of being read into a tree first.  This avoids
+	 * holding large {@code params} in memory twice, but the
+	 * {@link ErrorResolver} isn't given the arguments of methods
+	 * that were bound from the stream.  Subclasses overriding
+	 * {@link #invoke(Object, Method, List)} are given every call,
+	 * so their requests are always read into a tree.
+	 *
+	 * @param streamingRequests true or false
+	 */
+	public void setStreamingRequests(boolean streamingRequests) {
+		this.streamingRequests = streamingRequests;
+	}
+
+	/**
+	 * Sets whether or not results are serialized into a buffer before
+	 * their response is written.  A result that can't be serialized
+	 * (a cycle, a getter that throws) then fails the call with an
+	 * error response instead of breaking the response half way, at
+	 * the cost of holding a copy of every result in memory.  When
+	 * false (the default) results are written straight to the response.
+	 *
+	 * @param bufferResults true or false
+	 */
+	public void setBufferResults(boolean bufferResults) {
+		this.bufferResults = bufferResults;
+	}
+
+	/**
+	 * Sets the {@link Executor} used to handle the elements of batch
+	 * requests concurrently.  Responses are still written in request
+	 * order, and responses to notifications are left out.  Arrays
+	 * nested in a batch are handled one element at a time.  When null
+	 * (the default) batches are handled sequentially on the calling
+	 * thread.  Services, and the {@link ErrorResolver}, must be
+	 * thread safe when an executor is set.
+	 *
+	 * @param batchExecutor the {@link Executor} or null
+	 */
+	public void setBatchExecutor(Executor batchExecutor) {
+		this.batchExecutor = batchExecutor;
+	}
+
+	/**
+	 * Sets the maximum number of elements of a single batch request
+	 * that are handled at the same time.  Zero or less (the default)
+	 * means no limit.  Only used with a {@link #setBatchExecutor(Executor)
+	 * batch executor}.
+	 *
+	 * @param maxBatchParallelism the limit
+	 */
+	public void setMaxBatchParallelism(int maxBatchParallelism) {
+		this.maxBatchParallelism = maxBatchParallelism;
+	}
+
+	/**
+	 * Sets the maximum number of batch elements, across all batch
+	 * requests, that this server handles at the same time.  Zero or
+	 * less (the default) means no limit.  Only used with a
+	 * {@link #setBatchExecutor(Executor) batch executor}.
+	 *
+	 * @param maxServerParallelism the limit
+	 */
+	public void setMaxServerParallelism(int maxServerParallelism) {
+		this.serverPermits = (maxServerParallelism>0)
+			? new Semaphore(maxServerParallelism)
+			: null;
+	}
+
 	/**
 	 * Sets the {@link ErrorResolver} used for resolving errors.
 	 * Multiple {@link ErrorResolver}s can be used at once by
@@ -0,0 +1,268 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.net.Socket;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A thread safe JSON-RPC client that multiplexes the calls of any
+ * number of threads over a single socket connection.  Requests are
+ * written as soon as they're made, without waiting for earlier calls
+ * to return, and a dedicated reader thread hands every response to
+ * the call with the matching {@code id}.  It works with any server
+ * that answers in order, and makes the most of ones that pipeline
+ * (see {@link StreamServer#setPipelineExecutor(java.util.concurrent.Executor)}).
+ */
+public class JsonRpcSocketClient
+	extends JsonRpcClient {
+
+	private static final Logger LOGGER = Logger.getLogger(JsonRpcSocketClient.class.getName());
+
+	private final Socket socket;
+	private final OutputStream ops;
+	private final InputStream ips;
+	private final AtomicLong nextId = new AtomicLong();
+	private final ConcurrentMap<String, PendingCall> pendingCalls
+		= new ConcurrentHashMap<String, PendingCall>();
+	private final Thread reader;
+	private volatile IOException closedCause;
+	private volatile long readTimeoutMillis = 0;
+
+	/**
+	 * Creates the client, which takes over the given connected
+	 * {@link Socket}, using the given {@link ObjectMapper}.
+	 *
+	 * @param mapper the {@link ObjectMapper}
+	 * @param socket the {@link Socket}
+	 * @throws IOException on error
+	 */
+	public JsonRpcSocketClient(ObjectMapper mapper, Socket socket)
+		throws IOException {
+		super(mapper);
+		this.socket	= socket;
+		this.ops	= socket.getOutputStream();
+		this.ips	= socket.getInputStream();
+
+		// start reading responses
+		this.reader = new Thread(new Reader(),
+			"JsonRpcSocketClient-"+socket.getRemoteSocketAddress());
+		this.reader.setDaemon(true);
+		this.reader.start();
+	}
+
+	/**
+	 * Creates the client, which takes over the given connected
+	 * {@link Socket}, using a default {@link ObjectMapper}.
+	 *
+	 * @param socket the {@link Socket}
+	 * @throws IOException on error
+	 */
+	public JsonRpcSocketClient(Socket socket)
+		throws IOException {
+		this(new ObjectMapper(), socket);
+	}
+
+	/**
+	 * Invokes the given method with the given argument and waits
+	 * for its response.  Any number of threads can call this at
+	 * the same time.
+	 *
+	 * @param methodName the name of the method to invoke
+	 * @param argument the arguments to the method
+	 * @param returnType the return type
+	 * @return the return value
+	 * @throws Throwable on error
+	 */
+	public Object invoke(String methodName, Object argument, Type returnType)
+		throws Throwable {
+
+		// register the call before its response can possibly arrive
+		String id = Long.toString(nextId.incrementAndGet());
+		PendingCall call = new PendingCall();
+		pendingCalls.put(id, call);
+		try {
+			send(methodName, argument, id);
+			return readResponse(returnType, call.await(readTimeoutMillis));
+		} finally {
+			pendingCalls.remove(id);
+		}
+	}
+
+	/**
+	 * Invokes the given method with the given argument and waits
+	 * for its response.
+	 *
+	 * @param methodName the name of the method to invoke
+	 * @param argument the arguments to the method
+	 * @param clazz the return type
+	 * @return the return value
+	 * @throws Throwable on error
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T invoke(String methodName, Object argument, Class<T> clazz)
+		throws Throwable {
+		return (T)invoke(methodName, argument, Type.class.cast(clazz));
+	}
+
+	/**
+	 * Invokes the given method with the given argument without
+	 * expecting a response.
+	 *
+	 * @param methodName the name of the method to invoke
+	 * @param argument the arguments to the method
+	 * @throws IOException on error
+	 */
+	public void invokeNotification(String methodName, Object argument)
+		throws IOException {
+		send(methodName, argument, null);
+	}
+
+	/**
+	 * Closes the connection, failing every call that's
+	 * still waiting for a response.
+	 *
+	 * @throws IOException on error
+	 */
+	public void close()
+		throws IOException {
+		socket.close();
+	}
+
+	/**
+	 * Sets how long a call waits for its response before failing
+	 * with a {@link TimeoutException}.  A response that arrives
+	 * later is discarded.  When 0 (the default) calls wait until
+	 * their response arrives or the connection is closed.
+	 *
+	 * @param readTimeoutMillis the timeout, or 0 for none
+	 */
+	public void setReadTimeoutMillis(long readTimeoutMillis) {
+		this.readTimeoutMillis = readTimeoutMillis;
+	}
+
+	/**
+	 * @return how long a call waits for its response, or 0 for no limit
+	 */
+	public long getReadTimeoutMillis() {
+		return readTimeoutMillis;
+	}
+
+	/**
+	 * @return the number of calls waiting for a response
+	 */
+	public int getPendingCallCount() {
+		return pendingCalls.size();
+	}
+
+	/**
+	 * Writes a request in one piece so that concurrent
+	 * requests don't interleave on the socket.
+	 */
+	private void send(String methodName, Object argument, String id)
+		throws IOException {
+		if (closedCause!=null) {
+			throw new IOException("Connection closed", closedCause);
+		}
+		ByteArrayOutputStream request = new ByteArrayOutputStream();
+		writeRequest(methodName, argument, request, id);
+		synchronized (ops) {
+			request.writeTo(ops);
+			ops.flush();
+		}
+	}
+
+	/**
+	 * Reads responses until the connection is closed.
+	 */
+	private class Reader
+		implements Runnable {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void run() {
+			ObjectMapper mapper = getObjectMapper();
+			IOException cause = null;
+			try {
+				JsonParser parser = mapper.getFactory().createParser(new NoCloseInputStream(ips));
+				while (parser.nextToken()!=null) {
+					dispatch(mapper.<JsonNode>readTree(parser));
+				}
+				cause = new IOException("Connection closed by server");
+			} catch (IOException e) {
+				cause = e;
+			} finally {
+
+				// nothing more is coming
+				closedCause = cause;
+				for (PendingCall call : pendingCalls.values()) {
+					call.fail(cause);
+				}
+				try {
+					socket.close();
+				} catch (IOException e) { /* no-op */ }
+			}
+		}
+
+		private void dispatch(JsonNode response) {
+			JsonNode idNode = response.get("id");
+			PendingCall call = (idNode!=null && !idNode.isNull())
+				? pendingCalls.get(idNode.asText())
+				: null;
+			if (call!=null) {
+				call.complete(response);
+			} else if (LOGGER.isLoggable(Level.WARNING)) {
+				LOGGER.log(Level.WARNING, "Discarding response to unknown call: "+response);
+			}
+		}
+	}
+
+	/**
+	 * A call waiting for its response.
+	 */
+	private static class PendingCall {
+
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile JsonNode response;
+		private volatile IOException error;
+
+		private void complete(JsonNode response) {
+			this.response = response;
+			done.countDown();
+		}
+
+		private void fail(IOException error) {
+			this.error = error;
+			done.countDown();
+		}
+
+		private JsonNode await(long timeoutMillis)
+			throws IOException, InterruptedException, TimeoutException {
+			if (timeoutMillis<=0) {
+				done.await();
+			} else if (!done.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+				throw new TimeoutException("No response received in "+timeoutMillis+" ms");
+			}
+			if (response==null) {
+				throw new IOException("No response received", error);
+			}
+			return response;
+		}
+	}
+
+}
@@ -0,0 +1,248 @@
+package com.googlecode.jsonrpc4j;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+
+/**
+ * Immutable description of a {@link Method} exported by a
+ * {@link JsonRpcServer}.  Everything the server needs to match
+ * and bind a request to the method (raw parameter types, an
+ * {@link ObjectReader} for the resolved {@link JavaType} of each
+ * parameter and the JSON-RPC parameter names), to invoke it (the
+ * {@link JsonRpcDispatcher} generated for its interface if there is
+ * one, or else a {@link MethodHandle} taking the target and the
+ * arguments) and
+ * to write its result is computed once when the descriptor is created.
+ */
+final class MethodDescriptor {
+
+	private static final MethodType INVOKER_TYPE
+		= MethodType.methodType(Object.class, Object.class, Object[].class);
+
+	private static Class<? extends Annotation> WEBPARAM_ANNOTATION_CLASS;
+	private static Method WEBPARAM_NAME_METHOD;
+
+	static {
+		ClassLoader classLoader = MethodDescriptor.class.getClassLoader();
+		try {
+			WEBPARAM_ANNOTATION_CLASS = classLoader.loadClass("javax.jws.WebParam")
+				.asSubclass(Annotation.class);
+			WEBPARAM_NAME_METHOD  = WEBPARAM_ANNOTATION_CLASS.getMethod("name");
+		} catch (Exception e) {
+			// Must be Java 1.5
+		}
+	}
+
+	private final Method method;
+	private final Class<?>[] parameterTypes;
+	private final ObjectReader[] parameterReaders;
+	private final String[] parameterNames;
+	private final ObjectWriter resultWriter;
+	private final MethodHandle invoker;
+	private final JsonRpcDispatcher dispatcher;
+	private final int dispatchIndex;
+
+	/**
+	 * Creates the descriptor for the given {@link Method}, resolving
+	 * its generic parameter and return types with the given
+	 * {@link ObjectMapper}.
+	 *
+	 * @param method the {@link Method}
+	 * @param mapper the {@link ObjectMapper}
+	 */
+	MethodDescriptor(Method method, ObjectMapper mapper) {
+		TypeFactory typeFactory = mapper.getTypeFactory();
+		this.method				= method;
+		this.parameterTypes		= method.getParameterTypes();
+
+		Type[] genericTypes = method.getGenericParameterTypes();
+		this.parameterReaders	= new ObjectReader[genericTypes.length];
+		for (int i=0; i<genericTypes.length; i++) {
+			parameterReaders[i] = mapper.readerFor(typeFactory.constructType(genericTypes[i]));
+		}
+
+		Annotation[][] annotations = method.getParameterAnnotations();
+		this.parameterNames		= new String[annotations.length];
+		for (int i=0; i<annotations.length; i++) {
+			parameterNames[i] = findParameterName(annotations[i]);
+		}
+
+		// a writer for the declared return type skips the serializer
+		// lookup per call, but it serializes statically so it can only
+		// be used when the declared type is also the runtime type.  The
+		// result is written in the middle of the response so it mustn't
+		// flush the generator.
+		JavaType returnType = typeFactory.constructType(method.getGenericReturnType());
+		ObjectWriter writer = isStaticallyTyped(returnType)
+			? mapper.writerFor(returnType)
+			: mapper.writer();
+		this.resultWriter		= writer.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+		this.invoker			= createInvoker(method);
+		this.dispatcher			= GeneratedServices.getDispatcher(method);
+		this.dispatchIndex		= GeneratedServices.getDispatchIndex(method);
+	}
+
+	/**
+	 * Creates a {@link MethodHandle} of type {@code (Object, Object[])Object}
+	 * that invokes the given method on its first argument with the
+	 * contents of the array, returning null for {@code void} methods.
+	 * The handle is looked up with the access of this package, like
+	 * {@link Method#invoke(Object, Object...)} called from the server.
+	 *
+	 * @param method the {@link Method}
+	 * @return the handle, or null if the method isn't accessible
+	 */
+	private static MethodHandle createInvoker(Method method) {
+		MethodHandle handle;
+		try {
+			handle = MethodHandles.lookup().unreflect(method).asFixedArity();
+		} catch (IllegalAccessException e) {
+			return null;
+		}
+		if (Modifier.isStatic(method.getModifiers())) {
+			handle = MethodHandles.dropArguments(handle, 0, Object.class);
+		}
+		return handle
+			.asSpreader(Object[].class, method.getParameterCount())
+			.asType(INVOKER_TYPE);
+	}
+
+	/**
+	 * Whether values of the given type are always serialized exactly
+	 * as the type describes them, that is the type (and for containers
+	 * the types of their contents) can't be subclassed.
+	 *
+	 * @param type the type
+	 * @return true if static typing is safe
+	 */
+	private static boolean isStaticallyTyped(JavaType type) {
+		if (type.hasRawClass(void.class) || type.hasRawClass(Void.class)) {
+			return false;
+		} else if (type.isPrimitive()) {
+			return true;
+		} else if (type.isArrayType() || type.isCollectionLikeType()) {
+			return isStaticallyTyped(type.getContentType());
+		} else if (type.isMapLikeType()) {
+			return isStaticallyTyped(type.getKeyType())
+				&& isStaticallyTyped(type.getContentType());
+		}
+		return Modifier.isFinal(type.getRawClass().getModifiers());
+	}
+
+	/**
+	 * Returns the JSON-RPC name of a parameter given its annotations.
+	 * {@link JsonRpcParam} wins over the deprecated {@link JsonRpcParamName}
+	 * which wins over JAX-WS's {@code WebParam}.
+	 *
+	 * @param annotations the parameter's annotations
+	 * @return the name, or null if the parameter isn't named
+	 */
+	@SuppressWarnings("deprecation")
+	private static String findParameterName(Annotation[] annotations) {
+		String deprecatedName = null;
+		String webParamName = null;
+		for (Annotation annotation : annotations) {
+			if (JsonRpcParam.class.isInstance(annotation)) {
+				return JsonRpcParam.class.cast(annotation).value();
+			} else if (JsonRpcParamName.class.isInstance(annotation)) {
+				deprecatedName = JsonRpcParamName.class.cast(annotation).value();
+			} else if (WEBPARAM_ANNOTATION_CLASS != null
+				&& WEBPARAM_ANNOTATION_CLASS.isInstance(annotation)) {
+				try {
+					webParamName = (String) WEBPARAM_NAME_METHOD.invoke(annotation);
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+		return (deprecatedName!=null) ? deprecatedName : webParamName;
+	}
+
+	/**
+	 * @return the {@link Method}
+	 */
+	Method getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return the number of parameters the method takes
+	 */
+	int getParameterCount() {
+		return parameterTypes.length;
+	}
+
+	/**
+	 * @param index the parameter index
+	 * @return the raw type of the parameter
+	 */
+	Class<?> getParameterType(int index) {
+		return parameterTypes[index];
+	}
+
+	/**
+	 * @param index the parameter index
+	 * @return the {@link ObjectReader} that binds the parameter
+	 */
+	ObjectReader getParameterReader(int index) {
+		return parameterReaders[index];
+	}
+
+	/**
+	 * @param index the parameter index
+	 * @return the JSON-RPC name of the parameter, or null
+	 */
+	String getParameterName(int index) {
+		return parameterNames[index];
+	}
+
+	/**
+	 * Invokes the method on the given target.  Anything the method
+	 * throws is thrown as it is rather than wrapped in an
+	 * {@link InvocationTargetException}.
+	 *
+	 * @param target the object to invoke the method on
+	 * @param arguments the converted arguments
+	 * @return the return value (or null if no return)
+	 * @throws Throwable on error
+	 */
+	Object invoke(Object target, Object[] arguments)
+		throws Throwable {
+		if (dispatcher!=null) {
+			return dispatcher.invoke(dispatchIndex, target, arguments);
+		}
+		if (invoker!=null) {
+			return invoker.invokeExact(target, arguments);
+		}
+
+		// methods the package can't access go through reflection,
+		// which fails the same way it always did
+		try {
+			return method.invoke(target, arguments);
+		} catch (InvocationTargetException e) {
+			throw e.getTargetException();
+		}
+	}
+
+	/**
+	 * @return the {@link ObjectWriter} used to serialize the method's result
+	 */
+	ObjectWriter getResultWriter() {
+		return resultWriter;
+	}
+
+}
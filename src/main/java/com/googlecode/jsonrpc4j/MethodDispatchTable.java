@@ -0,0 +1,129 @@
+package com.googlecode.jsonrpc4j;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Immutable lookup table from JSON-RPC method names to the
+ * {@link MethodDescriptor}s of the Java methods that can service
+ * them, grouped by arity.  A {@link JsonRpcServer} builds one per
+ * set of handler interfaces so that requests are resolved with
+ * hash lookups rather than reflection scans.
+ */
+final class MethodDispatchTable {
+
+	private final Map<String, Overloads> overloads;
+
+	private MethodDispatchTable(Map<String, Overloads> overloads) {
+		this.overloads = overloads;
+	}
+
+	/**
+	 * Builds the table for all public methods of the given classes.
+	 *
+	 * @param clazzes the classes or interfaces being exported
+	 * @param mapper the {@link ObjectMapper} used to resolve parameter and return types
+	 * @return the table
+	 */
+	static MethodDispatchTable create(Class<?>[] clazzes, ObjectMapper mapper) {
+
+		// collect the methods by name, keeping discovery order
+		Map<String, Set<Method>> methodsByName = new LinkedHashMap<String, Set<Method>>();
+		for (Class<?> clazz : clazzes) {
+			for (Method method : clazz.getMethods()) {
+				Set<Method> methods = methodsByName.get(method.getName());
+				if (methods==null) {
+					methods = new LinkedHashSet<Method>();
+					methodsByName.put(method.getName(), methods);
+				}
+				methods.add(method);
+			}
+		}
+
+		// describe them
+		Map<String, Overloads> overloads = new HashMap<String, Overloads>();
+		for (Map.Entry<String, Set<Method>> entry : methodsByName.entrySet()) {
+			List<MethodDescriptor> descriptors = new ArrayList<MethodDescriptor>();
+			for (Method method : entry.getValue()) {
+				descriptors.add(new MethodDescriptor(method, mapper));
+			}
+			overloads.put(entry.getKey(), new Overloads(descriptors));
+		}
+		return new MethodDispatchTable(overloads);
+	}
+
+	/**
+	 * Returns the methods with the given name.
+	 *
+	 * @param methodName the method name
+	 * @return the {@link Overloads} or null if there are none
+	 */
+	Overloads getOverloads(String methodName) {
+		return overloads.get(methodName);
+	}
+
+	/**
+	 * Returns every {@link MethodDescriptor} in the table.
+	 *
+	 * @return the descriptors
+	 */
+	List<MethodDescriptor> getMethods() {
+		List<MethodDescriptor> ret = new ArrayList<MethodDescriptor>();
+		for (Overloads o : overloads.values()) {
+			ret.addAll(o.getMethods());
+		}
+		return ret;
+	}
+
+	/**
+	 * All of the methods sharing a single name.
+	 */
+	static final class Overloads {
+
+		private final List<MethodDescriptor> methods;
+		private final Map<Integer, List<MethodDescriptor>> methodsByArity;
+
+		private Overloads(List<MethodDescriptor> methods) {
+			Map<Integer, List<MethodDescriptor>> byArity = new HashMap<Integer, List<MethodDescriptor>>();
+			for (MethodDescriptor method : methods) {
+				List<MethodDescriptor> list = byArity.get(method.getParameterCount());
+				if (list==null) {
+					list = new ArrayList<MethodDescriptor>();
+					byArity.put(method.getParameterCount(), list);
+				}
+				list.add(method);
+			}
+			for (Map.Entry<Integer, List<MethodDescriptor>> entry : byArity.entrySet()) {
+				entry.setValue(Collections.unmodifiableList(entry.getValue()));
+			}
+			this.methods		= Collections.unmodifiableList(methods);
+			this.methodsByArity	= byArity;
+		}
+
+		/**
+		 * @return all of the overloads, in discovery order
+		 */
+		List<MethodDescriptor> getMethods() {
+			return methods;
+		}
+
+		/**
+		 * @param arity the number of parameters
+		 * @return the overloads taking exactly {@code arity} parameters
+		 */
+		List<MethodDescriptor> getMethods(int arity) {
+			List<MethodDescriptor> ret = methodsByArity.get(arity);
+			return (ret!=null) ? ret : Collections.<MethodDescriptor>emptyList();
+		}
+	}
+
+}
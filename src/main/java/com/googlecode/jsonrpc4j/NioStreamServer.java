@@ -0,0 +1,662 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * A streaming server that uses JSON-RPC over sockets like the
+ * {@link StreamServer}, but without a thread per connection.  A
+ * single selector thread reads from every connection, frames the
+ * requests with Jackson's non-blocking parser and hands complete
+ * requests to a pool of worker threads.  Idle connections only
+ * cost a parser, so it scales to many persistent connections.
+ * <p>
+ * Requests on a connection are handled one at a time, in the
+ * order they were sent.  A connection stops being read while it
+ * has {@link #setMaxQueuedRequests(int) too many requests} waiting
+ * or {@link #setMaxQueuedResponseBytes(int) too many bytes} of
+ * responses its client hasn't read yet, and a request larger than
+ * {@link #setMaxRequestBytes(int) the limit} closes it, so a client
+ * can't make the server buffer without bound.
+ */
+public class NioStreamServer {
+
+	private static final Logger LOGGER = Logger.getLogger(NioStreamServer.class.getName());
+
+	private static final int READ_BUFFER_SIZE			= 8192;
+	private static final long SHUTDOWN_TIMEOUT_MILLIS	= 2000;
+
+	private ExecutorService executor;
+	private ServerSocketChannel serverChannel;
+	private JsonRpcServer jsonRpcServer;
+	private ObjectMapper mapper;
+	private int maxClientErrors = 5;
+	private int maxQueuedRequests = 64;
+	private int maxQueuedResponseBytes = 1024*1024;
+	private int maxRequestBytes = 16*1024*1024;
+
+	private Selector selector;
+	private Thread selectorThread;
+	private final Queue<Connection> pendingUpdates = new ConcurrentLinkedQueue<Connection>();
+
+	private AtomicBoolean isStarted 	= new AtomicBoolean(false);
+	private AtomicBoolean keepRunning 	= new AtomicBoolean(false);
+
+	/**
+	 * Creates a {@code NioStreamServer} with the given number of
+	 * worker threads using the given {@link ServerSocketChannel}
+	 * to accept client connections.
+	 *
+	 * @param jsonRpcServer the {@link JsonRpcServer} that will handle requests
+	 * @param maxThreads the number of threads handling requests
+	 * @param serverChannel the bound {@link ServerSocketChannel}
+	 */
+	public NioStreamServer(
+		JsonRpcServer jsonRpcServer, int maxThreads, ServerSocketChannel serverChannel) {
+
+		// initialize values
+		this.jsonRpcServer		= jsonRpcServer;
+		this.serverChannel		= serverChannel;
+		this.mapper				= jsonRpcServer.getObjectMapper();
+		this.executor			= Executors.newFixedThreadPool(maxThreads);
+
+		// we can't allow the server to re-throw exceptions
+		jsonRpcServer.setRethrowExceptions(false);
+	}
+
+	/**
+	 * Creates a {@code NioStreamServer} with the given number of
+	 * worker threads listening on the given {@code port} and
+	 * {@link InetAddress}.
+	 *
+	 * @param jsonRpcServer the {@link JsonRpcServer} that will handle requests
+	 * @param maxThreads the number of threads handling requests
+	 * @param port the port to listen on
+	 * @param backlog the backlog
+	 * @param bindAddress the address to listen on
+	 * @throws IOException on error
+	 */
+	public NioStreamServer(
+		JsonRpcServer jsonRpcServer, int maxThreads,
+		int port, int backlog, InetAddress bindAddress)
+		throws IOException {
+		this(jsonRpcServer, maxThreads, bind(port, backlog, bindAddress));
+	}
+
+	private static ServerSocketChannel bind(int port, int backlog, InetAddress bindAddress)
+		throws IOException {
+		ServerSocketChannel channel = ServerSocketChannel.open();
+		channel.socket().bind(new InetSocketAddress(bindAddress, port), backlog);
+		return channel;
+	}
+
+	/**
+	 * Starts the server.
+	 * @throws IOException if the selector can't be opened
+	 */
+	public void start()
+		throws IOException {
+
+		// make sure we're not already started
+		if (!isStarted.compareAndSet(false, true)) {
+			throw new IllegalStateException(
+				"The NioStreamServer is already started");
+		}
+
+		// we're starting
+		LOGGER.log(Level.INFO,
+			"NioStreamServer starting "
+			+serverChannel.socket().getInetAddress()
+			+":"+serverChannel.socket().getLocalPort());
+
+		// register for connections
+		selector = Selector.open();
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+		// start the selector
+		keepRunning.set(true);
+		selectorThread = new Thread(new Server(), "NioStreamServer-selector");
+		selectorThread.setDaemon(true);
+		selectorThread.start();
+	}
+
+	/**
+	 * Stops the server, closing every client connection.
+	 * @throws InterruptedException if a graceful shutdown didn't happen
+	 */
+	public void stop()
+		throws InterruptedException {
+
+		// make sure we're started
+		if (!isStarted.get()) {
+			throw new IllegalStateException(
+				"The NioStreamServer is not started");
+		}
+
+		// stop the selector, it closes the connections on its way out
+		keepRunning.set(false);
+		selector.wakeup();
+		selectorThread.join(SHUTDOWN_TIMEOUT_MILLIS);
+
+		try {
+
+			// wait for the workers to finish
+			executor.shutdownNow();
+			if (!executor.isTerminated()) {
+				executor.awaitTermination(
+					SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			}
+
+			// set the flags
+			isStarted.set(false);
+
+		} catch (InterruptedException e) {
+			LOGGER.log(Level.SEVERE, "InterruptedException while waiting for termination", e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Selector thread.
+	 */
+	private class Server
+		implements Runnable {
+
+		private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void run() {
+			try {
+				while (keepRunning.get()) {
+					selector.select();
+
+					// update the interest of connections the workers changed
+					for (Connection connection = pendingUpdates.poll();
+						connection!=null; connection = pendingUpdates.poll()) {
+						connection.updateInterest();
+					}
+
+					// service the ready channels
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						try {
+							if (!key.isValid()) {
+								continue;
+							} else if (key.isAcceptable()) {
+								accept();
+							} else {
+								Connection connection = Connection.class.cast(key.attachment());
+								if (key.isWritable() && connection.writeQueued()) {
+									connection.handleNext();
+									connection.closeWhenDone();
+								}
+								if (key.isValid() && key.isReadable()) {
+									connection.read(readBuffer);
+								}
+								connection.updateInterest();
+							}
+						} catch (IOException e) {
+							LOGGER.log(Level.FINE, "Closing client connection", e);
+							close(key);
+						}
+					}
+				}
+			} catch (IOException e) {
+				LOGGER.log(Level.SEVERE, "Exception while selecting, terminating", e);
+			} finally {
+				shutdown();
+			}
+		}
+
+		private void accept()
+			throws IOException {
+			SocketChannel channel = serverChannel.accept();
+			if (channel==null) {
+				return;
+			}
+
+			// log the connection
+			if (LOGGER.isLoggable(Level.FINE)) {
+				LOGGER.log(Level.FINE, "Connection from "+channel.socket().getRemoteSocketAddress());
+			}
+
+			channel.configureBlocking(false);
+			SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+			key.attach(new Connection(key, channel));
+		}
+
+		private void shutdown() {
+			for (SelectionKey key : selector.keys()) {
+				close(key);
+			}
+			try {
+				selector.close();
+				serverChannel.close();
+			} catch (IOException e) { /* no-op */ }
+		}
+	}
+
+	private static void close(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) { /* no-op */ }
+	}
+
+	/**
+	 * The state of a client connection.  The parser and the request
+	 * being framed are only used by the selector thread, the queues
+	 * and the interest ops are guarded by the connection's monitor.
+	 */
+	private class Connection {
+
+		private final SelectionKey key;
+		private final SocketChannel channel;
+		private final JsonParser parser;
+		private TokenBuffer request;
+		private int depth = 0;
+		private long fed = 0;
+		private long requestStart = 0;
+
+		private final Queue<TokenBuffer> requests = new ArrayDeque<TokenBuffer>();
+		private final Queue<ByteBuffer> responses = new ArrayDeque<ByteBuffer>();
+		private int responseBytes = 0;
+		private int interest = SelectionKey.OP_READ;
+		private boolean handling = false;
+		private boolean inputClosed = false;
+		private ByteBuffer lastResponse;
+		private int errors = 0;
+
+		private Connection(SelectionKey key, SocketChannel channel)
+			throws IOException {
+			this.key		= key;
+			this.channel	= channel;
+			this.parser		= mapper.getFactory().createNonBlockingByteArrayParser();
+		}
+
+		/**
+		 * Reads what's available from the channel and queues
+		 * every request that has been completely received.  Once
+		 * the client has stopped sending, or sent something that
+		 * can't be read, the requests already received are still
+		 * answered before the connection is closed.
+		 *
+		 * @param readBuffer the selector thread's buffer
+		 * @throws IOException on error
+		 */
+		private void read(ByteBuffer readBuffer)
+			throws IOException {
+			readBuffer.clear();
+			int read = channel.read(readBuffer);
+			if (read<0) {
+				closeInput(null);
+				return;
+			}
+			fed += read;
+
+			// the parser is done with the buffer once it runs out of tokens
+			ByteArrayFeeder feeder = ByteArrayFeeder.class.cast(parser.getNonBlockingInputFeeder());
+			feeder.feedInput(readBuffer.array(), 0, read);
+			try {
+				for (JsonToken token = parser.nextToken();
+					token!=JsonToken.NOT_AVAILABLE && token!=null;
+					token = parser.nextToken()) {
+					if (request==null) {
+						request = new TokenBuffer(parser);
+					}
+					request.copyCurrentEvent(parser);
+					if (token.isStructStart()) {
+						depth++;
+					} else if (token.isStructEnd()) {
+						depth--;
+					}
+					if (depth==0) {
+						long requestEnd = parser.getCurrentLocation().getByteOffset();
+						if (!checkRequestSize(requestEnd)) {
+							return;
+						}
+						queue(request);
+						request = null;
+						requestStart = requestEnd;
+					}
+				}
+			} catch (JsonParseException e) {
+
+				// there's no finding the next request after garbage
+				LOGGER.log(Level.FINE, "Closing client connection", e);
+				closeInput(jsonRpcServer.createErrorResponse(
+					"jsonrpc", "null", -32700, "Parse error", null));
+				return;
+			}
+
+			// including what's been received of the next one
+			checkRequestSize(fed);
+		}
+
+		/**
+		 * Fails a request that's too large to buffer, there's
+		 * no skipping it to get to the next one either.
+		 *
+		 * @param requestEnd the offset of the end of the request
+		 * @return whether the request is small enough
+		 * @throws IOException on error
+		 */
+		private boolean checkRequestSize(long requestEnd)
+			throws IOException {
+			if (requestEnd-requestStart<=maxRequestBytes) {
+				return true;
+			}
+			String message = "Request larger than "+maxRequestBytes+" bytes";
+			LOGGER.log(Level.FINE, "Closing client connection: "+message);
+			closeInput(jsonRpcServer.createErrorResponse(
+				"2.0", "null", -32600, "Invalid Request", message));
+			return false;
+		}
+
+		/**
+		 * Stops reading from the connection, which is closed once the
+		 * requests already received have been answered and, if given,
+		 * a last response written after theirs.
+		 *
+		 * @param response the last response, or null
+		 * @throws IOException on error
+		 */
+		private void closeInput(Object response)
+			throws IOException {
+			synchronized (this) {
+				inputClosed = true;
+				if (response!=null) {
+					lastResponse = ByteBuffer.wrap(mapper.writeValueAsBytes(response));
+				}
+			}
+			closeWhenDone();
+		}
+
+		/**
+		 * Closes the connection if its input is closed and every
+		 * response has been written.
+		 *
+		 * @throws IOException on error
+		 */
+		private void closeWhenDone()
+			throws IOException {
+			synchronized (this) {
+				if (!inputClosed || handling || !requests.isEmpty()) {
+					return;
+				}
+				if (lastResponse!=null) {
+					ByteBuffer response = lastResponse;
+					lastResponse = null;
+					write(response);
+				}
+				if (!responses.isEmpty()) {
+					return;
+				}
+			}
+			close(key);
+		}
+
+		private void queue(TokenBuffer request) {
+			synchronized (this) {
+				requests.add(request);
+			}
+			handleNext();
+		}
+
+		/**
+		 * Hands the queued requests to a worker, unless one is
+		 * already handling them or the client is behind on reading
+		 * its responses.
+		 */
+		private void handleNext() {
+			synchronized (this) {
+				if (handling || requests.isEmpty() || responseBytes>=maxQueuedResponseBytes) {
+					return;
+				}
+				handling = true;
+			}
+			executor.execute(new Runnable() {
+				public void run() {
+					handleQueued();
+				}
+			});
+		}
+
+		/**
+		 * Handles the queued requests, in order, on a worker thread,
+		 * until there are none left or the client has to catch up
+		 * on its responses.
+		 */
+		private void handleQueued() {
+			while (true) {
+				TokenBuffer next;
+				synchronized (this) {
+					if (requests.isEmpty() || responseBytes>=maxQueuedResponseBytes) {
+						handling = false;
+						break;
+					}
+					next = requests.poll();
+				}
+				updateInterestLater();
+				try {
+					ByteArrayOutputStream ops = new ByteArrayOutputStream();
+					JsonNode node = mapper.readTree(next.asParser(mapper));
+					jsonRpcServer.handleNode(node, ops);
+					if (ops.size()>0) {
+						write(ByteBuffer.wrap(ops.toByteArray()));
+					}
+				} catch (Throwable t) {
+					errors++;
+					if (errors<maxClientErrors) {
+						LOGGER.log(Level.SEVERE, "Exception while handling request", t);
+					} else {
+						LOGGER.log(Level.SEVERE, "Closing client connection due to repeated errors", t);
+						close(key);
+						return;
+					}
+				}
+			}
+			updateInterestLater();
+			try {
+				closeWhenDone();
+			} catch (IOException e) {
+				LOGGER.log(Level.FINE, "Closing client connection", e);
+				close(key);
+			}
+		}
+
+		/**
+		 * Writes as much of the response as the socket takes right
+		 * away, leaving the rest to the selector thread.
+		 *
+		 * @param response the response
+		 * @throws IOException on error
+		 */
+		private void write(ByteBuffer response)
+			throws IOException {
+			synchronized (this) {
+				responses.add(response);
+				responseBytes += response.remaining();
+				if (responses.size()==1) {
+					writeQueued();
+				}
+			}
+			updateInterestLater();
+		}
+
+		/**
+		 * Writes the queued responses until the socket is full.
+		 *
+		 * @return whether everything was written
+		 * @throws IOException on error
+		 */
+		private synchronized boolean writeQueued()
+			throws IOException {
+			for (ByteBuffer response = responses.peek(); response!=null; response = responses.peek()) {
+				responseBytes -= channel.write(response);
+				if (response.hasRemaining()) {
+					return false;
+				}
+				responses.poll();
+			}
+			return true;
+		}
+
+		/**
+		 * @return the interest ops the connection's state calls for:
+		 * reads while it's within its limits, writes while there are
+		 * responses left to write
+		 */
+		private synchronized int interestOps() {
+			int ops = 0;
+			if (!inputClosed
+				&& requests.size()<maxQueuedRequests
+				&& responseBytes<maxQueuedResponseBytes) {
+				ops |= SelectionKey.OP_READ;
+			}
+			if (!responses.isEmpty()) {
+				ops |= SelectionKey.OP_WRITE;
+			}
+			return ops;
+		}
+
+		/**
+		 * Sets the interest ops of the key, on the selector thread.
+		 */
+		private synchronized void updateInterest() {
+			int ops = interestOps();
+			if (ops==interest || !key.isValid()) {
+				return;
+			}
+			interest = ops;
+			try {
+				key.interestOps(ops);
+			} catch (CancelledKeyException e) {
+				// closed by a worker
+			}
+		}
+
+		/**
+		 * Has the selector thread update the interest ops of the
+		 * key if they have changed.
+		 */
+		private void updateInterestLater() {
+			synchronized (this) {
+				if (interestOps()==interest) {
+					return;
+				}
+			}
+			pendingUpdates.add(this);
+			selector.wakeup();
+		}
+	}
+
+	/**
+	 * @return the port the server is listening on
+	 */
+	public int getLocalPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * @return the maxClientErrors
+	 */
+	public int getMaxClientErrors() {
+		return maxClientErrors;
+	}
+
+	/**
+	 * @param maxClientErrors the maxClientErrors to set
+	 */
+	public void setMaxClientErrors(int maxClientErrors) {
+		this.maxClientErrors = maxClientErrors;
+	}
+
+	/**
+	 * @return the maxQueuedRequests
+	 */
+	public int getMaxQueuedRequests() {
+		return maxQueuedRequests;
+	}
+
+	/**
+	 * Sets how many requests a connection can have waiting to be
+	 * handled before the server stops reading from it.
+	 * @param maxQueuedRequests the maxQueuedRequests to set
+	 */
+	public void setMaxQueuedRequests(int maxQueuedRequests) {
+		this.maxQueuedRequests = maxQueuedRequests;
+	}
+
+	/**
+	 * @return the maxQueuedResponseBytes
+	 */
+	public int getMaxQueuedResponseBytes() {
+		return maxQueuedResponseBytes;
+	}
+
+	/**
+	 * Sets how many bytes of responses a connection can have waiting
+	 * for its client to read them before the server stops reading
+	 * and handling its requests.
+	 * @param maxQueuedResponseBytes the maxQueuedResponseBytes to set
+	 */
+	public void setMaxQueuedResponseBytes(int maxQueuedResponseBytes) {
+		this.maxQueuedResponseBytes = maxQueuedResponseBytes;
+	}
+
+	/**
+	 * @return the maxRequestBytes
+	 */
+	public int getMaxRequestBytes() {
+		return maxRequestBytes;
+	}
+
+	/**
+	 * Sets the size of the largest request the server buffers,
+	 * a connection sending a larger one is closed.
+	 * @param maxRequestBytes the maxRequestBytes to set
+	 */
+	public void setMaxRequestBytes(int maxRequestBytes) {
+		this.maxRequestBytes = maxRequestBytes;
+	}
+
+	/**
+	 * @return the isStarted
+	 */
+	public boolean isStarted() {
+		return isStarted.get();
+	}
+
+}
@@ -0,0 +1,167 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.ContentEncoder;
+
+/**
+ * A body held in fixed size pages, so it's never copied to grow
+ * or to be handed on.  It's filled by writing to it as an
+ * {@link OutputStream}, or straight from a {@link ContentDecoder},
+ * and drained into a {@link ContentEncoder} or read back through
+ * {@link #getInputStream()}.
+ */
+class PagedByteBuffer
+	extends OutputStream {
+
+	private static final int PAGE_SIZE = 8 * 1024;
+
+	private final List<ByteBuffer> pages = new ArrayList<ByteBuffer>();
+	private ByteBuffer current;
+	private long length;
+	private boolean flipped;
+	private int readPage;
+
+	@Override
+	public void write(int b) {
+		current().put((byte) b);
+		length++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		while (len>0) {
+			ByteBuffer page = current();
+			int n = Math.min(len, page.remaining());
+			page.put(b, off, n);
+			off += n;
+			len -= n;
+			length += n;
+		}
+	}
+
+	/**
+	 * Reads what the given decoder has, straight into the pages.
+	 *
+	 * @param decoder the {@link ContentDecoder}
+	 * @throws IOException on error
+	 */
+	void readFrom(ContentDecoder decoder)
+		throws IOException {
+		int read;
+		while ((read = decoder.read(current()))>0) {
+			length += read;
+		}
+	}
+
+	/**
+	 * Writes as much as the given encoder takes, and
+	 * completes it once everything has been written.
+	 *
+	 * @param encoder the {@link ContentEncoder}
+	 * @throws IOException on error
+	 */
+	void writeTo(ContentEncoder encoder)
+		throws IOException {
+		flip();
+		while (readPage<pages.size()) {
+			ByteBuffer page = pages.get(readPage);
+			encoder.write(page);
+			if (page.hasRemaining()) {
+				return;
+			}
+			readPage++;
+		}
+		encoder.complete();
+	}
+
+	/**
+	 * Starts reading from the beginning again.
+	 */
+	void rewind() {
+		flip();
+		for (ByteBuffer page : pages) {
+			page.rewind();
+		}
+		readPage = 0;
+	}
+
+	/**
+	 * @return an {@link InputStream} over the pages
+	 */
+	InputStream getInputStream() {
+		flip();
+		return new InputStream() {
+			private int page;
+
+			@Override
+			public int read() {
+				ByteBuffer buffer = next();
+				return buffer!=null ? buffer.get() & 0xff : -1;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				if (len==0) {
+					return 0;
+				}
+				ByteBuffer buffer = next();
+				if (buffer==null) {
+					return -1;
+				}
+				int n = Math.min(len, buffer.remaining());
+				buffer.get(b, off, n);
+				return n;
+			}
+
+			private ByteBuffer next() {
+				while (page<pages.size() && !pages.get(page).hasRemaining()) {
+					page++;
+				}
+				return page<pages.size() ? pages.get(page) : null;
+			}
+		};
+	}
+
+	/**
+	 * @return the number of bytes held
+	 */
+	long length() {
+		return length;
+	}
+
+	private ByteBuffer current() {
+		if (current==null || !current.hasRemaining()) {
+			current = ByteBuffer.allocate(PAGE_SIZE);
+			pages.add(current);
+		}
+		return current;
+	}
+
+	private void flip() {
+		if (!flipped) {
+			for (ByteBuffer page : pages) {
+				page.flip();
+			}
+			flipped = true;
+		}
+	}
+
+	@Override
+	public String toString() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) length);
+		for (ByteBuffer page : pages) {
+			bytes.write(page.array(), 0, flipped ? page.limit() : page.position());
+		}
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+}
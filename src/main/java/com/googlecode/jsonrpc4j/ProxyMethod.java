@@ -0,0 +1,175 @@
+package com.googlecode.jsonrpc4j;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+
+/**
+ * Immutable description of a method of an interface proxied by a
+ * client: its JSON-RPC name, the names of its parameters, its return
+ * type (and for asynchronous methods the type of their result)
+ * resolved with the client's {@link ObjectMapper}, and whether its
+ * results are {@link JsonRpcCacheable}.  Everything a proxy needs to
+ * make a call is computed once, instead of on every call.
+ */
+public final class ProxyMethod {
+
+	private final Method method;
+	private final String name;
+	private final JavaType returnType;
+	private final JavaType asyncResultType;
+	private final String[] parameterNames;
+	private final boolean cacheable;
+
+	/**
+	 * Creates the description of the given {@link Method}, resolving
+	 * its types with the given {@link ObjectMapper}.
+	 *
+	 * @param method the {@link Method}
+	 * @param mapper the {@link ObjectMapper}
+	 */
+	public ProxyMethod(Method method, ObjectMapper mapper) {
+		TypeFactory typeFactory = mapper.getTypeFactory();
+		this.method				= method;
+		this.name				= method.getName();
+		this.returnType			= typeFactory.constructType(method.getGenericReturnType());
+		Type resultType			= ReflectionUtil.getAsyncResultType(method);
+		this.asyncResultType	= (resultType!=null) ? typeFactory.constructType(resultType) : null;
+		this.cacheable			= method.isAnnotationPresent(JsonRpcCacheable.class);
+
+		Annotation[][] annotations = method.getParameterAnnotations();
+		this.parameterNames		= new String[annotations.length];
+		for (int i=0; i<annotations.length; i++) {
+			for (Annotation annotation : annotations[i]) {
+				if (JsonRpcParam.class.isInstance(annotation)) {
+					parameterNames[i] = JsonRpcParam.class.cast(annotation).value();
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the arguments of a call, optionally as named parameters.
+	 * This is {@link ReflectionUtil#parseArguments(Method, Object[], boolean)}
+	 * with the parameter names already known.
+	 *
+	 * @param arguments the arguments
+	 * @param useNamedParams whether or not to used named params
+	 * @return the arguments, or a {@link Map} of them by name
+	 */
+	public Object getArguments(Object[] arguments, boolean useNamedParams) {
+		if (!useNamedParams) {
+			return arguments;
+		}
+		Map<String, Object> namedParams = new HashMap<String, Object>(
+			(int)(parameterNames.length/0.75f)+1);
+		for (int i=0; i<parameterNames.length; i++) {
+			if (parameterNames[i]==null) {
+				throw new RuntimeException(
+					"useNamedParams is enabled and a JsonRpcParam annotation "
+					+"was not found at parameter index "+i+" on method "
+					+name);
+			}
+			namedParams.put(parameterNames[i], arguments[i]);
+		}
+		return namedParams;
+	}
+
+	/**
+	 * @return the {@link Method}
+	 */
+	public Method getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return the JSON-RPC name of the method
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the resolved generic return type
+	 */
+	public JavaType getReturnType() {
+		return returnType;
+	}
+
+	/**
+	 * @return the resolved type of the result of an asynchronous
+	 * method, or null if the method isn't asynchronous
+	 * @see ReflectionUtil#getAsyncResultType(Method)
+	 */
+	public JavaType getAsyncResultType() {
+		return asyncResultType;
+	}
+
+	/**
+	 * @return whether the method is {@link JsonRpcCacheable}
+	 */
+	public boolean isCacheable() {
+		return cacheable;
+	}
+
+	/**
+	 * {@link ProxyMethod}s made on first use and kept by the identity
+	 * of their {@link Method}, which a proxy passes in unchanged on
+	 * every call, so finding them doesn't need
+	 * {@link Method#equals(Object)}.  The methods of {@link Object}
+	 * aren't remote and don't have one.
+	 * <p>
+	 * Only the first {@link #MAX_ENTRIES} are kept, in case
+	 * a caller passes in a new copy of a {@link Method} every time.
+	 */
+	public static final class Cache {
+
+		static final int MAX_ENTRIES = 1024;
+
+		private final ObjectMapper mapper;
+		private volatile Map<Method, ProxyMethod> methods
+			= new IdentityHashMap<Method, ProxyMethod>();
+
+		/**
+		 * @param mapper the {@link ObjectMapper} types are resolved with
+		 */
+		public Cache(ObjectMapper mapper) {
+			this.mapper = mapper;
+		}
+
+		/**
+		 * Returns the {@link ProxyMethod} of the given {@link Method}.
+		 *
+		 * @param method the {@link Method}
+		 * @return the {@link ProxyMethod}, or null for methods of {@link Object}
+		 */
+		public ProxyMethod get(Method method) {
+			ProxyMethod proxyMethod = methods.get(method);
+			if (proxyMethod==null) {
+				if (method.getDeclaringClass()==Object.class) {
+					return null;
+				}
+				proxyMethod = new ProxyMethod(method, mapper);
+
+				// copy on write, interfaces only have so many methods
+				synchronized (this) {
+					if (methods.size()<MAX_ENTRIES) {
+						Map<Method, ProxyMethod> copy = new IdentityHashMap<Method, ProxyMethod>(methods);
+						copy.put(method, proxyMethod);
+						methods = copy;
+					}
+				}
+			}
+			return proxyMethod;
+		}
+	}
+
+}
@@ -3,15 +3,25 @@ package com.googlecode.jsonrpc4j;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
 import java.net.Socket;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -22,6 +32,8 @@ public abstract class ProxyUtil {
 
 	private static final Logger LOGGER = Logger.getLogger(ProxyUtil.class.getName());
 
+	private static final Object[] NO_ARGS = new Object[0];
+
 	/**
 	 * Creates a composite service using all of the given
 	 * services.
@@ -93,16 +105,99 @@ public abstract class ProxyUtil {
 
 		// now create the proxy
 		return Proxy.newProxyInstance(classLoader, interfaces.toArray(new Class<?>[0]),
-			new InvocationHandler() {
-			public Object invoke(Object proxy, Method method, Object[] args)
-				throws Throwable {
-				Class<?> clazz = method.getDeclaringClass();
-				if (clazz == Object.class) {
-					return proxyObjectMethods(method, proxy, args);
+			new CompositeServiceHandler(serviceMap));
+	}
+
+	/**
+	 * The {@link InvocationHandler} of a composite service proxy.  Each
+	 * interface method is bound once to the service implementing it,
+	 * and {@link JsonRpcServer} asks it for the service directly so that
+	 * calls it dispatches don't go through the proxy at all.
+	 * <p>
+	 * {@link Method#equals(Object)} is too slow to look the bound
+	 * handles up on every call, so they're also kept by the identity of
+	 * the {@link Method}s the proxy passes in, which are always the same.
+	 */
+	static final class CompositeServiceHandler
+		implements InvocationHandler {
+
+		private static final MethodType INVOKER_TYPE
+			= MethodType.methodType(Object.class, Object[].class);
+
+		private final Map<Class<?>, Object> serviceMap;
+		private final Map<Method, MethodHandle> invokers = new HashMap<Method, MethodHandle>();
+		private volatile Map<Method, MethodHandle> proxyInvokers = new IdentityHashMap<Method, MethodHandle>();
+
+		private CompositeServiceHandler(Map<Class<?>, Object> serviceMap) {
+			this.serviceMap = serviceMap;
+			for (Map.Entry<Class<?>, Object> entry : serviceMap.entrySet()) {
+				for (Method method : entry.getKey().getMethods()) {
+					MethodHandle invoker = createInvoker(method, serviceMap.get(method.getDeclaringClass()));
+					if (invoker!=null) {
+						invokers.put(method, invoker);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Binds the given interface method to the service, taking
+		 * its arguments as an array.
+		 *
+		 * @param method the interface method
+		 * @param service the service implementing it
+		 * @return the handle, or null if it can't be bound
+		 */
+		private static MethodHandle createInvoker(Method method, Object service) {
+			if (service==null || Modifier.isStatic(method.getModifiers())) {
+				return null;
+			}
+			try {
+				return MethodHandles.lookup().unreflect(method).asFixedArity()
+					.bindTo(service)
+					.asSpreader(Object[].class, method.getParameterCount())
+					.asType(INVOKER_TYPE);
+			} catch (IllegalAccessException e) {
+				return null;
+			}
+		}
+
+		/**
+		 * Returns the service implementing the given interface.
+		 *
+		 * @param clazz the interface
+		 * @return the service, or null if there isn't one
+		 */
+		Object getService(Class<?> clazz) {
+			return serviceMap.get(clazz);
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args)
+			throws Throwable {
+			MethodHandle invoker = proxyInvokers.get(method);
+			if (invoker==null) {
+				invoker = invokers.get(method);
+				if (invoker!=null) {
+
+					// copy on write, proxies only have so many methods
+					Map<Method, MethodHandle> copy = new IdentityHashMap<Method, MethodHandle>(proxyInvokers);
+					copy.put(method, invoker);
+					proxyInvokers = copy;
 				}
+			}
+			if (invoker!=null) {
+				return invoker.invokeExact((args!=null) ? args : NO_ARGS);
+			}
+			Class<?> clazz = method.getDeclaringClass();
+			if (clazz == Object.class) {
+				return proxyObjectMethods(method, proxy, args);
+			}
+			try {
 				return method.invoke(serviceMap.get(clazz), args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
 			}
-		});
+		}
 	}
 
 	/**
@@ -148,18 +243,14 @@ public abstract class ProxyUtil {
 		final OutputStream ops) {
 
 		// create and return the proxy
-		return (T)Proxy.newProxyInstance(
+		return newClientProxy(
 			classLoader,
-			new Class<?>[] {proxyInterface},
-			new InvocationHandler() {
-				public Object invoke(Object proxy, Method method, Object[] args)
+			proxyInterface,
+			new ClientInvocationHandler(client, useNamedParams) {
+				protected Object call(ProxyMethod method, Object arguments)
 					throws Throwable {
-					if (method.getDeclaringClass() == Object.class) {
-						return proxyObjectMethods(method, proxy, args);
-					}
-					Object arguments = ReflectionUtil.parseArguments(method, args, useNamedParams);
 					return client.invokeAndReadResponse(
-						method.getName(), arguments, method.getGenericReturnType(), ops, ips);
+						method.getName(), arguments, method.getReturnType(), ops, ips);
 				}
 			});
 	}
@@ -183,18 +274,17 @@ public abstract class ProxyUtil {
 		final Map<String, String> extraHeaders) {
 
 		// create and return the proxy
-		return (T)Proxy.newProxyInstance(
+		return newClientProxy(
 			classLoader,
-			new Class<?>[] {proxyInterface},
-			new InvocationHandler() {
-				public Object invoke(Object proxy, Method method, Object[] args)
+			proxyInterface,
+			new ClientInvocationHandler(client, useNamedParams) {
+				protected Object call(ProxyMethod method, Object arguments)
 					throws Throwable {
-					if (method.getDeclaringClass() == Object.class) {
-						return proxyObjectMethods(method, proxy, args);
-					}
-					Object arguments = ReflectionUtil.parseArguments(method, args, useNamedParams);
 					return client.invoke(
-						method.getName(), arguments, method.getGenericReturnType(), extraHeaders);
+						method.getName(), arguments, method.getReturnType(), extraHeaders);
+				}
+				protected Object scope() {
+					return client.getResultCacheScope(extraHeaders);
 				}
 			});
 	}
@@ -215,6 +305,208 @@ public abstract class ProxyUtil {
 		return createClientProxy(classLoader, proxyInterface, false, client, new HashMap<String, String>());
 	}
 
+	/**
+	 * Creates a {@link Proxy} of the given {@link proxyInterface}
+	 * that uses the given {@link JsonRpcSocketClient}.  The proxy
+	 * is thread safe, concurrent calls share the client's connection.
+	 * @param <T> the proxy type
+	 * @param classLoader the {@link ClassLoader}
+	 * @param proxyInterface the interface to proxy
+	 * @param useNamedParams whether to use named parameters
+	 * @param client the {@link JsonRpcSocketClient}
+	 * @return the proxied interface
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T createClientProxy(
+		ClassLoader classLoader,
+		Class<T> proxyInterface,
+		final boolean useNamedParams,
+		final JsonRpcSocketClient client) {
+
+		// create and return the proxy
+		return newClientProxy(
+			classLoader,
+			proxyInterface,
+			new ClientInvocationHandler(client, useNamedParams) {
+				protected Object call(ProxyMethod method, Object arguments)
+					throws Throwable {
+					return client.invoke(
+						method.getName(), arguments, method.getReturnType());
+				}
+			});
+	}
+
+	/**
+	 * Creates a {@link Proxy} of the given {@link proxyInterface}
+	 * that uses the given {@link JsonRpcSocketClient}.
+	 * @param <T> the proxy type
+	 * @param classLoader the {@link ClassLoader}
+	 * @param proxyInterface the interface to proxy
+	 * @param client the {@link JsonRpcSocketClient}
+	 * @return the proxied interface
+	 */
+	public static <T> T createClientProxy(
+		ClassLoader classLoader,
+		Class<T> proxyInterface,
+		final JsonRpcSocketClient client) {
+		return createClientProxy(classLoader, proxyInterface, false, client);
+	}
+
+	/**
+	 * Creates a {@link Proxy} of the given {@link proxyInterface}
+	 * that uses the given {@link JsonRpcHttpAsyncClient}.  Methods
+	 * returning a {@link CompletableFuture} or a {@link CompletionStage}
+	 * return as soon as the request is under way, with a future of its
+	 * result, so a few threads can have many calls in flight.  Other
+	 * methods wait for their result.
+	 * @param <T> the proxy type
+	 * @param classLoader the {@link ClassLoader}
+	 * @param proxyInterface the interface to proxy
+	 * @param useNamedParams whether to use named parameters
+	 * @param client the {@link JsonRpcHttpAsyncClient}
+	 * @param extraHeaders extra HTTP headers to be added to each request
+	 * @return the proxied interface
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T createClientProxy(
+		ClassLoader classLoader,
+		Class<T> proxyInterface,
+		final boolean useNamedParams,
+		final JsonRpcHttpAsyncClient client,
+		final Map<String, String> extraHeaders) {
+
+		// create and return the proxy
+		final ProxyMethod.Cache methods = new ProxyMethod.Cache(client.getObjectMapper());
+		return newClientProxy(
+			classLoader,
+			proxyInterface,
+			new InvocationHandler() {
+				public Object invoke(Object proxy, Method method, Object[] args)
+					throws Throwable {
+					ProxyMethod proxyMethod = methods.get(method);
+					if (proxyMethod==null) {
+						return proxyObjectMethods(method, proxy, args);
+					}
+					Object arguments = proxyMethod.getArguments(args, useNamedParams);
+					if (proxyMethod.getAsyncResultType()!=null) {
+						return client.invokeAsync(
+							proxyMethod.getName(), arguments, proxyMethod.getAsyncResultType(), extraHeaders);
+					}
+					try {
+						return client.invokeAsync(
+							proxyMethod.getName(), arguments, proxyMethod.getReturnType(), extraHeaders).get();
+					} catch (ExecutionException e) {
+						throw e.getCause();
+					}
+				}
+			});
+	}
+
+	/**
+	 * Creates a {@link Proxy} of the given {@link proxyInterface}
+	 * that uses the given {@link JsonRpcHttpAsyncClient}.
+	 * @param <T> the proxy type
+	 * @param classLoader the {@link ClassLoader}
+	 * @param proxyInterface the interface to proxy
+	 * @param client the {@link JsonRpcHttpAsyncClient}
+	 * @return the proxied interface
+	 */
+	public static <T> T createClientProxy(
+		ClassLoader classLoader,
+		Class<T> proxyInterface,
+		final JsonRpcHttpAsyncClient client) {
+		return createClientProxy(classLoader, proxyInterface, false, client, new HashMap<String, String>());
+	}
+
+	/**
+	 * Creates a client proxy of the given interface that passes every
+	 * call to the given {@link InvocationHandler}.  The proxy is an
+	 * instance of the stub generated for the interface by
+	 * {@link com.googlecode.jsonrpc4j.processor.JsonRpcServiceProcessor}
+	 * when there is one, and a {@link Proxy} otherwise.
+	 * @param <T> the proxy type
+	 * @param classLoader the {@link ClassLoader} of the {@link Proxy}
+	 * @param proxyInterface the interface to proxy
+	 * @param handler the {@link InvocationHandler}
+	 * @return the proxied interface
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T newClientProxy(
+		ClassLoader classLoader,
+		Class<T> proxyInterface,
+		InvocationHandler handler) {
+		T stub = GeneratedServices.newStub(proxyInterface, handler);
+		if (stub!=null) {
+			return stub;
+		}
+		return (T)Proxy.newProxyInstance(
+			classLoader,
+			new Class<?>[] {proxyInterface},
+			handler);
+	}
+
+	/**
+	 * The {@link InvocationHandler} of a proxy of a {@link JsonRpcClient}.
+	 * It looks up the {@link ProxyMethod} of each call, answers the
+	 * methods of {@link Object} itself, and only goes through the
+	 * client's {@link JsonRpcResultCache} for {@link JsonRpcCacheable}
+	 * methods, within the {@link #scope()} of the proxy.
+	 */
+	private static abstract class ClientInvocationHandler
+		implements InvocationHandler {
+
+		private static final AtomicLong NEXT_SCOPE = new AtomicLong();
+
+		private final String proxyScope = "proxy-"+NEXT_SCOPE.incrementAndGet();
+		private final JsonRpcClient client;
+		private final boolean useNamedParams;
+		private final ProxyMethod.Cache methods;
+
+		ClientInvocationHandler(JsonRpcClient client, boolean useNamedParams) {
+			this.client			= client;
+			this.useNamedParams	= useNamedParams;
+			this.methods		= new ProxyMethod.Cache(client.getObjectMapper());
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args)
+			throws Throwable {
+			final ProxyMethod proxyMethod = methods.get(method);
+			if (proxyMethod==null) {
+				return proxyObjectMethods(method, proxy, args);
+			}
+			final Object arguments = proxyMethod.getArguments(args, useNamedParams);
+			if (!proxyMethod.isCacheable()) {
+				return call(proxyMethod, arguments);
+			}
+			return client.getResultCache().get(scope(), method, args, new JsonRpcResultCache.RemoteCall() {
+				public Object call()
+					throws Throwable {
+					return ClientInvocationHandler.this.call(proxyMethod, arguments);
+				}
+			});
+		}
+
+		/**
+		 * Makes the remote call.
+		 * @param method the {@link ProxyMethod}
+		 * @param arguments the arguments, possibly named
+		 * @return the result
+		 * @throws Throwable on error
+		 */
+		protected abstract Object call(ProxyMethod method, Object arguments)
+			throws Throwable;
+
+		/**
+		 * Returns the scope the results of this proxy are cached in,
+		 * this proxy alone unless it knows where its calls go.
+		 * @return the scope
+		 * @see JsonRpcResultCache#get(Object, Method, Object[], JsonRpcResultCache.RemoteCall)
+		 */
+		protected Object scope() {
+			return proxyScope;
+		}
+	}
+
 	private static Object proxyObjectMethods(Method method, Object proxyObject, Object[] args) {
 		String name = method.getName();
 		if (name.equals("toString")) {
@@ -2,6 +2,10 @@ package com.googlecode.jsonrpc4j;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -9,23 +13,80 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Utilities for reflection.
+ * <p>
+ * All caches are attached to the {@link Class} they describe
+ * through {@link ClassValue}s, so they are safe for concurrent
+ * use, are never larger than the classes they were computed
+ * from, and are released together with their {@link ClassLoader}.
  */
 public abstract class ReflectionUtil {
 
-	private static Map<String, Set<Method>> methodCache
-		= new HashMap<String, Set<Method>>();
+	private static final ClassValue<Map<String, Set<Method>>> methodCache
+		= new ClassValue<Map<String, Set<Method>>>() {
+		@Override
+		protected Map<String, Set<Method>> computeValue(Class<?> clazz) {
+			Map<String, Set<Method>> methods = new HashMap<String, Set<Method>>();
+			for (Method method : clazz.getMethods()) {
+				Set<Method> named = methods.get(method.getName());
+				if (named==null) {
+					named = new HashSet<Method>();
+					methods.put(method.getName(), named);
+				}
+				named.add(method);
+			}
+			for (Map.Entry<String, Set<Method>> entry : methods.entrySet()) {
+				entry.setValue(Collections.unmodifiableSet(entry.getValue()));
+			}
+			return methods;
+		}
+	};
 
-	private static Map<Method, List<Class<?>>> parameterTypeCache
-		= new HashMap<Method, List<Class<?>>>();
+	private static final MethodCache<List<Class<?>>> parameterTypeCache
+		= new MethodCache<List<Class<?>>>() {
+		@Override
+		protected List<Class<?>> compute(Method method) {
+			List<Class<?>> types = new ArrayList<Class<?>>();
+			for (Class<?> type : method.getParameterTypes()) {
+				types.add(type);
+			}
+			return Collections.unmodifiableList(types);
+		}
+	};
 
-	private static Map<Method, List<Annotation>> methodAnnotationCache
-		= new HashMap<Method, List<Annotation>>();
+	private static final MethodCache<List<Annotation>> methodAnnotationCache
+		= new MethodCache<List<Annotation>>() {
+		@Override
+		protected List<Annotation> compute(Method method) {
+			List<Annotation> annotations = new ArrayList<Annotation>();
+			for (Annotation a : method.getAnnotations()) {
+				annotations.add(a);
+			}
+			return Collections.unmodifiableList(annotations);
+		}
+	};
 
-	private static Map<Method, List<List<Annotation>>> methodParamAnnotationCache
-		= new HashMap<Method, List<List<Annotation>>>();
+	private static final MethodCache<List<List<Annotation>>> methodParamAnnotationCache
+		= new MethodCache<List<List<Annotation>>>() {
+		@Override
+		protected List<List<Annotation>> compute(Method method) {
+			List<List<Annotation>> annotations = new ArrayList<List<Annotation>>();
+			for (Annotation[] paramAnnotations : method.getParameterAnnotations()) {
+				List<Annotation> listAnnotations = new ArrayList<Annotation>();
+				for (Annotation a : paramAnnotations) {
+					listAnnotations.add(a);
+				}
+				annotations.add(Collections.unmodifiableList(listAnnotations));
+			}
+			return Collections.unmodifiableList(annotations);
+		}
+	};
 
 	/**
 	 * Finds methods with the given name on the given class.
@@ -34,25 +95,25 @@ public abstract class ReflectionUtil {
 	 * @return the methods
 	 */
 	public static Set<Method> findMethods(Class<?>[] clazzes, String name) {
-		StringBuilder sb = new StringBuilder();
-		for (Class<?> clazz : clazzes) {
-			sb.append(clazz.getName()).append("::");
-		}
-		String cacheKey = sb.append(name).toString();
-		if (methodCache.containsKey(cacheKey)) {
-			return methodCache.get(cacheKey);
+		if (clazzes.length==1) {
+			return findMethods(clazzes[0], name);
 		}
 		Set<Method> methods = new HashSet<Method>();
 		for (Class<?> clazz : clazzes) {
-			for (Method method : clazz.getMethods()) {
-				if (method.getName().equals(name)) {
-					methods.add(method);
-				}
-			}
+			methods.addAll(findMethods(clazz, name));
 		}
-		methods = Collections.unmodifiableSet(methods);
-		methodCache.put(cacheKey, methods);
-		return methods;
+		return Collections.unmodifiableSet(methods);
+	}
+
+	/**
+	 * Finds methods with the given name on the given class.
+	 * @param clazz the class
+	 * @param name the method name
+	 * @return the methods
+	 */
+	public static Set<Method> findMethods(Class<?> clazz, String name) {
+		Set<Method> methods = methodCache.get(clazz).get(name);
+		return (methods!=null) ? methods : Collections.<Method>emptySet();
 	}
 
 	/**
@@ -61,16 +122,7 @@ public abstract class ReflectionUtil {
 	 * @return the parameter types
 	 */
 	public static List<Class<?>> getParameterTypes(Method method) {
-		if (parameterTypeCache.containsKey(method)) {
-			return parameterTypeCache.get(method);
-		}
-		List<Class<?>> types = new ArrayList<Class<?>>();
-		for (Class<?> type : method.getParameterTypes()) {
-			types.add(type);
-		}
-		types = Collections.unmodifiableList(types);
-		parameterTypeCache.put(method, types);
-		return types;
+		return parameterTypeCache.get(method);
 	}
 
 	/**
@@ -80,16 +132,7 @@ public abstract class ReflectionUtil {
 	 * @return the {@link Annotation}s
 	 */
 	public static List<Annotation> getAnnotations(Method method) {
-		if (methodAnnotationCache.containsKey(method)) {
-			return methodAnnotationCache.get(method);
-		}
-		List<Annotation> annotations = new ArrayList<Annotation>();
-		for (Annotation a : method.getAnnotations()) {
-			annotations.add(a);
-		}
-		annotations = Collections.unmodifiableList(annotations);
-		methodAnnotationCache.put(method, annotations);
-		return annotations;
+		return methodAnnotationCache.get(method);
 	}
 
 	/**
@@ -136,20 +179,7 @@ public abstract class ReflectionUtil {
 	 * @return the {@link Annotation}s
 	 */
 	public static List<List<Annotation>> getParameterAnnotations(Method method) {
-		if (methodParamAnnotationCache.containsKey(method)) {
-			return methodParamAnnotationCache.get(method);
-		}
-		List<List<Annotation>> annotations = new ArrayList<List<Annotation>>();
-		for (Annotation[] paramAnnotations : method.getParameterAnnotations()) {
-			List<Annotation> listAnnotations = new ArrayList<Annotation>();
-			for (Annotation a : paramAnnotations) {
-				listAnnotations.add(a);
-			}
-			annotations.add(listAnnotations);
-		}
-		annotations = Collections.unmodifiableList(annotations);
-		methodParamAnnotationCache.put(method, annotations);
-		return annotations;
+		return methodParamAnnotationCache.get(method);
 	}
 
 	/**
@@ -186,9 +216,9 @@ public abstract class ReflectionUtil {
 	public static Object parseArguments(Method method, Object[] arguments, boolean useNamedParams) {
 		if (useNamedParams) {
 			Map<String, Object> namedParams = new HashMap<String, Object>();
-			Annotation[][] paramAnnotations = method.getParameterAnnotations();
-			for (int i=0; i<paramAnnotations.length; i++) {
-				Annotation[] ann = paramAnnotations[i];
+			List<List<Annotation>> paramAnnotations = getParameterAnnotations(method);
+			for (int i=0; i<paramAnnotations.size(); i++) {
+				List<Annotation> ann = paramAnnotations.get(i);
 				boolean jsonRpcParamAnnotPresent = false;
 				for (Annotation an : ann) {
 					if (JsonRpcParam.class.isInstance(an)) {
@@ -211,4 +241,76 @@ public abstract class ReflectionUtil {
 		}
 	}
 
+	/**
+	 * Returns the type of the result of the given method if it's
+	 * asynchronous, that is if it returns a {@link CompletableFuture}
+	 * or a {@link CompletionStage}.
+	 * @param method the method
+	 * @return the result type, {@link Object} if the future's type
+	 * isn't known, or null if the method isn't asynchronous
+	 */
+	public static Type getAsyncResultType(Method method) {
+		Class<?> returnType = method.getReturnType();
+		if (returnType!=CompletableFuture.class && returnType!=CompletionStage.class) {
+			return null;
+		}
+		Type genericReturnType = method.getGenericReturnType();
+		if (genericReturnType instanceof ParameterizedType) {
+			Type resultType = ParameterizedType.class.cast(genericReturnType).getActualTypeArguments()[0];
+			if (resultType instanceof WildcardType) {
+				resultType = WildcardType.class.cast(resultType).getUpperBounds()[0];
+			}
+			if (!(resultType instanceof TypeVariable)) {
+				return resultType;
+			}
+		}
+		return Object.class;
+	}
+
+	/**
+	 * A lock-free cache of values computed from {@link Method}s.
+	 * The entries for a method live in a map attached to its
+	 * declaring class, so the cache can never hold more entries
+	 * than there are methods on live classes.
+	 *
+	 * @param <V> the cached value type
+	 */
+	private static abstract class MethodCache<V> {
+
+		private final ClassValue<ConcurrentMap<Method, V>> cache
+			= new ClassValue<ConcurrentMap<Method, V>>() {
+			@Override
+			protected ConcurrentMap<Method, V> computeValue(Class<?> clazz) {
+				return new ConcurrentHashMap<Method, V>();
+			}
+		};
+
+		/**
+		 * Returns the cached value, computing it on first use.
+		 * Racing threads may compute the value more than once
+		 * but all of them return the first one stored.
+		 * @param method the {@link Method}
+		 * @return the value
+		 */
+		V get(Method method) {
+			ConcurrentMap<Method, V> values = cache.get(method.getDeclaringClass());
+			V value = values.get(method);
+			if (value==null) {
+				value = compute(method);
+				V existing = values.putIfAbsent(method, value);
+				if (existing!=null) {
+					value = existing;
+				}
+			}
+			return value;
+		}
+
+		/**
+		 * Computes the value for the given {@link Method}.
+		 * @param method the {@link Method}
+		 * @return the value
+		 */
+		protected abstract V compute(Method method);
+	}
+
 }
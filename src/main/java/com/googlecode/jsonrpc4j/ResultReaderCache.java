@@ -0,0 +1,56 @@
+package com.googlecode.jsonrpc4j;
+
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * The {@link ObjectReader}s a client binds results with, one per
+ * return type, resolved with the client's {@link ObjectMapper} so
+ * its {@link com.fasterxml.jackson.databind.type.TypeFactory} and
+ * its type modifiers are used.  Each reader resolves its type and
+ * finds its deserializer once, instead of on every call.
+ * <p>
+ * Return types usually come from the methods of a few proxied
+ * interfaces, so only the first {@link #MAX_ENTRIES} are kept,
+ * in case a caller makes up new ones on every call.
+ */
+final class ResultReaderCache {
+
+	static final int MAX_ENTRIES = 1024;
+
+	private final ObjectMapper mapper;
+	private final ConcurrentMap<Type, ObjectReader> readers
+		= new ConcurrentHashMap<Type, ObjectReader>();
+
+	/**
+	 * @param mapper the {@link ObjectMapper} the readers are made with
+	 */
+	ResultReaderCache(ObjectMapper mapper) {
+		this.mapper = mapper;
+	}
+
+	/**
+	 * Returns the reader for the given type, making it on first use.
+	 *
+	 * @param type the return type
+	 * @return the {@link ObjectReader}
+	 */
+	ObjectReader get(Type type) {
+		ObjectReader reader = readers.get(type);
+		if (reader==null) {
+			reader = mapper.readerFor(mapper.getTypeFactory().constructType(type));
+			if (readers.size()<MAX_ENTRIES) {
+				ObjectReader existing = readers.putIfAbsent(type, reader);
+				if (existing!=null) {
+					reader = existing;
+				}
+			}
+		}
+		return reader;
+	}
+
+}
@@ -1,5 +1,6 @@
 package com.googlecode.jsonrpc4j;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -8,16 +9,27 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.net.ServerSocketFactory;
 import javax.net.ssl.SSLException;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 /**
  * A multi-threaded streaming server that uses JSON-RPC
  * over sockets.
@@ -29,10 +41,14 @@ public class StreamServer {
 
 	private static final long SERVER_SOCKET_SO_TIMEOUT	= 5000;
 
-	private ThreadPoolExecutor executor;
+	private ExecutorService executor;
 	private ServerSocket serverSocket;
 	private JsonRpcServer jsonRpcServer;
+	private int maxThreads;
 	private int maxClientErrors = 5;
+	private boolean useVirtualThreads = false;
+	private Executor pipelineExecutor = null;
+	private int maxInFlightRequests = 16;
 
 	private AtomicBoolean isStarted 	= new AtomicBoolean(false);
 	private AtomicBoolean keepRunning 	= new AtomicBoolean(false);
@@ -52,12 +68,7 @@ public class StreamServer {
 		// initialize values
 		this.jsonRpcServer		= jsonRpcServer;
 		this.serverSocket		= serverSocket;
-
-		// create the executor server
-		executor = new ThreadPoolExecutor(
-			maxThreads+1, maxThreads+1, 0L, TimeUnit.MILLISECONDS,
-            new LinkedBlockingQueue<Runnable>());
-		executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+		this.maxThreads			= maxThreads;
 
 		// we can't allow the server to re-throw exceptions
 		jsonRpcServer.setRethrowExceptions(false);
@@ -102,10 +113,52 @@ public class StreamServer {
 			+":"+serverSocket.getLocalPort());
 
 		// start the server
+		executor = createExecutor();
 		keepRunning.set(true);
 		executor.submit(new Server());
 	}
 
+	/**
+	 * Creates the {@link ExecutorService} that runs the accept loop
+	 * and the connections: a thread per task executor of virtual
+	 * threads if asked for and the runtime supports them, otherwise
+	 * a pool of {@code maxThreads+1} threads.
+	 *
+	 * @return the {@link ExecutorService}
+	 */
+	private ExecutorService createExecutor() {
+		if (useVirtualThreads) {
+			ExecutorService virtualThreadExecutor = newVirtualThreadExecutor();
+			if (virtualThreadExecutor!=null) {
+				return virtualThreadExecutor;
+			}
+			LOGGER.log(Level.WARNING,
+				"Virtual threads aren't supported by this runtime, using "
+				+maxThreads+" platform threads");
+		}
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(
+			maxThreads+1, maxThreads+1, 0L, TimeUnit.MILLISECONDS,
+			new LinkedBlockingQueue<Runnable>());
+		pool.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+		return pool;
+	}
+
+	/**
+	 * Creates an {@link ExecutorService} that starts a virtual thread
+	 * for each task.  It's looked up reflectively so that the library
+	 * still runs on JDKs without virtual threads.
+	 *
+	 * @return the {@link ExecutorService} or null if unsupported
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return ExecutorService.class.cast(
+				Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null));
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
 	/**
 	 * Stops the server thread.
 	 * @throws InterruptedException if a graceful shutdown didn't happen
@@ -205,6 +258,12 @@ public class StreamServer {
 				return;
 			}
 
+			// pipeline the requests if we can
+			if (pipelineExecutor!=null) {
+				handlePipelined(clientSocket, input, output);
+				return;
+			}
+
 			// keep handling requests
 			int errors = 0;
 			while (StreamServer.this.keepRunning.get()) {
@@ -230,6 +289,112 @@ public class StreamServer {
 				output.close();
 			} catch (IOException e) { /* no-op */ }
 		}
+
+		/**
+		 * Keeps reading requests off the connection, handing each
+		 * to the {@link #setPipelineExecutor(Executor) pipeline
+		 * executor} as soon as it's been read.  Responses are written
+		 * as they complete, one at a time, and clients match them to
+		 * their requests by {@code id}.
+		 *
+		 * @param clientSocket the client {@link Socket}
+		 * @param input the socket's {@link InputStream}
+		 * @param output the socket's {@link OutputStream}
+		 */
+		private void handlePipelined(
+			final Socket clientSocket, InputStream input, final OutputStream output) {
+			ObjectMapper mapper = jsonRpcServer.getObjectMapper();
+			final int maxInFlight = maxInFlightRequests;
+			final Semaphore inFlight = new Semaphore(maxInFlight);
+			final AtomicInteger errors = new AtomicInteger();
+
+			JsonParser parser = null;
+			try {
+				parser = mapper.getFactory().createParser(new NoCloseInputStream(input));
+				while (StreamServer.this.keepRunning.get()) {
+
+					// read the next request, stopping when the client is done
+					final JsonNode request;
+					try {
+						if (parser.nextToken()==null) {
+							break;
+						}
+						request = mapper.readTree(parser);
+					} catch (JsonParseException e) {
+
+						// there's no finding the next request after garbage
+						writeResponse(output, mapper.writeValueAsBytes(jsonRpcServer.createErrorResponse(
+							"jsonrpc", "null", -32700, "Parse error", null)));
+						break;
+					}
+
+					// and handle it
+					inFlight.acquire();
+					try {
+						pipelineExecutor.execute(new Runnable() {
+							public void run() {
+								try {
+									ByteArrayOutputStream response = new ByteArrayOutputStream();
+									jsonRpcServer.handleNode(request, response);
+									if (response.size()>0) {
+										writeResponse(output, response.toByteArray());
+									}
+								} catch (Throwable t) {
+									if (errors.incrementAndGet()<maxClientErrors) {
+										LOGGER.log(Level.SEVERE, "Exception while handling request", t);
+									} else {
+										LOGGER.log(Level.SEVERE, "Closing client connection due to repeated errors", t);
+										try {
+											clientSocket.close();
+										} catch (IOException e) { /* no-op */ }
+									}
+								} finally {
+									inFlight.release();
+								}
+							}
+						});
+					} catch (RejectedExecutionException e) {
+
+						// the executor is shut down, as after stop()
+						inFlight.release();
+						LOGGER.log(Level.SEVERE, "Pipeline executor rejected request, closing client connection", e);
+						break;
+					}
+				}
+
+				// wait for the requests still in flight
+				inFlight.acquire(maxInFlight);
+
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (IOException e) {
+				if (!clientSocket.isClosed()) {
+					LOGGER.log(Level.SEVERE, "Exception while reading requests", e);
+				}
+			} finally {
+				try {
+					if (parser!=null) {
+						parser.close();
+					}
+					clientSocket.close();
+				} catch (IOException e) { /* no-op */ }
+			}
+		}
+
+		/**
+		 * Writes and flushes a complete response, one at a time.
+		 *
+		 * @param output the socket's {@link OutputStream}
+		 * @param response the response
+		 * @throws IOException on error
+		 */
+		private void writeResponse(OutputStream output, byte[] response)
+			throws IOException {
+			synchronized (output) {
+				output.write(response);
+				output.flush();
+			}
+		}
 	}
 
 	/**
@@ -246,6 +411,57 @@ public class StreamServer {
 		this.maxClientErrors = maxClientErrors;
 	}
 
+	/**
+	 * Sets whether the accept loop and each connection run on
+	 * their own virtual thread rather than on a pool of
+	 * {@code maxThreads} platform threads, so the number of
+	 * connections isn't capped.  Falls back to the pool on
+	 * runtimes without virtual threads.  Must be set before
+	 * the server is started.
+	 *
+	 * @param useVirtualThreads true or false
+	 */
+	public void setUseVirtualThreads(boolean useVirtualThreads) {
+		this.useVirtualThreads = useVirtualThreads;
+	}
+
+	/**
+	 * @return whether the server is running on virtual threads
+	 */
+	public boolean isUsingVirtualThreads() {
+		return executor!=null && !ThreadPoolExecutor.class.isInstance(executor);
+	}
+
+	/**
+	 * Sets the {@link Executor} that requests are handled on when
+	 * connections are pipelined.  Each connection then keeps reading
+	 * requests while earlier ones are still being handled and writes
+	 * their responses in the order they complete, so a slow call
+	 * doesn't hold up the ones behind it.  When null (the default)
+	 * each connection handles one request at a time on its own thread.
+	 *
+	 * @param pipelineExecutor the {@link Executor} or null
+	 */
+	public void setPipelineExecutor(Executor pipelineExecutor) {
+		this.pipelineExecutor = pipelineExecutor;
+	}
+
+	/**
+	 * Sets how many requests of a single pipelined connection are
+	 * handled at the same time.  Once reached, no more requests are
+	 * read from the connection until one completes.
+	 *
+	 * @param maxInFlightRequests the limit, at least 1
+	 * @throws IllegalArgumentException if the limit is less than 1
+	 */
+	public void setMaxInFlightRequests(int maxInFlightRequests) {
+		if (maxInFlightRequests<1) {
+			throw new IllegalArgumentException(
+				"maxInFlightRequests must be at least 1: "+maxInFlightRequests);
+		}
+		this.maxInFlightRequests = maxInFlightRequests;
+	}
+
 	/**
 	 * @return the isStarted
 	 */
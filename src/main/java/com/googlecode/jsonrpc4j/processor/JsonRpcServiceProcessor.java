@@ -0,0 +1,486 @@
+package com.googlecode.jsonrpc4j.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates, for every interface annotated with
+ * {@link com.googlecode.jsonrpc4j.JsonRpcService}, the classes that let
+ * the library call it without reflection:
+ * <ul>
+ * <li>{@code <Interface>_JsonRpcDispatcher}, a
+ * {@link com.googlecode.jsonrpc4j.JsonRpcDispatcher} that
+ * {@link com.googlecode.jsonrpc4j.JsonRpcServer} invokes the methods
+ * declared by the interface through, with a plain call each;</li>
+ * <li>{@code <Interface>_JsonRpcStub}, an implementation of the
+ * interface that {@link com.googlecode.jsonrpc4j.ProxyUtil} creates
+ * client proxies with instead of a {@link java.lang.reflect.Proxy}.</li>
+ * </ul>
+ * The classes are generated next to the interface, named after its
+ * binary name, and are found there at runtime.  The processor isn't
+ * registered as a service, so it only runs when it's asked for, for
+ * instance with {@code javac -processor} or the
+ * {@code annotationProcessors} of the maven compiler plugin.
+ * <p>
+ * Private interfaces can't be called from generated classes, and
+ * stubs can't implement generic interfaces, so neither is generated
+ * for them and they keep working through reflection.
+ */
+@SupportedAnnotationTypes(JsonRpcServiceProcessor.JSON_RPC_SERVICE)
+public class JsonRpcServiceProcessor
+	extends AbstractProcessor {
+
+	/**
+	 * Appended to the binary name of an interface to name its dispatcher.
+	 */
+	public static final String DISPATCHER_SUFFIX = "_JsonRpcDispatcher";
+
+	/**
+	 * Appended to the binary name of an interface to name its client stub.
+	 */
+	public static final String STUB_SUFFIX = "_JsonRpcStub";
+
+	static final String JSON_RPC_SERVICE = "com.googlecode.jsonrpc4j.JsonRpcService";
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		TypeElement annotation = processingEnv.getElementUtils().getTypeElement(JSON_RPC_SERVICE);
+		if (annotation==null) {
+			return false;
+		}
+		for (TypeElement type : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(annotation))) {
+			if (type.getKind()!=ElementKind.INTERFACE) {
+				continue;
+			}
+			if (!isAccessible(type)) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+					"Not generating a dispatcher or stub for private interface "+type, type);
+				continue;
+			}
+			try {
+				writeDispatcher(type);
+				if (type.getTypeParameters().isEmpty()) {
+					writeStub(type);
+				}
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"Unable to generate the classes of "+type+": "+e.getMessage(), type);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Whether classes in the interface's package can use it.
+	 */
+	private static boolean isAccessible(Element element) {
+		for (Element e=element; e!=null && e.getKind()!=ElementKind.PACKAGE; e=e.getEnclosingElement()) {
+			if (e.getModifiers().contains(Modifier.PRIVATE)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the {@link com.googlecode.jsonrpc4j.JsonRpcDispatcher}
+	 * of the methods declared by the given interface.
+	 */
+	private void writeDispatcher(TypeElement type)
+		throws IOException {
+		List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
+		for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+			if (isImplementable(method)) {
+				methods.add(method);
+			}
+		}
+
+		String className = generatedName(type, DISPATCHER_SUFFIX);
+		String typeName = processingEnv.getTypeUtils().erasure(type.asType()).toString();
+		PrintWriter out = open(type, className);
+		try {
+			writeHeader(out, type);
+			out.println("/**");
+			out.println(" * Invokes the methods of {@link "+typeName+"} without reflection.");
+			out.println(" * Generated by "+getClass().getName()+", do not edit.");
+			out.println(" */");
+			out.println("@SuppressWarnings({\"unchecked\", \"rawtypes\", \"cast\"})");
+			out.println("public final class "+simpleName(className));
+			out.println("\timplements com.googlecode.jsonrpc4j.JsonRpcDispatcher {");
+			out.println();
+			out.println("\tprivate static final String[] METHOD_KEYS = {");
+			for (ExecutableElement method : methods) {
+				out.println("\t\t\""+methodKey(method)+"\",");
+			}
+			out.println("\t};");
+			out.println();
+			out.println("\tpublic String[] getMethodKeys() {");
+			out.println("\t\treturn METHOD_KEYS.clone();");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic Object invoke(int index, Object target, Object[] arguments)");
+			out.println("\t\tthrows Throwable {");
+			out.println("\t\t"+typeName+" service = ("+typeName+")target;");
+			out.println("\t\tswitch (index) {");
+			for (int i=0; i<methods.size(); i++) {
+				ExecutableElement method = methods.get(i);
+				StringBuilder call = new StringBuilder("service.")
+					.append(method.getSimpleName()).append('(');
+				List<? extends TypeMirror> parameterTypes = ((ExecutableType)method.asType()).getParameterTypes();
+				for (int j=0; j<parameterTypes.size(); j++) {
+					if (j>0) {
+						call.append(", ");
+					}
+					call.append('(').append(castName(processingEnv.getTypeUtils().erasure(parameterTypes.get(j)))).append(")arguments[").append(j).append(']');
+				}
+				call.append(')');
+				out.println("\t\tcase "+i+":");
+				if (method.getReturnType().getKind()==TypeKind.VOID) {
+					out.println("\t\t\t"+call+";");
+					out.println("\t\t\treturn null;");
+				} else {
+					out.println("\t\t\treturn "+call+";");
+				}
+			}
+			out.println("\t\tdefault:");
+			out.println("\t\t\tthrow new IllegalArgumentException(\"No method \"+index);");
+			out.println("\t\t}");
+			out.println("\t}");
+			out.println();
+			out.println("}");
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes the client stub of the given interface, which passes
+	 * every call to an {@link java.lang.reflect.InvocationHandler}
+	 * the way a {@link java.lang.reflect.Proxy} would.
+	 */
+	private void writeStub(TypeElement type)
+		throws IOException {
+
+		// every method to implement, inherited ones included
+		Map<String, ExecutableElement> methods = new LinkedHashMap<String, ExecutableElement>();
+		for (ExecutableElement method : ElementFilter.methodsIn(
+			processingEnv.getElementUtils().getAllMembers(type))) {
+			Element owner = method.getEnclosingElement();
+			if (owner.getKind()==ElementKind.INTERFACE && isImplementable(method)
+				&& !methods.containsKey(methodKey(method))) {
+				methods.put(methodKey(method), method);
+			}
+		}
+
+		String className = generatedName(type, STUB_SUFFIX);
+		String typeName = type.getQualifiedName().toString();
+		DeclaredType declaredType = (DeclaredType)type.asType();
+		PrintWriter out = open(type, className);
+		try {
+			writeHeader(out, type);
+			out.println("/**");
+			out.println(" * Client stub of {@link "+typeName+"}, passing every call to an");
+			out.println(" * {@link java.lang.reflect.InvocationHandler} like a {@link java.lang.reflect.Proxy}.");
+			out.println(" * Generated by "+getClass().getName()+", do not edit.");
+			out.println(" */");
+			out.println("@SuppressWarnings({\"unchecked\", \"rawtypes\"})");
+			out.println("public final class "+simpleName(className));
+			out.println("\timplements "+typeName+" {");
+			out.println();
+			out.println("\tprivate static final java.lang.reflect.Method[] METHODS;");
+			out.println();
+			out.println("\tstatic {");
+			out.println("\t\ttry {");
+			out.println("\t\t\tMETHODS = new java.lang.reflect.Method[] {");
+			out.println("\t\t\t\tObject.class.getMethod(\"hashCode\"),");
+			out.println("\t\t\t\tObject.class.getMethod(\"equals\", Object.class),");
+			out.println("\t\t\t\tObject.class.getMethod(\"toString\"),");
+			for (ExecutableElement method : methods.values()) {
+				StringBuilder lookup = new StringBuilder(typeName).append(".class.getMethod(\"")
+					.append(method.getSimpleName()).append('"');
+				for (TypeMirror parameterType : ((ExecutableType)method.asType()).getParameterTypes()) {
+					lookup.append(", ").append(processingEnv.getTypeUtils().erasure(parameterType)).append(".class");
+				}
+				out.println("\t\t\t\t"+lookup+"),");
+			}
+			out.println("\t\t\t};");
+			out.println("\t\t} catch (NoSuchMethodException e) {");
+			out.println("\t\t\tthrow new NoSuchMethodError(e.getMessage());");
+			out.println("\t\t}");
+			out.println("\t}");
+			out.println();
+			out.println("\tprivate final java.lang.reflect.InvocationHandler handler;");
+			out.println();
+			out.println("\tpublic "+simpleName(className)+"(java.lang.reflect.InvocationHandler handler) {");
+			out.println("\t\tthis.handler = handler;");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic int hashCode() {");
+			out.println("\t\treturn (Integer)call(0, null);");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic boolean equals(Object other) {");
+			out.println("\t\treturn (Boolean)call(1, new Object[] {other});");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic String toString() {");
+			out.println("\t\treturn (String)call(2, null);");
+			out.println("\t}");
+
+			int index = 3;
+			for (ExecutableElement method : methods.values()) {
+				ExecutableType methodType = (ExecutableType)processingEnv.getTypeUtils()
+					.asMemberOf(declaredType, method);
+				out.println();
+				writeStubMethod(out, method, methodType, index++);
+			}
+
+			out.println();
+			out.println("\tprivate Object call(int index, Object[] arguments) {");
+			out.println("\t\ttry {");
+			out.println("\t\t\treturn handler.invoke(this, METHODS[index], arguments);");
+			out.println("\t\t} catch (RuntimeException e) {");
+			out.println("\t\t\tthrow e;");
+			out.println("\t\t} catch (Error e) {");
+			out.println("\t\t\tthrow e;");
+			out.println("\t\t} catch (Throwable e) {");
+			out.println("\t\t\tthrow new java.lang.reflect.UndeclaredThrowableException(e);");
+			out.println("\t\t}");
+			out.println("\t}");
+			out.println();
+			out.println("}");
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes one method of a stub.  Exceptions the method declares
+	 * are thrown as they are, other checked exceptions are wrapped in
+	 * an {@link java.lang.reflect.UndeclaredThrowableException}.
+	 */
+	private void writeStubMethod(PrintWriter out, ExecutableElement method, ExecutableType methodType, int index) {
+		List<? extends TypeMirror> parameterTypes = methodType.getParameterTypes();
+		TypeMirror returnType = methodType.getReturnType();
+
+		// the signature
+		StringBuilder signature = new StringBuilder("\tpublic ");
+		if (!method.getTypeParameters().isEmpty()) {
+			signature.append('<');
+			for (int i=0; i<method.getTypeParameters().size(); i++) {
+				TypeParameterElement typeParameter = method.getTypeParameters().get(i);
+				if (i>0) {
+					signature.append(", ");
+				}
+				signature.append(typeParameter.getSimpleName());
+				String separator = " extends ";
+				for (TypeMirror bound : typeParameter.getBounds()) {
+					if (!bound.toString().equals("java.lang.Object")) {
+						signature.append(separator).append(bound);
+						separator = " & ";
+					}
+				}
+			}
+			signature.append("> ");
+		}
+		signature.append(returnType).append(' ').append(method.getSimpleName()).append('(');
+		StringBuilder arguments = new StringBuilder();
+		for (int i=0; i<parameterTypes.size(); i++) {
+			if (i>0) {
+				signature.append(", ");
+				arguments.append(", ");
+			}
+			String parameterType = parameterTypes.get(i).toString();
+			if (method.isVarArgs() && i==parameterTypes.size()-1 && parameterType.endsWith("[]")) {
+				parameterType = parameterType.substring(0, parameterType.length()-2)+"...";
+			}
+			signature.append(parameterType).append(" arg").append(i);
+			arguments.append("arg").append(i);
+		}
+		signature.append(')');
+		List<? extends TypeMirror> thrownTypes = methodType.getThrownTypes();
+		for (int i=0; i<thrownTypes.size(); i++) {
+			signature.append((i==0) ? "\n\t\tthrows " : ", ").append(thrownTypes.get(i));
+		}
+		out.println(signature+" {");
+
+		// the call, rethrowing what the method declares
+		String invoke = "handler.invoke(this, METHODS["+index+"], "
+			+(parameterTypes.isEmpty() ? "null" : "new Object[] {"+arguments+"}")+")";
+		List<TypeMirror> rethrown = rethrownTypes(thrownTypes);
+		out.println("\t\ttry {");
+		if (returnType.getKind()==TypeKind.VOID) {
+			out.println("\t\t\t"+invoke+";");
+		} else {
+			out.println("\t\t\treturn ("+castName(returnType)+")"+invoke+";");
+		}
+		for (TypeMirror thrown : rethrown) {
+			out.println("\t\t} catch ("+processingEnv.getTypeUtils().erasure(thrown)+" e) {");
+			out.println("\t\t\tthrow e;");
+		}
+		if (!rethrown.isEmpty() && isThrowable(rethrown.get(rethrown.size()-1))) {
+			out.println("\t\t}");
+		} else {
+			out.println("\t\t} catch (Throwable e) {");
+			out.println("\t\t\tthrow new java.lang.reflect.UndeclaredThrowableException(e);");
+			out.println("\t\t}");
+		}
+		out.println("\t}");
+	}
+
+	/**
+	 * Returns the exceptions a stub method rethrows, unchecked ones first
+	 * and then the declared ones, without any that an earlier one catches.
+	 */
+	private List<TypeMirror> rethrownTypes(List<? extends TypeMirror> thrownTypes) {
+		List<TypeMirror> candidates = new ArrayList<TypeMirror>();
+		candidates.add(processingEnv.getElementUtils().getTypeElement("java.lang.RuntimeException").asType());
+		candidates.add(processingEnv.getElementUtils().getTypeElement("java.lang.Error").asType());
+		for (TypeMirror thrown : thrownTypes) {
+			candidates.add(processingEnv.getTypeUtils().erasure(thrown));
+		}
+
+		// a catch can't follow one of its supertypes, and
+		// subtypes of what's rethrown don't need one
+		List<TypeMirror> rethrown = new ArrayList<TypeMirror>();
+		for (TypeMirror candidate : candidates) {
+			boolean caught = false;
+			for (TypeMirror other : candidates) {
+				if (other!=candidate && processingEnv.getTypeUtils().isSubtype(candidate, other)
+					&& !processingEnv.getTypeUtils().isSameType(candidate, other)) {
+					caught = true;
+					break;
+				}
+			}
+			boolean duplicate = false;
+			for (TypeMirror other : rethrown) {
+				duplicate |= processingEnv.getTypeUtils().isSameType(candidate, other);
+			}
+			if (!caught && !duplicate) {
+				rethrown.add(candidate);
+			}
+		}
+		return rethrown;
+	}
+
+	private boolean isThrowable(TypeMirror type) {
+		return type.toString().equals("java.lang.Throwable");
+	}
+
+	/**
+	 * Whether the method is one an implementation of its interface
+	 * has (or may) implement: not static nor private.
+	 */
+	private static boolean isImplementable(ExecutableElement method) {
+		Set<Modifier> modifiers = method.getModifiers();
+		return !modifiers.contains(Modifier.STATIC) && !modifiers.contains(Modifier.PRIVATE);
+	}
+
+	/**
+	 * Returns the key of the given method, as used by
+	 * {@link com.googlecode.jsonrpc4j.JsonRpcDispatcher#getMethodKeys()}.
+	 */
+	private String methodKey(ExecutableElement method) {
+		StringBuilder key = new StringBuilder(method.getSimpleName()).append('(');
+		List<? extends TypeMirror> parameterTypes = ((ExecutableType)method.asType()).getParameterTypes();
+		for (int i=0; i<parameterTypes.size(); i++) {
+			if (i>0) {
+				key.append(',');
+			}
+			key.append(runtimeTypeName(processingEnv.getTypeUtils().erasure(parameterTypes.get(i))));
+		}
+		return key.append(')').toString();
+	}
+
+	/**
+	 * Returns what {@link Class#getTypeName()} returns for the given erased type.
+	 */
+	private String runtimeTypeName(TypeMirror type) {
+		if (type.getKind()==TypeKind.ARRAY) {
+			return runtimeTypeName(((ArrayType)type).getComponentType())+"[]";
+		} else if (type.getKind()==TypeKind.DECLARED) {
+			return processingEnv.getElementUtils()
+				.getBinaryName((TypeElement)((DeclaredType)type).asElement()).toString();
+		}
+		return type.toString();
+	}
+
+	/**
+	 * Returns the type to cast an {@link Object} to, to get a value of the given type.
+	 */
+	private String castName(TypeMirror type) {
+		if (type.getKind().isPrimitive()) {
+			return processingEnv.getTypeUtils().boxedClass((PrimitiveType)type).getQualifiedName().toString();
+		} else if (type.getKind()==TypeKind.TYPEVAR) {
+			return type.toString();
+		}
+		return processingEnv.getTypeUtils().erasure(type).toString();
+	}
+
+	/**
+	 * Returns the binary name of the given interface with the suffix,
+	 * the name of a top level class in the interface's package.
+	 */
+	private String generatedName(TypeElement type, String suffix) {
+		return processingEnv.getElementUtils().getBinaryName(type)+suffix;
+	}
+
+	private static String simpleName(String className) {
+		return className.substring(className.lastIndexOf('.')+1);
+	}
+
+	private PrintWriter open(TypeElement type, String className)
+		throws IOException {
+		JavaFileObject file = processingEnv.getFiler().createSourceFile(className, type);
+		return new PrintWriter(file.openWriter());
+	}
+
+	private void writeHeader(PrintWriter out, TypeElement type) {
+		PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+		if (!pkg.isUnnamed()) {
+			out.println("package "+pkg.getQualifiedName()+";");
+			out.println();
+		}
+	}
+
+}
@@ -26,7 +26,8 @@ import org.springframework.core.type.classreading.SimpleMetadataReaderFactory;
 import com.googlecode.jsonrpc4j.JsonRpcService;
 
 /**
- * Auto-creates proxies for service interfaces annotated with {@link JsonRpcService}.
+ * Auto-creates proxies for service interfaces annotated with {@link JsonRpcService},
+ * with {@link JsonAsyncProxyFactoryBean}s when {@link #setAsync(boolean)} is set.
  */
 public class AutoJsonRpcClientProxyCreator implements BeanFactoryPostProcessor, ApplicationContextAware {
 
@@ -38,6 +39,8 @@ public class AutoJsonRpcClientProxyCreator implements BeanFactoryPostProcessor,
   
   private URL baseUrl;
 
+  private boolean async;
+
   public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
     SimpleMetadataReaderFactory metadataReaderFactory = new SimpleMetadataReaderFactory(applicationContext);
     DefaultListableBeanFactory dlbf = (DefaultListableBeanFactory) beanFactory;
@@ -76,7 +79,7 @@ public class AutoJsonRpcClientProxyCreator implements BeanFactoryPostProcessor,
    */
   private void registerJsonProxyBean(DefaultListableBeanFactory dlbf, String className, String path, boolean useNamedParams) {
     BeanDefinitionBuilder beanDefinitionBuilder = BeanDefinitionBuilder
-    	.rootBeanDefinition(JsonProxyFactoryBean.class)
+    	.rootBeanDefinition(async ? JsonAsyncProxyFactoryBean.class : JsonProxyFactoryBean.class)
         .addPropertyValue("serviceUrl", appendBasePath(path))
         .addPropertyValue("serviceInterface", className)
         .addPropertyValue("useNamedParams", useNamedParams);
@@ -106,4 +109,12 @@ public class AutoJsonRpcClientProxyCreator implements BeanFactoryPostProcessor,
     this.scanPackage = scanPackage;
   }
 
+  /**
+   * Sets whether the proxies are backed by a {@link com.googlecode.jsonrpc4j.JsonRpcHttpAsyncClient},
+   * so methods returning a {@link java.util.concurrent.CompletableFuture} don't wait for the result.
+   */
+  public void setAsync(boolean async) {
+    this.async = async;
+  }
+
 }
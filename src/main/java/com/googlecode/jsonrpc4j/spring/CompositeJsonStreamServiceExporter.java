@@ -7,6 +7,7 @@ import javax.net.ServerSocketFactory;
 
 import org.springframework.beans.factory.DisposableBean;
 
+import com.googlecode.jsonrpc4j.NioStreamServer;
 import com.googlecode.jsonrpc4j.StreamServer;
 
 /**
@@ -30,8 +31,11 @@ public class CompositeJsonStreamServiceExporter
 	private int backlog			= DEFAULT_BACKLOG;
 	private int maxClientErrors	= DEFAULT_MAX_CLIENT_ERRORS;
 	private String hostName		= DEFAULT_HOSTNAME;
+	private boolean nonBlocking	= false;
+	private boolean virtualThreads	= false;
 
 	private StreamServer streamServer;
+	private NioStreamServer nioStreamServer;
 
 	/**
 	 * {@inheritDoc}
@@ -40,6 +44,17 @@ public class CompositeJsonStreamServiceExporter
 		throws Exception {
 
 		// export
+		// use a non-blocking server if asked to
+		if (nonBlocking || nioStreamServer!=null) {
+			if (nioStreamServer==null) {
+				nioStreamServer = new NioStreamServer(
+					getJsonRpcServer(), maxThreads, port, backlog, InetAddress.getByName(hostName));
+				nioStreamServer.setMaxClientErrors(maxClientErrors);
+			}
+			nioStreamServer.start();
+			return;
+		}
+
 		// create a stream server if needed
 		if (streamServer==null) {
 	
@@ -55,6 +70,7 @@ public class CompositeJsonStreamServiceExporter
 			// create the stream server
 			streamServer = new StreamServer(getJsonRpcServer(), maxThreads, serverSocket);
 			streamServer.setMaxClientErrors(maxClientErrors);
+			streamServer.setUseVirtualThreads(virtualThreads);
 		}
 
 		// start it
@@ -66,7 +82,11 @@ public class CompositeJsonStreamServiceExporter
 	 */
 	public void destroy()
 		throws Exception {
-		streamServer.stop();
+		if (nioStreamServer!=null) {
+			nioStreamServer.stop();
+		} else {
+			streamServer.stop();
+		}
 	}
 
 	/**
@@ -111,6 +131,38 @@ public class CompositeJsonStreamServiceExporter
 		this.streamServer = streamServer;
 	}
 
+	/**
+	 * Sets whether a {@link NioStreamServer} is used instead of a
+	 * {@link StreamServer}, so that idle connections don't each
+	 * hold a thread.  {@code maxThreads} is then the number of
+	 * threads handling requests.  The {@code serverSocketFactory}
+	 * isn't used by the {@link NioStreamServer}.
+	 *
+	 * @param nonBlocking true or false
+	 */
+	public void setNonBlocking(boolean nonBlocking) {
+		this.nonBlocking = nonBlocking;
+	}
+
+	/**
+	 * Sets whether the {@link StreamServer} runs each connection on
+	 * a virtual thread instead of a pool of {@code maxThreads}
+	 * threads.  Ignored on runtimes without virtual threads.
+	 *
+	 * @param virtualThreads true or false
+	 * @see StreamServer#setUseVirtualThreads(boolean)
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	/**
+	 * @param nioStreamServer the nioStreamServer to set
+	 */
+	public void setNioStreamServer(NioStreamServer nioStreamServer) {
+		this.nioStreamServer = nioStreamServer;
+	}
+
 	/**
 	 * @param maxClientErrors the maxClientErrors to set
 	 */
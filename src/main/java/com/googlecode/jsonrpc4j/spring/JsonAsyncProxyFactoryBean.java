@@ -0,0 +1,191 @@
+package com.googlecode.jsonrpc4j.spring;
+
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.remoting.support.UrlBasedRemoteAccessor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.googlecode.jsonrpc4j.JsonRpcHttpAsyncClient;
+import com.googlecode.jsonrpc4j.JsonRpcHttpAsyncTransport;
+import com.googlecode.jsonrpc4j.ProxyMethod;
+
+/**
+ * {@link FactoryBean} for creating a {@link UrlBasedRemoteAccessor}
+ * (aka consumer) for accessing an HTTP based JSON-RPC service through
+ * a {@link JsonRpcHttpAsyncClient}.  Methods of the service interface
+ * returning a {@link CompletableFuture} or a {@link CompletionStage}
+ * return as soon as the request is under way, other methods wait
+ * for their result.
+ *
+ */
+public class JsonAsyncProxyFactoryBean
+	extends UrlBasedRemoteAccessor
+	implements MethodInterceptor,
+	InitializingBean,
+	FactoryBean<Object>,
+	ApplicationContextAware {
+
+	private boolean						useNamedParams		= false;
+	private Object						proxyObject			= null;
+	private ObjectMapper				objectMapper		= null;
+	private JsonRpcHttpAsyncTransport	transport			= null;
+	private JsonRpcHttpAsyncClient		asyncClient			= null;
+	private ProxyMethod.Cache			proxyMethods		= null;
+	private Map<String, String>			extraHttpHeaders	= new HashMap<String, String>();
+	private ApplicationContext			applicationContext;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		super.afterPropertiesSet();
+
+		// create proxy
+		proxyObject = ProxyFactory.getProxy(getServiceInterface(), this);
+
+		// find the ObjectMapper
+		if (objectMapper == null
+			&& applicationContext != null
+			&& applicationContext.containsBean("objectMapper")) {
+			objectMapper = (ObjectMapper) applicationContext.getBean("objectMapper");
+		}
+		if (objectMapper == null && applicationContext != null) {
+			try {
+				objectMapper = (ObjectMapper)BeanFactoryUtils
+					.beanOfTypeIncludingAncestors(applicationContext, ObjectMapper.class);
+			} catch (Exception e) { /* no-op */ }
+		}
+		if (objectMapper==null) {
+			objectMapper = new ObjectMapper();
+		}
+
+		// find the transport
+		if (transport == null && applicationContext != null) {
+			try {
+				transport = (JsonRpcHttpAsyncTransport)BeanFactoryUtils
+					.beanOfTypeIncludingAncestors(applicationContext, JsonRpcHttpAsyncTransport.class);
+			} catch (Exception e) { /* no-op */ }
+		}
+		if (transport==null) {
+			transport = JsonRpcHttpAsyncTransport.getDefault();
+		}
+
+		// create JsonRpcHttpAsyncClient
+		try {
+			asyncClient = new JsonRpcHttpAsyncClient(
+				objectMapper, new URL(getServiceUrl()), new HashMap<String, String>(), transport);
+		} catch (MalformedURLException mue) {
+			throw new RuntimeException(mue);
+		}
+		proxyMethods = new ProxyMethod.Cache(objectMapper);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Object invoke(MethodInvocation invocation)
+		throws Throwable {
+
+		// handle toString()
+		Method method = invocation.getMethod();
+		if (method.getDeclaringClass() == Object.class && method.getName().equals("toString")) {
+			return proxyObject.getClass().getName() + "@" + System.identityHashCode(proxyObject);
+		}
+
+		// get arguments
+		ProxyMethod proxyMethod = proxyMethods.get(method);
+		Object arguments = proxyMethod.getArguments(
+			invocation.getArguments(), useNamedParams);
+
+		// asynchronous methods get the future
+		if (proxyMethod.getAsyncResultType() != null) {
+			return asyncClient.invokeAsync(
+				proxyMethod.getName(), arguments, proxyMethod.getAsyncResultType(), extraHttpHeaders);
+		}
+
+		// others wait for the result
+		try {
+			return asyncClient.invokeAsync(
+				proxyMethod.getName(), arguments, proxyMethod.getReturnType(), extraHttpHeaders).get();
+		} catch (ExecutionException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Object getObject()
+		throws Exception {
+		return proxyObject;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Class<?> getObjectType() {
+		return getServiceInterface();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean isSingleton() {
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void setApplicationContext(ApplicationContext applicationContext) {
+		this.applicationContext = applicationContext;
+	}
+
+	/**
+	 * @param objectMapper the objectMapper to set
+	 */
+	public void setObjectMapper(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * Sets the transport the calls are made with, by default the
+	 * one {@link JsonRpcHttpAsyncTransport} in the application context
+	 * or {@link JsonRpcHttpAsyncTransport#getDefault()}.
+	 * @param transport the {@link JsonRpcHttpAsyncTransport}
+	 */
+	public void setTransport(JsonRpcHttpAsyncTransport transport) {
+		this.transport = transport;
+	}
+
+	/**
+	 * @param extraHttpHeaders the extraHttpHeaders to set
+	 */
+	public void setExtraHttpHeaders(Map<String, String> extraHttpHeaders) {
+		this.extraHttpHeaders = extraHttpHeaders;
+	}
+
+	/**
+	 * @param useNamedParams the useNamedParams to set
+	 */
+	public void setUseNamedParams(boolean useNamedParams) {
+		this.useNamedParams = useNamedParams;
+	}
+
+}
@@ -1,7 +1,6 @@
 package com.googlecode.jsonrpc4j.spring;
 
 import java.lang.reflect.Method;
-import java.lang.reflect.Type;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashMap;
@@ -18,9 +17,11 @@ import org.springframework.context.ApplicationContextAware;
 import org.springframework.remoting.support.UrlBasedRemoteAccessor;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.googlecode.jsonrpc4j.JsonRpcBatchingHttpClient;
 import com.googlecode.jsonrpc4j.JsonRpcHttpClient;
+import com.googlecode.jsonrpc4j.JsonRpcResultCache;
 import com.googlecode.jsonrpc4j.JsonRpcClient.RequestListener;
-import com.googlecode.jsonrpc4j.ReflectionUtil;
+import com.googlecode.jsonrpc4j.ProxyMethod;
 
 /**
  * {@link FactoryBean} for creating a {@link UrlBasedRemoteAccessor}
@@ -39,8 +40,12 @@ public class JsonProxyFactoryBean
 	private RequestListener		requestListener		= null;
 	private ObjectMapper		objectMapper		= null;
 	private JsonRpcHttpClient	jsonRpcHttpClient	= null;
+	private ProxyMethod.Cache	proxyMethods		= null;
 	private Map<String, String>	extraHttpHeaders	= new HashMap<String, String>();
 	private ApplicationContext	applicationContext;
+	private boolean				batchRequests		= false;
+	private int					maxBatchSize		= 100;
+	private long				maxBatchDelayMillis	= 5;
 
 	/**
 	 * {@inheritDoc}
@@ -71,8 +76,17 @@ public class JsonProxyFactoryBean
 
 		// create JsonRpcHttpClient
 		try {
-			jsonRpcHttpClient = new JsonRpcHttpClient(objectMapper, new URL(getServiceUrl()), extraHttpHeaders);
+			if (batchRequests) {
+				JsonRpcBatchingHttpClient batchingClient = new JsonRpcBatchingHttpClient(
+					objectMapper, new URL(getServiceUrl()), extraHttpHeaders);
+				batchingClient.setMaxBatchSize(maxBatchSize);
+				batchingClient.setMaxBatchDelayMillis(maxBatchDelayMillis);
+				jsonRpcHttpClient = batchingClient;
+			} else {
+				jsonRpcHttpClient = new JsonRpcHttpClient(objectMapper, new URL(getServiceUrl()), extraHttpHeaders);
+			}
 			jsonRpcHttpClient.setRequestListener(requestListener);
+			proxyMethods = new ProxyMethod.Cache(objectMapper);
 		} catch (MalformedURLException mue) {
 			throw new RuntimeException(mue);
 		}
@@ -89,21 +103,26 @@ public class JsonProxyFactoryBean
 		if (method.getDeclaringClass() == Object.class && method.getName().equals("toString")) {
 			return proxyObject.getClass().getName() + "@" + System.identityHashCode(proxyObject);
 		}
-
-		// get return type
-		Type retType = (invocation.getMethod().getGenericReturnType() != null)
-			? invocation.getMethod().getGenericReturnType()
-			: invocation.getMethod().getReturnType();
+		final ProxyMethod proxyMethod = proxyMethods.get(method);
 
 		// get arguments
-		Object arguments = ReflectionUtil.parseArguments(
-			invocation.getMethod(), invocation.getArguments(), useNamedParams);
-
-		// invoke it
-		return jsonRpcHttpClient.invoke(
-			invocation.getMethod().getName(),
-			arguments,
-			retType, extraHttpHeaders);
+		final Object arguments = proxyMethod.getArguments(
+			invocation.getArguments(), useNamedParams);
+
+		// invoke it, or take the result from the cache
+		if (!proxyMethod.isCacheable()) {
+			return jsonRpcHttpClient.invoke(
+				proxyMethod.getName(), arguments, proxyMethod.getReturnType(), extraHttpHeaders);
+		}
+		return jsonRpcHttpClient.getResultCache().get(
+			jsonRpcHttpClient.getResultCacheScope(extraHttpHeaders),
+			method, invocation.getArguments(), new JsonRpcResultCache.RemoteCall() {
+				public Object call()
+					throws Throwable {
+					return jsonRpcHttpClient.invoke(
+						proxyMethod.getName(), arguments, proxyMethod.getReturnType(), extraHttpHeaders);
+				}
+			});
 	}
 
 	/**
@@ -163,4 +182,28 @@ public class JsonProxyFactoryBean
 		this.useNamedParams = useNamedParams;
 	}
 
+	/**
+	 * Sets whether or not concurrent calls are coalesced
+	 * into batch requests, see {@link JsonRpcBatchingHttpClient}.
+	 * @param batchRequests true or false
+	 */
+	public void setBatchRequests(boolean batchRequests) {
+		this.batchRequests = batchRequests;
+	}
+
+	/**
+	 * @param maxBatchSize the largest number of calls sent in one batch
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * @param maxBatchDelayMillis how long the first call of a batch
+	 * waits for others to join it
+	 */
+	public void setMaxBatchDelayMillis(long maxBatchDelayMillis) {
+		this.maxBatchDelayMillis = maxBatchDelayMillis;
+	}
+
 }
@@ -2,11 +2,19 @@ package com.googlecode.jsonrpc4j;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.After;
@@ -14,7 +22,10 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 public class JsonRpcClientTest {
 
@@ -78,4 +89,132 @@ public class JsonRpcClientTest {
 		assertEquals(1, node.get("params").get("x").intValue());
 	}
 
+	@Test
+	public void testStreamingRequests()
+		throws Throwable {
+		Map<String, Object> map = new HashMap<String, Object>();
+		map.put("hello", "Guvna");
+		map.put("x", 1);
+		Object[] arguments = new Object[] {
+			null, new Object[0], new Object[] { 1, "two", null, map },
+			Arrays.asList(3, "four"), new ArrayList<Object>(), map,
+			new HashMap<String, Object>(), "plain"
+		};
+
+		// streamed requests are the same as those built
+		// as a tree for a listener
+		JsonRpcClient treeClient = new JsonRpcClient();
+		treeClient.setRequestListener(new JsonRpcClient.RequestListener() {
+			public void onBeforeRequestSent(JsonRpcClient client, ObjectNode request) {
+			}
+			public void onBeforeResponseProcessed(JsonRpcClient client, ObjectNode response) {
+			}
+		});
+		for (Object argument : arguments) {
+			ByteArrayOutputStream tree = new ByteArrayOutputStream();
+			treeClient.writeRequest("test", argument, tree, "1");
+			ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+			client.writeRequest("test", argument, streamed, "1");
+			assertEquals(tree.toString("UTF-8"), streamed.toString("UTF-8"));
+		}
+		ByteArrayOutputStream tree = new ByteArrayOutputStream();
+		treeClient.writeNotification("test", arguments[2], tree);
+		ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+		client.writeNotification("test", arguments[2], streamed);
+		assertEquals(tree.toString("UTF-8"), streamed.toString("UTF-8"));
+
+		// and leave the stream open
+		final boolean[] closed = new boolean[1];
+		client.invoke("test", arguments[2], new ByteArrayOutputStream() {
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		});
+		assertFalse(closed[0]);
+	}
+
+	@Test
+	public void testStreamingResponses()
+		throws Throwable {
+		Type listOfIntegers = new TypeReference<List<Integer>>() {}.getType();
+		String[] responses = new String[] {
+			"{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"result\":[1,2,3]}",
+			"{\"result\":[1,2,3],\"jsonrpc\":\"2.0\",\"id\":\"1\"}",
+			"{\"result\":[1,2,3]}"
+		};
+
+		// streamed responses read the same as those read as a tree,
+		// wherever the result is
+		final List<ObjectNode> seen = new ArrayList<ObjectNode>();
+		JsonRpcClient treeClient = new JsonRpcClient();
+		treeClient.setRequestListener(new JsonRpcClient.RequestListener() {
+			public void onBeforeRequestSent(JsonRpcClient client, ObjectNode request) {
+			}
+			public void onBeforeResponseProcessed(JsonRpcClient client, ObjectNode response) {
+				seen.add(response);
+			}
+		});
+		for (String response : responses) {
+			assertEquals(Arrays.asList(1, 2, 3), client.readResponse(listOfIntegers, stream(response)));
+			assertEquals(Arrays.asList(1, 2, 3), treeClient.readResponse(listOfIntegers, stream(response)));
+		}
+		assertEquals(responses.length, seen.size());
+		assertNull(client.readResponse(String.class,
+			stream("{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"result\":null}")));
+		assertNull(client.readResponse((Type)null,
+			stream("{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"result\":{\"a\":[1]}}")));
+	}
+
+	@Test
+	public void testStreamingErrorResponses()
+		throws Throwable {
+
+		// the error wins over a result, before or after it
+		String[] responses = new String[] {
+			"{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"error\":{\"code\":-32601,\"message\":\"oops\"}}",
+			"{\"result\":\"x\",\"error\":{\"code\":-32601,\"message\":\"oops\"},\"id\":\"1\"}",
+			"{\"error\":{\"code\":-32601,\"message\":\"oops\"},\"result\":\"x\"}"
+		};
+		for (String response : responses) {
+			try {
+				client.readResponse(String.class, stream(response));
+				fail("Expected a JsonRpcClientException");
+			} catch (JsonRpcClientException e) {
+				assertEquals(-32601, e.getCode());
+				assertEquals("oops", e.getMessage());
+			}
+		}
+
+		// as does an invalid response
+		try {
+			client.readResponse(String.class, stream("[1]"));
+			fail("Expected a JsonRpcClientException");
+		} catch (JsonRpcClientException e) {
+			assertEquals(0, e.getCode());
+		}
+	}
+
+	@Test
+	public void testResultTypeModifier()
+		throws Throwable {
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.setTypeFactory(mapper.getTypeFactory().withModifier(new JsonRpcServerTest.LongModifier()));
+		JsonRpcClient modifiedClient = new JsonRpcClient(mapper);
+		Type listOfIntegers = new TypeReference<List<Integer>>() {}.getType();
+
+		// results are bound with the mapper's type factory, every time
+		for (int i=0; i<2; i++) {
+			assertEquals(1L, modifiedClient.readResponse((Type)Integer.class,
+				stream("{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"result\":1}")));
+			assertEquals(Arrays.asList(1L, 2L), modifiedClient.readResponse(listOfIntegers,
+				stream("{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"result\":[1,2]}")));
+		}
+	}
+
+	private static InputStream stream(String json)
+		throws IOException {
+		return new ByteArrayInputStream(json.getBytes("UTF-8"));
+	}
+
 }
@@ -0,0 +1,356 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.http.nio.reactor.IOReactorStatus;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class JsonRpcHttpAsyncClientTest {
+
+	private static final Type LIST_OF_INTEGERS = new TypeReference<List<Integer>>() {}.getType();
+
+	private HttpServer httpServer;
+	private ExecutorService serverExecutor;
+	private URL serviceUrl;
+	private JsonRpcHttpAsyncTransport transport;
+	private JsonRpcHttpAsyncClient client;
+	private CountDownLatch slowCalled;
+	private CountDownLatch slowReleased;
+
+	@Before
+	public void setUp()
+		throws Exception {
+		slowCalled = new CountDownLatch(1);
+		slowReleased = new CountDownLatch(1);
+		final JsonRpcServer jsonRpcServer = new JsonRpcServer(new ServiceImpl(), Service.class);
+		serverExecutor = Executors.newFixedThreadPool(8);
+		httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 0);
+		httpServer.setExecutor(serverExecutor);
+		httpServer.createContext("/service", new HttpHandler() {
+			public void handle(HttpExchange exchange)
+				throws IOException {
+				exchange.getResponseHeaders().set("Content-Type", JsonRpcServer.JSONRPC_RESPONSE_CONTENT_TYPE);
+				exchange.sendResponseHeaders(200, 0);
+				OutputStream ops = exchange.getResponseBody();
+				try {
+					jsonRpcServer.handle(exchange.getRequestBody(), ops);
+					ops.close();
+				} catch (IOException e) {
+					// the client went away
+				}
+			}
+		});
+		httpServer.start();
+		serviceUrl = new URL("http://127.0.0.1:"+httpServer.getAddress().getPort()+"/service");
+
+		// a single connection per route, so calls that aren't
+		// aborted hold up the ones after them
+		transport = JsonRpcHttpAsyncTransport.builder()
+			.reactorThreads(2)
+			.maxConnectionsPerRoute(1)
+			.build();
+		client = new JsonRpcHttpAsyncClient(
+			new ObjectMapper(), serviceUrl, new HashMap<String, String>(), transport);
+	}
+
+	@After
+	public void tearDown()
+		throws IOException {
+		slowReleased.countDown();
+		transport.close();
+		httpServer.stop(0);
+		serverExecutor.shutdown();
+	}
+
+	@Test
+	public void testInvokeAsync()
+		throws Exception {
+		assertEquals("hello dude", client.invokeAsync("hello", new Object[] {"dude"}, String.class)
+			.get(5, TimeUnit.SECONDS));
+		CompletableFuture<List<Integer>> range = client.invokeAsync(
+			"range", new Object[] {3}, LIST_OF_INTEGERS);
+		assertEquals(Arrays.asList(0, 1, 2), range.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testLargeBodies()
+		throws Exception {
+
+		// multi-byte characters that straddle the pages of the request
+		StringBuilder value = new StringBuilder();
+		for (int i=0; i<200000; i++) {
+			value.append("x\u00e9\u20ac");
+		}
+		assertEquals("hello "+value, client.invokeAsync("hello", new Object[] {value.toString()}, String.class)
+			.get(10, TimeUnit.SECONDS));
+		List<Integer> range = client.<List<Integer>>invokeAsync("range", new Object[] {100000}, LIST_OF_INTEGERS)
+			.get(10, TimeUnit.SECONDS);
+		assertEquals(100000, range.size());
+		assertEquals(99999, range.get(99999).intValue());
+	}
+
+	@Test
+	public void testResultTypeModifier()
+		throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.setTypeFactory(mapper.getTypeFactory().withModifier(new JsonRpcServerTest.LongModifier()));
+		JsonRpcHttpAsyncClient modifiedClient = new JsonRpcHttpAsyncClient(
+			mapper, serviceUrl, new HashMap<String, String>(), transport);
+		assertEquals(5L, modifiedClient.invokeAsync("length", new Object[] {"hello"}, (Type)Integer.class)
+			.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testComposition()
+		throws Exception {
+		List<CompletableFuture<String>> calls = new ArrayList<CompletableFuture<String>>();
+		for (int i=0; i<50; i++) {
+			calls.add(client.invokeAsync("hello", new Object[] {""+i}, String.class));
+		}
+		CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+		for (int i=0; i<calls.size(); i++) {
+			assertEquals("hello "+i, calls.get(i).join());
+		}
+	}
+
+	@Test
+	public void testCancelReleasesConnection()
+		throws Exception {
+		CompletableFuture<String> slow = client.invokeAsync("slow", new Object[0], String.class);
+		assertTrue(slowCalled.await(5, TimeUnit.SECONDS));
+		assertTrue(slow.cancel(true));
+		assertTrue(slow.isCancelled());
+
+		// the next call gets the connection
+		assertEquals("hello again", client.invokeAsync("hello", new Object[] {"again"}, String.class)
+			.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testDeadline()
+		throws Exception {
+		CompletableFuture<String> slow = client.invokeAsync(
+			"slow", new Object[0], String.class, new HashMap<String, String>(),
+			200, TimeUnit.MILLISECONDS);
+		try {
+			slow.get(5, TimeUnit.SECONDS);
+			fail("Expected an ExecutionException");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		assertEquals("hello again", client.invokeAsync("hello", new Object[] {"again"}, String.class)
+			.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testFutureTimeout()
+		throws Exception {
+		Future<String> slow = client.invoke("slow", new Object[0], String.class);
+		try {
+			slow.get(100, TimeUnit.MILLISECONDS);
+			fail("Expected a TimeoutException");
+		} catch (TimeoutException e) {
+			// still running
+		}
+		assertTrue(slow.cancel(true));
+		assertEquals("hello again", client.invoke("hello", new Object[] {"again"}, String.class)
+			.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testProxy()
+		throws Exception {
+		AsyncService service = ProxyUtil.createClientProxy(
+			getClass().getClassLoader(), AsyncService.class, client);
+		List<CompletableFuture<String>> calls = new ArrayList<CompletableFuture<String>>();
+		for (int i=0; i<20; i++) {
+			calls.add(service.hello(""+i));
+		}
+		for (int i=0; i<calls.size(); i++) {
+			assertEquals("hello "+i, calls.get(i).get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(Arrays.asList(0, 1), service.range(2).toCompletableFuture()
+			.get(5, TimeUnit.SECONDS));
+
+		// methods that don't return a future wait for the result
+		Service blocking = ProxyUtil.createClientProxy(
+			getClass().getClassLoader(), Service.class, client);
+		assertEquals("hello blocking", blocking.hello("blocking"));
+	}
+
+	@Test
+	public void testCallback()
+		throws Exception {
+		final CountDownLatch done = new CountDownLatch(1);
+		final String[] result = new String[1];
+		client.invoke("hello", new Object[] {"callback"}, String.class, new JsonRpcCallback<String>() {
+			public void onComplete(String value) {
+				result[0] = value;
+				done.countDown();
+			}
+			public void onError(Throwable t) {
+				done.countDown();
+			}
+		});
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals("hello callback", result[0]);
+	}
+
+	@Test
+	public void testTransportMetrics()
+		throws Exception {
+		for (int i=0; i<10; i++) {
+			client.invokeAsync("hello", new Object[] {""+i}, String.class).get(5, TimeUnit.SECONDS);
+		}
+		CompletableFuture<String> slow = client.invokeAsync("slow", new Object[0], String.class);
+		assertTrue(slowCalled.await(5, TimeUnit.SECONDS));
+		assertEquals(1, transport.getInFlightCount());
+		assertEquals(1, transport.getPoolStats(serviceUrl).getLeased());
+		assertEquals(1, transport.getPoolStats(serviceUrl).getMax());
+		slow.cancel(true);
+
+		assertEquals(11, transport.getRequestCount());
+		assertEquals(1, transport.getCancellationCount());
+		assertEquals(0, transport.getFailureCount());
+		assertEquals(0, transport.getInFlightCount());
+		assertEquals(2, transport.getReactorThreadCount());
+		assertEquals(IOReactorStatus.ACTIVE, transport.getReactorStatus());
+	}
+
+	@Test
+	public void testSeparateTransports()
+		throws Exception {
+		JsonRpcHttpAsyncTransport other = JsonRpcHttpAsyncTransport.builder()
+			.maxConnectionsPerRoute(serviceUrl, 4)
+			.build();
+		try {
+			JsonRpcHttpAsyncClient otherClient = new JsonRpcHttpAsyncClient(
+				new ObjectMapper(), serviceUrl, new HashMap<String, String>(), other);
+
+			// the slow call holds up this client's only connection, not the other's
+			client.invokeAsync("slow", new Object[0], String.class);
+			assertTrue(slowCalled.await(5, TimeUnit.SECONDS));
+			assertEquals("hello other", otherClient.invokeAsync("hello", new Object[] {"other"}, String.class)
+				.get(5, TimeUnit.SECONDS));
+			assertEquals(4, other.getPoolStats(serviceUrl).getMax());
+		} finally {
+			other.close();
+		}
+		assertTrue(other.isClosed());
+		assertFalse(transport.isClosed());
+	}
+
+	@Test
+	public void testClose()
+		throws Exception {
+		CompletableFuture<String> slow = client.invokeAsync("slow", new Object[0], String.class);
+		assertTrue(slowCalled.await(5, TimeUnit.SECONDS));
+		transport.close();
+		try {
+			slow.get(5, TimeUnit.SECONDS);
+			fail("Expected the call to fail");
+		} catch (ExecutionException e) {
+			// the connection was closed
+		}
+		assertTrue(client.invokeAsync("hello", new Object[] {"closed"}, String.class).isCompletedExceptionally());
+	}
+
+	@Test
+	public void testSlowCallbackDoesNotStallOthers()
+		throws Exception {
+		final CountDownLatch inCallback = new CountDownLatch(1);
+		final CountDownLatch callbackReleased = new CountDownLatch(1);
+		client.invoke("hello", new Object[] {"slow"}, String.class, new JsonRpcCallback<String>() {
+			public void onComplete(String value) {
+				inCallback.countDown();
+				try {
+					callbackReleased.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			public void onError(Throwable t) {
+				inCallback.countDown();
+			}
+		});
+		assertTrue(inCallback.await(5, TimeUnit.SECONDS));
+		try {
+			assertEquals("hello fast", client.invokeAsync("hello", new Object[] {"fast"}, String.class)
+				.get(5, TimeUnit.SECONDS));
+		} finally {
+			callbackReleased.countDown();
+		}
+
+		// the reactor never waited for the callback
+		assertTrue(transport.getReactorEventCount()>0);
+		assertTrue(transport.getMaxReactorEventNanos()<TimeUnit.SECONDS.toNanos(1));
+		assertTrue(transport.getReactorOccupancy()<1);
+	}
+
+	public interface Service {
+		String hello(String whatever);
+		List<Integer> range(int n);
+		int length(String value);
+		String slow();
+	}
+
+	public interface AsyncService {
+		CompletableFuture<String> hello(String whatever);
+		CompletionStage<List<Integer>> range(int n);
+	}
+
+	private class ServiceImpl implements Service {
+		public String hello(String whatever) {
+			return "hello "+whatever;
+		}
+		public List<Integer> range(int n) {
+			List<Integer> range = new ArrayList<Integer>();
+			for (int i=0; i<n; i++) {
+				range.add(i);
+			}
+			return range;
+		}
+		public int length(String value) {
+			return value.length();
+		}
+		public String slow() {
+			slowCalled.countDown();
+			try {
+				slowReleased.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return "slow";
+		}
+	}
+
+}
@@ -0,0 +1,430 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class JsonRpcHttpClientTest {
+
+	private HttpServer httpServer;
+	private ExecutorService serverExecutor;
+	private URL serviceUrl;
+	private URL missingUrl;
+	private volatile String transferEncoding;
+	private final AtomicInteger posts = new AtomicInteger();
+	private final ThreadLocal<String> user = new ThreadLocal<String>();
+
+	@Before
+	public void setUp()
+		throws Exception {
+		final JsonRpcServer jsonRpcServer = new JsonRpcServer(new ServiceImpl(), Service.class);
+		serverExecutor = Executors.newFixedThreadPool(8);
+		httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 0);
+		httpServer.setExecutor(serverExecutor);
+		httpServer.createContext("/service", new HttpHandler() {
+			public void handle(HttpExchange exchange)
+				throws IOException {
+				if (!exchange.getRequestMethod().equals("POST")) {
+					exchange.sendResponseHeaders(405, -1);
+					exchange.close();
+					return;
+				}
+				posts.incrementAndGet();
+				transferEncoding = exchange.getRequestHeaders().getFirst("Transfer-Encoding");
+				exchange.getResponseHeaders().set("Content-Type", JsonRpcServer.JSONRPC_RESPONSE_CONTENT_TYPE);
+				exchange.sendResponseHeaders(200, 0);
+				OutputStream ops = exchange.getResponseBody();
+				user.set(exchange.getRequestHeaders().getFirst("X-User"));
+				try {
+					jsonRpcServer.handle(exchange.getRequestBody(), ops);
+				} finally {
+					user.remove();
+				}
+				ops.close();
+			}
+		});
+		httpServer.start();
+		String base = "http://127.0.0.1:"+httpServer.getAddress().getPort();
+		serviceUrl = new URL(base+"/service");
+		missingUrl = new URL(base+"/missing");
+	}
+
+	@After
+	public void tearDown() {
+		httpServer.stop(0);
+		serverExecutor.shutdown();
+	}
+
+	@Test
+	public void testDefaultTransport()
+		throws Throwable {
+		JsonRpcHttpClient client = new JsonRpcHttpClient(serviceUrl);
+		assertEquals("hello dude", client.invoke("hello", new Object[] {"dude"}, String.class));
+	}
+
+	@Test
+	public void testJavaHttpClientTransport()
+		throws Throwable {
+		JavaHttpClientTransport transport = new JavaHttpClientTransport();
+		transport.preconnect(serviceUrl, 2);
+		JsonRpcHttpClient client = new JsonRpcHttpClient(serviceUrl);
+		client.setTransport(transport);
+		Service service = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class, client);
+		for (int i=0; i<10; i++) {
+			assertEquals("hello "+i, service.hello(""+i));
+		}
+		assertEquals(10, transport.getRequestCount());
+		assertEquals(0, transport.getFailureCount());
+		assertEquals(0, transport.getInFlightCount());
+	}
+
+	@Test
+	public void testConcurrentCalls()
+		throws Throwable {
+		JavaHttpClientTransport transport = new JavaHttpClientTransport();
+		JsonRpcHttpClient client = new JsonRpcHttpClient(serviceUrl);
+		client.setTransport(transport);
+		final Service service = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class, client);
+
+		ExecutorService callers = Executors.newFixedThreadPool(8);
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		for (int i=0; i<200; i++) {
+			final String name = "caller "+i;
+			results.add(callers.submit(new Callable<String>() {
+				public String call() {
+					return service.hello(name);
+				}
+			}));
+		}
+		for (int i=0; i<results.size(); i++) {
+			assertEquals("hello caller "+i, results.get(i).get());
+		}
+		callers.shutdown();
+		assertEquals(200, transport.getRequestCount());
+		assertTrue(transport.getMaxInFlightCount()>=1);
+	}
+
+	@Test
+	public void testStreamingRequests()
+		throws Throwable {
+		JsonRpcHttpClient client = new JsonRpcHttpClient(serviceUrl);
+		client.setStreamingRequests(true);
+		client.setChunkLength(8 * 1024);
+		char[] value = new char[4 * 1024 * 1024];
+		Arrays.fill(value, 'x');
+		assertEquals(value.length, client.invoke("length", new Object[] {new String(value)}, int.class).intValue());
+		assertEquals("chunked", transferEncoding);
+	}
+
+	@Test
+	public void testJavaHttpClientTransportStreamingRequests()
+		throws Throwable {
+		JavaHttpClientTransport transport = new JavaHttpClientTransport();
+		transport.setChunkLength(8 * 1024);
+		JsonRpcHttpClient client = new JsonRpcHttpClient(serviceUrl);
+		client.setTransport(transport);
+
+		// requests that fit in a chunk have a length
+		assertEquals(5, client.invoke("length", new Object[] {"small"}, int.class).intValue());
+		assertNull(transferEncoding);
+
+		// larger ones are streamed
+		char[] value = new char[4 * 1024 * 1024];
+		Arrays.fill(value, 'x');
+		assertEquals(value.length, client.invoke("length", new Object[] {new String(value)}, int.class).intValue());
+		assertEquals("chunked", transferEncoding);
+		assertEquals(0, transport.getFailureCount());
+		assertEquals(0, transport.getInFlightCount());
+	}
+
+	@Test
+	public void testJavaHttpClientTransportAbortedRequest()
+		throws Throwable {
+		JavaHttpClientTransport transport = new JavaHttpClientTransport();
+		transport.setChunkLength(1024);
+
+		// a body that fails after it has started streaming fails the call
+		try {
+			transport.post(serviceUrl, new HashMap<String, String>(), new JsonRpcHttpTransport.RequestBody() {
+				public void writeTo(OutputStream ops)
+					throws IOException {
+					ops.write("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"length\",\"params\":[\"".getBytes("UTF-8"));
+					ops.write(new byte[16 * 1024]);
+					throw new IOException("Unable to write the request");
+				}
+			});
+			fail("Expected an IOException");
+		} catch (IOException e) {
+			assertEquals("Unable to write the request", e.getMessage());
+		}
+		assertEquals(1, transport.getFailureCount());
+		assertEquals(0, transport.getInFlightCount());
+	}
+
+	@Test
+	public void testBatching()
+		throws Throwable {
+		JsonRpcBatchingHttpClient client = new JsonRpcBatchingHttpClient(serviceUrl);
+		client.setMaxBatchSize(20);
+		client.setMaxBatchDelayMillis(200);
+		final Service service = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class, client);
+
+		// concurrent calls go out together, at most 20 at a time
+		ExecutorService callers = Executors.newFixedThreadPool(50);
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		for (int i=0; i<50; i++) {
+			final String name = "caller "+i;
+			results.add(callers.submit(new Callable<String>() {
+				public String call() {
+					return service.hello(name);
+				}
+			}));
+		}
+		for (int i=0; i<results.size(); i++) {
+			assertEquals("hello caller "+i, results.get(i).get());
+		}
+		callers.shutdown();
+		assertEquals(posts.get(), client.getBatchCount());
+		assertTrue(client.getBatchCount()>=3);
+		assertTrue(client.getBatchCount()<50);
+	}
+
+	@Test
+	public void testBatchingErrors()
+		throws Throwable {
+		JsonRpcBatchingHttpClient client = new JsonRpcBatchingHttpClient(serviceUrl);
+		client.setMaxBatchSize(2);
+		client.setMaxBatchDelayMillis(1000);
+		final Service service = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class, client);
+
+		// an error only fails its own call
+		ExecutorService callers = Executors.newSingleThreadExecutor();
+		Future<String> hello = callers.submit(new Callable<String>() {
+			public String call() {
+				return service.hello("dude");
+			}
+		});
+		try {
+			service.length(null);
+			fail("Expected an exception");
+		} catch (Throwable t) {
+			// a NullPointerException on the server
+		}
+		assertEquals("hello dude", hello.get());
+		assertEquals(1, client.getBatchCount());
+		callers.shutdown();
+	}
+
+	@Test
+	public void testBatchingInvalidRequest()
+		throws Throwable {
+
+		// a client that sends its length calls without a method
+		JsonRpcBatchingHttpClient client = new JsonRpcBatchingHttpClient(serviceUrl) {
+			@Override
+			public void writeRequest(String methodName, Object argument, OutputStream ops, String id)
+				throws IOException {
+				if (methodName.equals("length")) {
+					ops.write(("{\"jsonrpc\":\"2.0\",\"id\":\""+id+"\"}").getBytes("UTF-8"));
+					return;
+				}
+				super.writeRequest(methodName, argument, ops, id);
+			}
+		};
+		client.setMaxBatchSize(2);
+		client.setMaxBatchDelayMillis(1000);
+		final Service service = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class, client);
+
+		// the invalid call gets the server's error, which has no id
+		ExecutorService callers = Executors.newSingleThreadExecutor();
+		Future<String> hello = callers.submit(new Callable<String>() {
+			public String call() {
+				return service.hello("dude");
+			}
+		});
+		try {
+			service.length("dude");
+			fail("Expected a JsonRpcClientException");
+		} catch (JsonRpcClientException e) {
+			assertEquals(-32600, e.getCode());
+		}
+		assertEquals("hello dude", hello.get());
+		assertEquals(1, client.getBatchCount());
+		callers.shutdown();
+	}
+
+	@Test
+	public void testBatchingUnansweredCalls()
+		throws Throwable {
+
+		// a client that sends length calls without a method and
+		// "silent" hellos as notifications
+		JsonRpcBatchingHttpClient client = new JsonRpcBatchingHttpClient(serviceUrl) {
+			@Override
+			public void writeRequest(String methodName, Object argument, OutputStream ops, String id)
+				throws IOException {
+				if (methodName.equals("length")) {
+					ops.write(("{\"jsonrpc\":\"2.0\",\"id\":\""+id+"\"}").getBytes("UTF-8"));
+					return;
+				}
+				if (Arrays.asList((Object[])argument).contains("silent")) {
+					id = null;
+				}
+				super.writeRequest(methodName, argument, ops, id);
+			}
+		};
+		client.setMaxBatchSize(3);
+		client.setMaxBatchDelayMillis(1000);
+		final Service service = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class, client);
+
+		// two calls get no response and there's a single error without
+		// an id, so neither can be given it and both fail with it
+		ExecutorService callers = Executors.newFixedThreadPool(2);
+		Future<String> hello = callers.submit(new Callable<String>() {
+			public String call() {
+				return service.hello("dude");
+			}
+		});
+		Future<String> silent = callers.submit(new Callable<String>() {
+			public String call() {
+				return service.hello("silent");
+			}
+		});
+		try {
+			service.length("dude");
+			fail("Expected a JsonRpcClientException");
+		} catch (JsonRpcClientException e) {
+			assertEquals(0, e.getCode());
+			assertEquals(1, e.getData().size());
+			assertEquals(-32600, e.getData().get(0).get("error").get("code").intValue());
+		}
+		try {
+			silent.get();
+			fail("Expected a JsonRpcClientException");
+		} catch (ExecutionException e) {
+			JsonRpcClientException cause = (JsonRpcClientException)e.getCause();
+			assertEquals(0, cause.getCode());
+			assertEquals(1, cause.getData().size());
+		}
+		assertEquals("hello dude", hello.get());
+		assertEquals(1, client.getBatchCount());
+		callers.shutdown();
+	}
+
+	@Test
+	public void testCachedResults()
+		throws Throwable {
+		JsonRpcHttpClient client = new JsonRpcHttpClient(serviceUrl);
+		Service service = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class, client);
+		for (int i=0; i<10; i++) {
+			assertEquals("hello cached", service.cachedHello("cached"));
+		}
+		assertEquals(1, posts.get());
+		assertEquals(9, client.getResultCache().getHitCount());
+	}
+
+	@Test
+	public void testCachedResultsAreScopedByHeaders()
+		throws Throwable {
+		JsonRpcHttpClient client = new JsonRpcHttpClient(serviceUrl);
+		Service alice = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class, false, client,
+			Collections.singletonMap("X-User", "alice"));
+		Service bob = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class, false, client,
+			Collections.singletonMap("X-User", "bob"));
+		assertEquals("hello cached from alice", alice.cachedHello("cached"));
+		assertEquals("hello cached from bob", bob.cachedHello("cached"));
+		assertEquals("hello cached from alice", alice.cachedHello("cached"));
+		assertEquals(2, posts.get());
+
+		// nor shared between clients of different services
+		JsonRpcHttpClient other = new JsonRpcHttpClient(missingUrl);
+		other.setResultCache(client.getResultCache());
+		Service missing = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class, false, other,
+			Collections.singletonMap("X-User", "alice"));
+		try {
+			missing.cachedHello("cached");
+			fail("Expected an exception");
+		} catch (Throwable t) {
+			// a 404 rather than alice's cached result
+		}
+	}
+
+	@Test
+	public void testErrorStatus()
+		throws Throwable {
+		JavaHttpClientTransport transport = new JavaHttpClientTransport();
+		JsonRpcHttpClient client = new JsonRpcHttpClient(missingUrl);
+		client.setTransport(transport);
+		try {
+			client.invoke("hello", new Object[] {"dude"}, String.class);
+			fail("Expected an IOException");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("404"));
+		}
+		assertEquals(1, transport.getFailureCount());
+
+		// and the same for the built in transport
+		client.setTransport(null);
+		try {
+			client.invoke("hello", new Object[] {"dude"}, String.class);
+			fail("Expected an IOException");
+		} catch (IOException e) {
+			// a FileNotFoundException from HttpURLConnection
+		}
+	}
+
+	public interface Service {
+		String hello(String whatever);
+		int length(String value);
+		@JsonRpcCacheable(ttl = 60000)
+		String cachedHello(String whatever);
+	}
+
+	private class ServiceImpl implements Service {
+		public String hello(String whatever) {
+			return "hello "+whatever;
+		}
+		public int length(String value) {
+			return value.length();
+		}
+		public String cachedHello(String whatever) {
+			return user.get()!=null
+				? "hello "+whatever+" from "+user.get()
+				: "hello "+whatever;
+		}
+	}
+
+}
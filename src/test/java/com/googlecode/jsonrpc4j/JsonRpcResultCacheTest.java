@@ -0,0 +1,195 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class JsonRpcResultCacheTest {
+
+	private JsonRpcResultCache cache;
+	private AtomicInteger calls;
+
+	@Before
+	public void setUp() {
+		cache = new JsonRpcResultCache(new ObjectMapper());
+		calls = new AtomicInteger();
+	}
+
+	private Object get(String methodName, final Object... args)
+		throws Throwable {
+		Method method = Service.class.getMethod(methodName, Object.class);
+		return cache.get("scope", method, args, new JsonRpcResultCache.RemoteCall() {
+			public Object call() {
+				return "result "+calls.incrementAndGet();
+			}
+		});
+	}
+
+	@Test
+	public void testHitsAndMisses()
+		throws Throwable {
+		assertEquals("result 1", get("lookup", "a"));
+		assertEquals("result 1", get("lookup", "a"));
+		assertEquals("result 2", get("lookup", "b"));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+
+		// maps with the same entries share a result
+		Map<String, Integer> first = new LinkedHashMap<String, Integer>();
+		first.put("x", 1);
+		first.put("y", 2);
+		Map<String, Integer> second = new LinkedHashMap<String, Integer>();
+		second.put("y", 2);
+		second.put("x", 1);
+		assertEquals(get("lookup", first), get("lookup", second));
+	}
+
+	@Test
+	public void testScopesDontShareResults()
+		throws Throwable {
+		Method method = Service.class.getMethod("lookup", Object.class);
+		JsonRpcResultCache.RemoteCall call = new JsonRpcResultCache.RemoteCall() {
+			public Object call() {
+				return "result "+calls.incrementAndGet();
+			}
+		};
+		assertEquals("result 1", cache.get("first", method, new Object[] {"a"}, call));
+		assertEquals("result 2", cache.get("second", method, new Object[] {"a"}, call));
+		assertEquals("result 1", cache.get("first", method, new Object[] {"a"}, call));
+	}
+
+	@Test
+	public void testUncacheable()
+		throws Throwable {
+		assertEquals("result 1", get("uncached", "a"));
+		assertEquals("result 2", get("uncached", "a"));
+		assertEquals(0, cache.getMissCount());
+	}
+
+	@Test
+	public void testEviction()
+		throws Throwable {
+		get("small", "a");
+		get("small", "b");
+		get("small", "c");
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals("result 4", get("small", "a"));
+		assertEquals("result 3", get("small", "c"));
+	}
+
+	@Test
+	public void testExpiry()
+		throws Throwable {
+		assertEquals("result 1", get("shortLived", "a"));
+		Thread.sleep(150);
+		assertEquals("result 2", get("shortLived", "a"));
+	}
+
+	@Test
+	public void testStaleWhileRevalidate()
+		throws Throwable {
+		assertEquals("result 1", get("revalidated", "a"));
+		Thread.sleep(150);
+
+		// the stale result comes back while it's refreshed
+		assertEquals("result 1", get("revalidated", "a"));
+		assertEquals(1, cache.getStaleHitCount());
+		long deadline = System.currentTimeMillis()+5000;
+		while (calls.get()<2 && System.currentTimeMillis()<deadline) {
+			Thread.sleep(10);
+		}
+		Thread.sleep(50);
+		assertEquals("result 2", get("revalidated", "a"));
+		assertEquals(2, calls.get());
+	}
+
+	@Test
+	public void testMissStormMakesOneCall()
+		throws Throwable {
+		final Method method = Service.class.getMethod("lookup", Object.class);
+		final CountDownLatch release = new CountDownLatch(1);
+		final JsonRpcResultCache.RemoteCall slowCall = new JsonRpcResultCache.RemoteCall() {
+			public Object call()
+				throws Throwable {
+				calls.incrementAndGet();
+				release.await();
+				return "slow";
+			}
+		};
+		ExecutorService callers = Executors.newFixedThreadPool(20);
+		List<Future<Object>> results = new ArrayList<Future<Object>>();
+		for (int i=0; i<20; i++) {
+			results.add(callers.submit(new Callable<Object>() {
+				public Object call()
+					throws Exception {
+					try {
+						return cache.get("scope", method, new Object[] {"a"}, slowCall);
+					} catch (Exception e) {
+						throw e;
+					} catch (Throwable t) {
+						throw new RuntimeException(t);
+					}
+				}
+			}));
+		}
+		Thread.sleep(200);
+		release.countDown();
+		for (Future<Object> result : results) {
+			assertEquals("slow", result.get());
+		}
+		callers.shutdown();
+		assertEquals(1, calls.get());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(19, cache.getHitCount());
+	}
+
+	@Test
+	public void testFailuresAreNotCached()
+		throws Throwable {
+		Method method = Service.class.getMethod("lookup", Object.class);
+		try {
+			cache.get("scope", method, new Object[] {"a"}, new JsonRpcResultCache.RemoteCall() {
+				public Object call() {
+					throw new IllegalStateException("down");
+				}
+			});
+			fail("Expected an IllegalStateException");
+		} catch (IllegalStateException e) {
+			assertEquals("down", e.getMessage());
+		}
+		assertEquals("result 1", get("lookup", "a"));
+	}
+
+	public interface Service {
+
+		@JsonRpcCacheable(ttl = 60000)
+		String lookup(Object key);
+
+		@JsonRpcCacheable(ttl = 60000, maxEntries = 2)
+		String small(Object key);
+
+		@JsonRpcCacheable(ttl = 100)
+		String shortLived(Object key);
+
+		@JsonRpcCacheable(ttl = 100, staleWhileRevalidate = 60000)
+		String revalidated(Object key);
+
+		String uncached(Object key);
+	}
+
+}
@@ -2,14 +2,32 @@ package com.googlecode.jsonrpc4j;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.core.io.ClassPathResource;
 
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.type.TypeBindings;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.databind.type.TypeModifier;
 
 /**
  * Tests for JsonRpcServer
@@ -394,6 +412,430 @@ public class JsonRpcServerTest {
 		assertEquals(-32700, json.get("error").get("code").asInt());
 	}
 
+	/////
+	/// STREAMING TESTS BELOW
+	/////
+
+	@Test
+	public void callMethodExactNumberOfParametersStreaming() throws Exception {
+		jsonRpcServer.setStreamingRequests(true);
+		jsonRpcServer.handle(new ClassPathResource("jsonRpcServerExactParamsTest.json").getInputStream(), baos);
+
+		String response = baos.toString(JSON_ENCODING);
+		JsonNode json = mapper.readTree(response);
+
+		assertEquals("success", json.get("result").textValue());
+		assertEquals(1, json.get("id").intValue());
+	}
+
+	@Test
+	public void callMethodWithExtraParameterStreaming() throws Exception {
+		jsonRpcServer.setStreamingRequests(true);
+		jsonRpcServer.handle(new ClassPathResource("jsonRpcServerExtraParamsTest.json").getInputStream(), baos);
+
+		String response = baos.toString(JSON_ENCODING);
+		JsonNode json = mapper.readTree(response);
+
+		// Invalid parameters
+		assertEquals(-32602, json.get("error").get("code").intValue());
+	}
+
+	@Test
+	public void callMethodWithParamsBeforeMethodStreaming() throws Exception {
+		jsonRpcServer.setStreamingRequests(true);
+		jsonRpcServer.handle(new ClassPathResource("jsonRpcServerParamsBeforeMethodTest.json").getInputStream(), baos);
+
+		String response = baos.toString(JSON_ENCODING);
+		JsonNode json = mapper.readTree(response);
+
+		assertEquals("success", json.get("result").textValue());
+	}
+
+	@Test
+	public void callMethodWithInvalidParamTypeStreaming() throws Exception {
+		jsonRpcServer.setStreamingRequests(true);
+		jsonRpcServer.handle(new ClassPathResource("jsonRpcServerInvalidParamTypeTest.json").getInputStream(), baos);
+
+		String response = baos.toString(JSON_ENCODING);
+		JsonNode json = mapper.readTree(response);
+
+		assertTrue(json.has("error"));
+		assertEquals(1, json.get("id").intValue());
+	}
+
+	@Test
+	public void callOverloadedMethodTwoIntParamsStreaming() throws Exception {
+		jsonRpcServer.setStreamingRequests(true);
+		jsonRpcServer.handle(new ClassPathResource("jsonRpcServerOverLoadedMethodTwoIntParamsTest.json").getInputStream(), baos);
+
+		String response = baos.toString(JSON_ENCODING);
+		JsonNode json = mapper.readTree(response);
+
+		assertEquals("intParam1, intParam2", json.get("result").textValue());
+	}
+
+	@Test
+	public void callMethodExactNumberOfParametersNamedStreaming() throws Exception {
+		jsonRpcServerAnnotatedParam.setStreamingRequests(true);
+		jsonRpcServerAnnotatedParam.handle(new ClassPathResource("jsonRpcServerExactParamsNamedTest.json").getInputStream(), baos);
+
+		String response = baos.toString(JSON_ENCODING);
+		JsonNode json = mapper.readTree(response);
+
+		assertEquals("success", json.get("result").textValue());
+	}
+
+	@Test
+	public void callMethodWithTooFewParametersNamedStreaming() throws Exception {
+		jsonRpcServerAnnotatedParam.setStreamingRequests(true);
+		jsonRpcServerAnnotatedParam.handle(new ClassPathResource("jsonRpcServerTooFewParamsNamedTest.json").getInputStream(), baos);
+
+		String response = baos.toString(JSON_ENCODING);
+		JsonNode json = mapper.readTree(response);
+
+		// Invalid parameters
+		assertEquals(-32602, json.get("error").get("code").intValue());
+	}
+
+	@Test
+	public void callParseErrorJsonStreaming() throws Exception {
+		jsonRpcServerAnnotatedParam.setStreamingRequests(true);
+		jsonRpcServerAnnotatedParam.handle(new ClassPathResource(
+				"jsonRpcParseErrorTest.json").getInputStream(), baos);
+
+		String response = baos.toString(JSON_ENCODING);
+		JsonNode json = mapper.readTree(response);
+
+		assertEquals(-32700, json.get("error").get("code").asInt());
+	}
+
+	/////
+	/// BATCH TESTS BELOW
+	/////
+
+	@Test
+	public void callBatchWithNotifications() throws Exception {
+		jsonRpcServer.handle(new ClassPathResource("jsonRpcServerBatchNotificationsTest.json").getInputStream(), baos);
+
+		String response = baos.toString(JSON_ENCODING);
+		JsonNode json = mapper.readTree(response);
+
+		assertEquals(2, json.size());
+		assertEquals("second", json.get(0).get("result").textValue());
+		assertEquals("fourth", json.get(1).get("result").textValue());
+	}
+
+	@Test
+	public void callBatchWithNotificationsStreaming() throws Exception {
+		jsonRpcServer.setStreamingRequests(true);
+		jsonRpcServer.handle(new ClassPathResource("jsonRpcServerBatchNotificationsTest.json").getInputStream(), baos);
+
+		String response = baos.toString(JSON_ENCODING);
+		JsonNode json = mapper.readTree(response);
+
+		assertEquals(2, json.size());
+		assertEquals("second", json.get(0).get("result").textValue());
+		assertEquals("fourth", json.get(1).get("result").textValue());
+	}
+
+	@Test
+	public void callBatchWithNotificationsConcurrently() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			jsonRpcServer.setBatchExecutor(executor);
+			jsonRpcServer.handle(new ClassPathResource("jsonRpcServerBatchNotificationsTest.json").getInputStream(), baos);
+		} finally {
+			executor.shutdown();
+		}
+
+		String response = baos.toString(JSON_ENCODING);
+		JsonNode json = mapper.readTree(response);
+
+		assertEquals(2, json.size());
+		assertEquals("second", json.get(0).get("result").textValue());
+		assertEquals("fourth", json.get(1).get("result").textValue());
+	}
+
+	@Test(timeout=10000)
+	public void callBatchConcurrentlyOnBusyExecutor() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+
+			// the only thread of the executor is busy, so the
+			// calling thread handles the whole batch by itself
+			jsonRpcServer.setBatchExecutor(executor);
+			jsonRpcServer.handle(new ClassPathResource("jsonRpcServerBatchNotificationsTest.json").getInputStream(), baos);
+		} finally {
+			release.countDown();
+			executor.shutdown();
+		}
+
+		String response = baos.toString(JSON_ENCODING);
+		JsonNode json = mapper.readTree(response);
+
+		assertEquals(2, json.size());
+		assertEquals("second", json.get(0).get("result").textValue());
+		assertEquals("fourth", json.get(1).get("result").textValue());
+	}
+
+	@Test(timeout=10000)
+	public void callNestedBatchConcurrentlyWithOnePermit() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			jsonRpcServer.setBatchExecutor(executor);
+			jsonRpcServer.setMaxServerParallelism(1);
+			jsonRpcServer.handle(new ByteArrayInputStream((
+				"[[{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"testMethod\",\"params\":[\"a\"]},"
+				+"{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"testMethod\",\"params\":[\"b\"]}],"
+				+"{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"testMethod\",\"params\":[\"c\"]}]")
+				.getBytes(JSON_ENCODING)), baos);
+		} finally {
+			executor.shutdown();
+		}
+
+		// the nested batch is answered without taking a second permit
+		JsonNode json = mapper.readTree(baos.toString(JSON_ENCODING));
+		assertEquals(2, json.size());
+		assertEquals(1, json.get(0).get(0).get("id").intValue());
+		assertEquals(2, json.get(0).get(1).get("id").intValue());
+		assertEquals(3, json.get(1).get("id").intValue());
+	}
+
+	@Test
+	public void callBatchOfNotifications() throws Exception {
+		jsonRpcServer.handle(new ClassPathResource("jsonRpcServerBatchAllNotificationsTest.json").getInputStream(), baos);
+		assertEquals(0, baos.size());
+	}
+
+	@Test
+	public void callBatchOfNotificationsStreaming() throws Exception {
+		jsonRpcServer.setStreamingRequests(true);
+		jsonRpcServer.handle(new ClassPathResource("jsonRpcServerBatchAllNotificationsTest.json").getInputStream(), baos);
+		assertEquals(0, baos.size());
+	}
+
+	/////
+	/// RESULT SERIALIZATION TESTS BELOW
+	/////
+
+	@Test
+	public void callMethodReturningSubclass() throws Exception {
+		JsonRpcServer server = new JsonRpcServer(mapper, new ResultService(), ResultServiceInterface.class);
+		server.handle(new ClassPathResource("jsonRpcServerSubclassResultTest.json").getInputStream(), baos);
+
+		String response = baos.toString(JSON_ENCODING);
+		JsonNode json = mapper.readTree(response);
+
+		assertEquals(1, json.get("id").intValue());
+		assertEquals("base", json.get("result").get("name").textValue());
+		assertEquals("sub", json.get("result").get("extra").textValue());
+	}
+
+	@Test
+	public void callMethodReturningUnserializableResult() throws Exception {
+		byte[] request = ("[{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"brokenResult\",\"params\":[]},"
+			+"{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"subclassResult\",\"params\":[]}]")
+			.getBytes(JSON_ENCODING);
+
+		// the broken result gets an error, and the rest of the batch its results
+		for (boolean streaming : new boolean[] {false, true}) {
+			JsonRpcServer server = new JsonRpcServer(mapper, new ResultService(), ResultServiceInterface.class);
+			server.setStreamingRequests(streaming);
+			server.setBufferResults(true);
+			ByteArrayOutputStream ops = new ByteArrayOutputStream();
+			server.handle(new ByteArrayInputStream(request), ops);
+
+			JsonNode json = mapper.readTree(ops.toString(JSON_ENCODING));
+			assertEquals(2, json.size());
+			assertEquals(1, json.get(0).get("id").intValue());
+			assertNull(json.get(0).get("result"));
+			assertNotNull(json.get(0).get("error"));
+			assertEquals("sub", json.get(1).get("result").get("extra").textValue());
+		}
+	}
+
+	@Test
+	public void callMethodWithOverriddenSuccessResponse() throws Exception {
+		JsonRpcServer server = new JsonRpcServer(mapper, new Service(), ServiceInterface.class) {
+			@Override
+			protected ObjectNode createSuccessResponse(String jsonRpc, Object id, JsonNode result) {
+				ObjectNode response = super.createSuccessResponse(jsonRpc, id, result);
+				response.put("custom", true);
+				return response;
+			}
+		};
+		server.handle(new ClassPathResource("jsonRpcServerExactParamsTest.json").getInputStream(), baos);
+
+		String response = baos.toString(JSON_ENCODING);
+		JsonNode json = mapper.readTree(response);
+
+		assertEquals("success", json.get("result").textValue());
+		assertTrue(json.get("custom").booleanValue());
+	}
+
+	@Test
+	public void callMethodWithOverriddenInvokeStreaming() throws Exception {
+		final List<String> invoked = new ArrayList<String>();
+		JsonRpcServer server = new JsonRpcServer(mapper, new Service(), ServiceInterface.class) {
+			@Override
+			protected JsonNode invoke(Object target, Method m, List<JsonNode> params)
+				throws IOException, IllegalAccessException, InvocationTargetException {
+				invoked.add(m.getName());
+				return super.invoke(target, m, params);
+			}
+		};
+		server.setStreamingRequests(true);
+		server.handle(new ClassPathResource("jsonRpcServerExactParamsTest.json").getInputStream(), baos);
+
+		// the override still sees the call
+		JsonNode json = mapper.readTree(baos.toString(JSON_ENCODING));
+		assertEquals("success", json.get("result").textValue());
+		assertEquals(Arrays.asList("testMethod"), invoked);
+	}
+
+	@Test
+	public void callMethodWithOverriddenHandleObject() throws Exception {
+		final List<String> handled = Collections.synchronizedList(new ArrayList<String>());
+		byte[] single = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"testMethod\",\"params\":[\"a\"]}"
+			.getBytes(JSON_ENCODING);
+		byte[] batch = ("[{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"testMethod\",\"params\":[\"a\"]},"
+			+ "{\"jsonrpc\":\"2.0\",\"method\":\"testMethod\",\"params\":[\"b\"]},"
+			+ "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"testMethod\",\"params\":[\"c\"]}]")
+			.getBytes(JSON_ENCODING);
+
+		// the override sees every request, streamed, batched or not
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (boolean streaming : new boolean[] {false, true}) {
+				for (boolean concurrent : new boolean[] {false, true}) {
+					JsonRpcServer server = new JsonRpcServer(mapper, new Service(), ServiceInterface.class) {
+						@Override
+						public void handleObject(ObjectNode node, OutputStream ops)
+							throws IOException {
+							handled.add(node.get("params").get(0).textValue());
+							super.handleObject(node, ops);
+						}
+					};
+					server.setStreamingRequests(streaming);
+					if (concurrent) {
+						server.setBatchExecutor(executor);
+					}
+					handled.clear();
+
+					ByteArrayOutputStream ops = new ByteArrayOutputStream();
+					server.handle(new ByteArrayInputStream(single), ops);
+					assertEquals("success", mapper.readTree(ops.toString(JSON_ENCODING)).get("result").textValue());
+					assertEquals(Arrays.asList("a"), handled);
+
+					handled.clear();
+					ops = new ByteArrayOutputStream();
+					server.handle(new ByteArrayInputStream(batch), ops);
+					JsonNode json = mapper.readTree(ops.toString(JSON_ENCODING));
+					assertEquals(2, json.size());
+					assertEquals(1, json.get(0).get("id").intValue());
+					assertEquals(2, json.get(1).get("id").intValue());
+					assertEquals(3, handled.size());
+					assertTrue(handled.containsAll(Arrays.asList("a", "b", "c")));
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void callMethodWithTypeModifier() throws Exception {
+		ObjectMapper modifiedMapper = new ObjectMapper();
+		modifiedMapper.setTypeFactory(modifiedMapper.getTypeFactory().withModifier(new LongModifier()));
+		byte[] request = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"elementType\",\"params\":[[1,2]]}"
+			.getBytes(JSON_ENCODING);
+
+		// parameters are bound with the mapper's type factory, streamed or not
+		for (boolean streaming : new boolean[] {false, true}) {
+			JsonRpcServer server = new JsonRpcServer(modifiedMapper, new ListService(), ListServiceInterface.class);
+			server.setStreamingRequests(streaming);
+			ByteArrayOutputStream ops = new ByteArrayOutputStream();
+			server.handle(new ByteArrayInputStream(request), ops);
+
+			JsonNode json = mapper.readTree(ops.toString(JSON_ENCODING));
+			assertEquals("Long", json.get("result").textValue());
+		}
+	}
+
+	@Test
+	public void callCompositeService() throws Exception {
+		Object compositeService = ProxyUtil.createCompositeServiceProxy(
+			getClass().getClassLoader(),
+			new Object[] {new Service(), new FailingService()},
+			new Class<?>[] {ServiceInterface.class, FailingServiceInterface.class},
+			false);
+		JsonRpcServer server = new JsonRpcServer(mapper, compositeService);
+
+		// each method is invoked on the service implementing it
+		server.handle(new ByteArrayInputStream(
+			"{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"overloadedMethod\",\"params\":[2]}"
+				.getBytes(JSON_ENCODING)), baos);
+		assertEquals("intParam2", mapper.readTree(baos.toString(JSON_ENCODING)).get("result").textValue());
+
+		// and its exceptions are resolved as they were thrown
+		baos.reset();
+		server.handle(new ByteArrayInputStream(
+			"{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"fail\",\"params\":[]}"
+				.getBytes(JSON_ENCODING)), baos);
+		JsonNode error = mapper.readTree(baos.toString(JSON_ENCODING)).get("error");
+		assertEquals(IllegalStateException.class.getName(),
+			error.get("data").get("exceptionTypeName").textValue());
+		assertEquals("failed", error.get("message").textValue());
+
+		// also when called through the proxy
+		try {
+			((FailingServiceInterface)compositeService).fail();
+			fail("expected an IllegalStateException");
+		} catch (IllegalStateException e) {
+			assertEquals("failed", e.getMessage());
+		}
+	}
+
+	private interface FailingServiceInterface {
+		public String fail();
+	}
+
+	private class FailingService implements FailingServiceInterface {
+		public String fail() {
+			throw new IllegalStateException("failed");
+		}
+	}
+
+	/**
+	 * Makes every {@link Integer} a {@link Long}.
+	 */
+	static class LongModifier extends TypeModifier {
+		@Override
+		public JavaType modifyType(JavaType type, Type jdkType, TypeBindings context, TypeFactory typeFactory) {
+			return type.hasRawClass(Integer.class) ? typeFactory.constructType(Long.class) : type;
+		}
+	}
+
+	private interface ListServiceInterface {
+		public String elementType(List<Integer> values);
+	}
+
+	private class ListService implements ListServiceInterface {
+		public String elementType(List<Integer> values) {
+			return ((Object)values.get(0)).getClass().getSimpleName();
+		}
+	}
+
 	// Service and service interfaces used in test
 	
 	private interface ServiceInterface {        
@@ -416,6 +858,34 @@ public class JsonRpcServerTest {
 		public String methodWithoutRequiredParam(@JsonRpcParamName("param1") String stringParam1, @JsonRpcParamName(value="param2") String stringParam2);
 	}
 
+	private interface ResultServiceInterface {
+		public BaseResult subclassResult();
+		public BrokenResult brokenResult();
+	}
+
+	public static class BrokenResult {
+		public String getName() {
+			throw new IllegalStateException("broken");
+		}
+	}
+
+	public static class BaseResult {
+		public String name = "base";
+	}
+
+	public static class SubResult extends BaseResult {
+		public String extra = "sub";
+	}
+
+	private class ResultService implements ResultServiceInterface {
+		public BaseResult subclassResult() {
+			return new SubResult();
+		}
+		public BrokenResult brokenResult() {
+			return new BrokenResult();
+		}
+	}
+
 	private class Service implements ServiceInterface, ServiceInterfaceWithParamNameAnnotaion {
 		public String testMethod(String param1) {
 			return "success";
@@ -0,0 +1,223 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.googlecode.jsonrpc4j.processor.JsonRpcServiceProcessor;
+
+/**
+ * Compiles a {@link JsonRpcService} interface with the
+ * {@link JsonRpcServiceProcessor}, and checks that the server and
+ * the client proxies use the classes it generated.
+ */
+public class JsonRpcServiceProcessorTest {
+
+	private static final String INTERFACE_SOURCE =
+		"package generated;\n"
+		+"@com.googlecode.jsonrpc4j.JsonRpcService(\"/calculator\")\n"
+		+"public interface Calculator {\n"
+		+"	int add(int a, int b);\n"
+		+"	String join(String separator, String... parts);\n"
+		+"	<T extends Number> java.util.List<T> echo(java.util.List<T> values);\n"
+		+"	String caller();\n"
+		+"	void fail(String message) throws java.io.IOException;\n"
+		+"}\n";
+
+	private static final String IMPLEMENTATION_SOURCE =
+		"package generated;\n"
+		+"public class CalculatorImpl implements Calculator {\n"
+		+"	public int add(int a, int b) { return a+b; }\n"
+		+"	public String join(String separator, String... parts) { return String.join(separator, parts); }\n"
+		+"	public <T extends Number> java.util.List<T> echo(java.util.List<T> values) { return values; }\n"
+		+"	public String caller() { return new Throwable().getStackTrace()[1].getClassName(); }\n"
+		+"	public void fail(String message) throws java.io.IOException { throw new java.io.IOException(message); }\n"
+		+"}\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ObjectMapper mapper;
+	private Class<?> calculatorInterface;
+	private Object calculator;
+
+	@Before
+	public void setUp()
+		throws Exception {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		assumeNotNull(compiler);
+
+		File sources = folder.newFolder("src");
+		File classes = folder.newFolder("classes");
+		File interfaceFile = write(sources, "Calculator.java", INTERFACE_SOURCE);
+		File implementationFile = write(sources, "CalculatorImpl.java", IMPLEMENTATION_SOURCE);
+		int status = compiler.run(null, null, null,
+			"-classpath", System.getProperty("java.class.path"),
+			"-processor", JsonRpcServiceProcessor.class.getName(),
+			"-s", sources.getPath(),
+			"-d", classes.getPath(),
+			interfaceFile.getPath(), implementationFile.getPath());
+		assertEquals(0, status);
+
+		ClassLoader loader = new URLClassLoader(
+			new URL[] {classes.toURI().toURL()}, getClass().getClassLoader());
+		mapper = new ObjectMapper();
+		calculatorInterface = loader.loadClass("generated.Calculator");
+		calculator = loader.loadClass("generated.CalculatorImpl").getConstructor().newInstance();
+	}
+
+	private static File write(File directory, String name, String source)
+		throws IOException {
+		File file = new File(directory, name);
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(source);
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+
+	@Test
+	public void serverUsesGeneratedDispatcher()
+		throws Exception {
+		JsonRpcServer server = new JsonRpcServer(mapper, calculator, calculatorInterface);
+
+		assertEquals("generated.Calculator_JsonRpcDispatcher",
+			call(server, "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"caller\",\"params\":[]}")
+				.get("result").textValue());
+		assertEquals(3,
+			call(server, "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"add\",\"params\":[1,2]}")
+				.get("result").intValue());
+		assertEquals("a-b",
+			call(server, "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"join\",\"params\":[\"-\",[\"a\",\"b\"]]}")
+				.get("result").textValue());
+		assertEquals("boom",
+			call(server, "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"fail\",\"params\":[\"boom\"]}")
+				.get("error").get("message").textValue());
+	}
+
+	@Test
+	public void clientProxyIsGeneratedStub()
+		throws Throwable {
+		final JsonRpcServer server = new JsonRpcServer(mapper, calculator, calculatorInterface);
+		Loopback loopback = new Loopback(server);
+		Object proxy = ProxyUtil.createClientProxy(
+			getClass().getClassLoader(), calculatorInterface, false,
+			new JsonRpcClient(mapper), loopback.input, loopback.output);
+
+		assertFalse(Proxy.isProxyClass(proxy.getClass()));
+		assertEquals("generated.Calculator_JsonRpcStub", proxy.getClass().getName());
+
+		assertEquals(3, invoke(proxy, "add", new Class<?>[] {int.class, int.class}, 1, 2));
+		assertEquals("a-b", invoke(proxy, "join", new Class<?>[] {String.class, String[].class},
+			"-", new String[] {"a", "b"}));
+		assertEquals(Arrays.asList(1, 2), invoke(proxy, "echo", new Class<?>[] {java.util.List.class},
+			Arrays.asList(1, 2)));
+
+		// declared exceptions are thrown as they are
+		try {
+			invoke(proxy, "fail", new Class<?>[] {String.class}, "boom");
+			fail("Expected an IOException");
+		} catch (IOException e) {
+			assertEquals("boom", e.getMessage());
+		}
+
+		// methods of Object are answered by the proxy
+		assertTrue(proxy.equals(proxy));
+		assertFalse(proxy.equals(null));
+		assertEquals(System.identityHashCode(proxy), proxy.hashCode());
+		assertTrue(proxy.toString().startsWith("generated.Calculator_JsonRpcStub@"));
+	}
+
+	private Object invoke(Object proxy, String name, Class<?>[] parameterTypes, Object... arguments)
+		throws Throwable {
+		Method method = calculatorInterface.getMethod(name, parameterTypes);
+		try {
+			return method.invoke(proxy, arguments);
+		} catch (InvocationTargetException e) {
+			throw e.getTargetException();
+		}
+	}
+
+	private JsonNode call(JsonRpcServer server, String request)
+		throws IOException {
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		server.handle(new ByteArrayInputStream(request.getBytes("UTF-8")), response);
+		return mapper.readTree(response.toByteArray());
+	}
+
+	/**
+	 * Hands the requests written to its output to a server when
+	 * they're flushed, and reads the server's responses from its input.
+	 */
+	private static class Loopback {
+
+		private final JsonRpcServer server;
+		private final ByteArrayOutputStream request = new ByteArrayOutputStream();
+		private ByteArrayInputStream response = new ByteArrayInputStream(new byte[0]);
+
+		final InputStream input = new InputStream() {
+			@Override
+			public int read() {
+				return response.read();
+			}
+			@Override
+			public int read(byte[] b, int off, int len) {
+				return response.read(b, off, len);
+			}
+		};
+
+		final OutputStream output = new OutputStream() {
+			@Override
+			public void write(int b) {
+				request.write(b);
+			}
+			@Override
+			public void write(byte[] b, int off, int len) {
+				request.write(b, off, len);
+			}
+			@Override
+			public void flush()
+				throws IOException {
+				if (request.size()==0) {
+					return;
+				}
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				server.handle(new ByteArrayInputStream(request.toByteArray()), out);
+				request.reset();
+				response = new ByteArrayInputStream(out.toByteArray());
+			}
+		};
+
+		Loopback(JsonRpcServer server) {
+			this.server = server;
+		}
+	}
+
+}
@@ -0,0 +1,163 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+import javax.net.ServerSocketFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JsonRpcSocketClientTest {
+
+	private ServerSocket serverSocket;
+	private ExecutorService pipelineExecutor;
+	private StreamServer streamServer;
+	private JsonRpcSocketClient client;
+
+	@Before
+	public void setUp()
+		throws Exception {
+		serverSocket = ServerSocketFactory.getDefault().createServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+		pipelineExecutor = Executors.newFixedThreadPool(8);
+		streamServer = new StreamServer(new JsonRpcServer(new ServiceImpl(), Service.class), 5, serverSocket);
+		streamServer.setPipelineExecutor(pipelineExecutor);
+		streamServer.start();
+		client = new JsonRpcSocketClient(new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort()));
+	}
+
+	@After
+	public void tearDown()
+		throws Exception {
+		client.close();
+		streamServer.stop();
+		pipelineExecutor.shutdown();
+	}
+
+	@Test
+	public void testInvoke()
+		throws Throwable {
+		assertEquals("hello dude", client.invoke("hello", new Object[] {"dude"}, String.class));
+		client.invokeNotification("hello", new Object[] {"nobody"});
+		assertEquals("hello again", client.invoke("hello", new Object[] {"again"}, String.class));
+		assertEquals(0, client.getPendingCallCount());
+	}
+
+	@Test
+	public void testOutOfOrderResponses()
+		throws Throwable {
+		final Service service = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class, client);
+
+		// a slow call doesn't hold up the ones made after it
+		ExecutorService callers = Executors.newFixedThreadPool(2);
+		Future<String> slow = callers.submit(new Callable<String>() {
+			public String call() {
+				return service.slowHello("slow", 1000);
+			}
+		});
+		Thread.sleep(100);
+		assertEquals("hello fast", service.hello("fast"));
+		assertFalse(slow.isDone());
+		assertEquals("hello slow", slow.get());
+		callers.shutdown();
+	}
+
+	@Test
+	public void testConcurrentCalls()
+		throws Throwable {
+		final Service service = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class, client);
+
+		// many threads share the one connection
+		ExecutorService callers = Executors.newFixedThreadPool(16);
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		for (int i=0; i<500; i++) {
+			final String name = "caller "+i;
+			results.add(callers.submit(new Callable<String>() {
+				public String call() {
+					return service.hello(name);
+				}
+			}));
+		}
+		for (int i=0; i<results.size(); i++) {
+			assertEquals("hello caller "+i, results.get(i).get());
+		}
+		callers.shutdown();
+	}
+
+	@Test
+	public void testCloseFailsPendingCalls()
+		throws Throwable {
+		ExecutorService callers = Executors.newSingleThreadExecutor();
+		Future<Object> slow = callers.submit(new Callable<Object>() {
+			public Object call()
+				throws Exception {
+				try {
+					return client.invoke("slowHello", new Object[] {"slow", 2000}, String.class);
+				} catch (Exception e) {
+					throw e;
+				} catch (Throwable t) {
+					throw new RuntimeException(t);
+				}
+			}
+		});
+		Thread.sleep(100);
+		client.close();
+		try {
+			slow.get();
+			fail("Expected the pending call to fail");
+		} catch (java.util.concurrent.ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		callers.shutdown();
+	}
+
+	@Test
+	public void testReadTimeout()
+		throws Throwable {
+		client.setReadTimeoutMillis(100);
+		try {
+			client.invoke("slowHello", new Object[] {"slow", 2000}, String.class);
+			fail("Expected a TimeoutException");
+		} catch (TimeoutException e) {
+			// the call gives up, and the connection is still usable
+		}
+		assertEquals(0, client.getPendingCallCount());
+		assertEquals("hello again", client.invoke("hello", new Object[] {"again"}, String.class));
+	}
+
+	public interface Service {
+		String hello(String whatever);
+		String slowHello(String whatever, long millis);
+	}
+
+	private class ServiceImpl implements Service {
+
+		public String hello(String whatever) {
+			return "hello "+whatever;
+		}
+
+		public String slowHello(String whatever, long millis) {
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return "hello "+whatever;
+		}
+	}
+
+}
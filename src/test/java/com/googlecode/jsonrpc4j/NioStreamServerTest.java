@@ -0,0 +1,279 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class NioStreamServerTest {
+
+	private ServerSocketChannel serverChannel;
+	private JsonRpcServer jsonRpcServer;
+	private JsonRpcClient jsonRpcClient;
+	private NioStreamServer streamServer;
+	private ServiceImpl service;
+
+	@Before
+	public void setUp()
+		throws Exception {
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+		service = new ServiceImpl();
+		jsonRpcServer = new JsonRpcServer(service, Service.class);
+		jsonRpcClient = new JsonRpcClient();
+		streamServer = new NioStreamServer(jsonRpcServer, 5, serverChannel);
+		streamServer.start();
+	}
+
+	@After
+	public void tearDown()
+		throws Exception {
+		streamServer.stop();
+	}
+
+	@Test
+	public void testBasicConnection()
+		throws Exception {
+		Socket socket = connect();
+		Service service = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class,
+			jsonRpcClient, socket);
+
+		for (int i=0; i<100; i++) {
+			assertEquals(i, service.inc());
+		}
+		assertEquals("hello dude", service.hello("dude"));
+
+		socket.close();
+	}
+
+	@Test
+	public void testManyIdleClients()
+		throws Exception {
+
+		// open lots of connections that don't do anything
+		Socket[] idle = new Socket[500];
+		for (int i=0; i<idle.length; i++) {
+			idle[i] = connect();
+		}
+
+		// and make sure they don't hold up another client
+		Socket socket = connect();
+		Service service = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class,
+			jsonRpcClient, socket);
+		assertEquals("hello dude", service.hello("dude"));
+
+		// nor each other
+		for (int i=0; i<idle.length; i+=50) {
+			Service idleService = ProxyUtil.createClientProxy(
+				this.getClass().getClassLoader(), Service.class,
+				jsonRpcClient, idle[i]);
+			assertEquals("hello "+i, idleService.hello(""+i));
+		}
+
+		for (Socket s : idle) {
+			s.close();
+		}
+		socket.close();
+	}
+
+	@Test
+	public void testRequestsSplitAcrossWrites()
+		throws Exception {
+		Socket socket = connect();
+		OutputStream ops = socket.getOutputStream();
+		InputStream ips = socket.getInputStream();
+		ObjectMapper mapper = new ObjectMapper();
+
+		// two requests, sent a byte at a time
+		byte[] requests = (
+			"{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"hello\",\"params\":[\"one\"]}"
+			+"[{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"hello\",\"params\":[\"two\"]}]").getBytes("UTF-8");
+		for (byte b : requests) {
+			ops.write(b);
+			ops.flush();
+		}
+
+		// are answered in order
+		JsonParser parser = mapper.getFactory().createParser(ips);
+		parser.nextToken();
+		JsonNode first = mapper.readTree(parser);
+		assertEquals("hello one", first.get("result").textValue());
+		parser.nextToken();
+		JsonNode second = mapper.readTree(parser);
+		assertEquals("hello two", second.get(0).get("result").textValue());
+
+		socket.close();
+	}
+
+	@Test
+	public void testParseErrorClosesConnection()
+		throws Exception {
+		Socket socket = connect();
+		socket.getOutputStream().write("{\"jsonrpc\": ]".getBytes("UTF-8"));
+
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
+		InputStream ips = socket.getInputStream();
+		JsonNode response = mapper.readTree(ips);
+		assertEquals(-32700, response.get("error").get("code").intValue());
+		assertEquals(-1, ips.read());
+
+		socket.close();
+	}
+
+	@Test
+	public void testHalfClosedClientGetsItsResponses()
+		throws Exception {
+		Socket socket = connect();
+		StringBuilder requests = new StringBuilder();
+		for (int i=0; i<3; i++) {
+			requests.append("{\"jsonrpc\":\"2.0\",\"id\":").append(i)
+				.append(",\"method\":\"big\",\"params\":[100000]}");
+		}
+		socket.getOutputStream().write(requests.toString().getBytes("UTF-8"));
+		socket.shutdownOutput();
+
+		// every response comes back before the server closes
+		ObjectMapper mapper = new ObjectMapper();
+		JsonParser parser = mapper.getFactory().createParser(socket.getInputStream());
+		for (int i=0; i<3; i++) {
+			parser.nextToken();
+			JsonNode response = mapper.readTree(parser);
+			assertEquals(i, response.get("id").intValue());
+			assertEquals(100000, response.get("result").textValue().length());
+		}
+		assertNull(parser.nextToken());
+
+		socket.close();
+	}
+
+	@Test
+	public void testParseErrorAnswersEarlierRequests()
+		throws Exception {
+		Socket socket = connect();
+		socket.getOutputStream().write((
+			"{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"big\",\"params\":[100000]}"
+			+"{\"jsonrpc\": ]").getBytes("UTF-8"));
+
+		// the request before the garbage is answered, then the error
+		ObjectMapper mapper = new ObjectMapper();
+		JsonParser parser = mapper.getFactory().createParser(socket.getInputStream());
+		parser.nextToken();
+		JsonNode response = mapper.readTree(parser);
+		assertEquals(1, response.get("id").intValue());
+		assertEquals(100000, response.get("result").textValue().length());
+		parser.nextToken();
+		JsonNode error = mapper.readTree(parser);
+		assertEquals(-32700, error.get("error").get("code").intValue());
+		assertNull(parser.nextToken());
+
+		socket.close();
+	}
+
+	@Test
+	public void testClientNotReadingResponsesStopsHandling()
+		throws Exception {
+		streamServer.setMaxQueuedRequests(4);
+		streamServer.setMaxQueuedResponseBytes(64*1024);
+		Socket socket = connect();
+		OutputStream ops = socket.getOutputStream();
+
+		// pipeline requests with large responses without reading them
+		int count = 300;
+		StringBuilder requests = new StringBuilder();
+		for (int i=0; i<count; i++) {
+			requests.append("{\"jsonrpc\":\"2.0\",\"id\":").append(i)
+				.append(",\"method\":\"big\",\"params\":[262144]}");
+		}
+		ops.write(requests.toString().getBytes("UTF-8"));
+		ops.flush();
+
+		// only as many are handled as the socket buffers take
+		Thread.sleep(1000);
+		int handled = service.bigCalls.get();
+		assertTrue("handled "+handled, handled<count/2);
+
+		// and the rest once the client catches up
+		ObjectMapper mapper = new ObjectMapper();
+		JsonParser parser = mapper.getFactory().createParser(socket.getInputStream());
+		for (int i=0; i<count; i++) {
+			parser.nextToken();
+			JsonNode response = mapper.readTree(parser);
+			assertEquals(i, response.get("id").intValue());
+			assertEquals(262144, response.get("result").textValue().length());
+		}
+		assertEquals(count, service.bigCalls.get());
+
+		socket.close();
+	}
+
+	@Test
+	public void testRequestTooLargeClosesConnection()
+		throws Exception {
+		streamServer.setMaxRequestBytes(1024);
+		Socket socket = connect();
+		char[] param = new char[4096];
+		Arrays.fill(param, 'x');
+		socket.getOutputStream().write(
+			("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"hello\",\"params\":[\""
+				+new String(param)+"\"]}").getBytes("UTF-8"));
+
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
+		InputStream ips = socket.getInputStream();
+		JsonNode response = mapper.readTree(ips);
+		assertEquals(-32600, response.get("error").get("code").intValue());
+		assertEquals(-1, ips.read());
+
+		socket.close();
+	}
+
+	private Socket connect()
+		throws Exception {
+		return new Socket(
+			serverChannel.socket().getInetAddress(), streamServer.getLocalPort());
+	}
+
+	private static interface Service {
+		String hello(String whatever);
+		int inc();
+		String big(int length);
+	}
+
+	private class ServiceImpl implements Service {
+		private int val;
+		private final AtomicInteger bigCalls = new AtomicInteger();
+
+		public String big(int length) {
+			bigCalls.incrementAndGet();
+			char[] chars = new char[length];
+			Arrays.fill(chars, 'x');
+			return new String(chars);
+		}
+
+		public String hello(String whatever) {
+			return "hello "+whatever;
+		}
+
+		public int inc() {
+			return val++;
+		}
+	}
+
+}
@@ -97,6 +97,34 @@ public class ServerClientTest {
 		clientService.hashCode();
 	}
 
+	@Test
+	public void testNamedParams()
+		throws Throwable {
+
+		// create client service
+		Service clientService = ProxyUtil.createClientProxy(
+			cl, Service.class, true, jsonRpcClient,
+			clientInputStream,
+			clientOutputStream);
+
+		mockCtx.checking(new Expectations() {{
+			exactly(2).of(serviceMock).hello(with("uranus"));
+			will(returnValue("uranus"));
+		}});
+
+		// the parameter names are found once, and used on every call
+		assertEquals("uranus", clientService.hello("uranus"));
+		assertEquals("uranus", clientService.hello("uranus"));
+
+		// parameters must be named
+		try {
+			clientService.unnamed("uranus");
+			fail("Expecting exception");
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage().contains("parameter index 0 on method unnamed"));
+		}
+	}
+
 	@Test
 	public void testAllMethodsViaCompositeProxy()
 			throws Throwable {
@@ -217,7 +245,8 @@ public class ServerClientTest {
 	public interface Service {
 		public void noOp() throws Throwable;
 		public String hello() throws Throwable;
-		public String hello(String world) throws Throwable;
+		public String hello(@JsonRpcParam("world") String world) throws Throwable;
+		public String unnamed(String value) throws Throwable;
 		public void unresolvedExceptionThrown() throws Throwable;
 		public void undelcaredExceptionThrown();
 	}
@@ -2,10 +2,18 @@ package com.googlecode.jsonrpc4j;
 
 import static org.junit.Assert.*;
 
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Handler;
 import java.util.logging.Level;
+import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 
 import javax.net.ServerSocketFactory;
@@ -13,6 +21,10 @@ import javax.net.ServerSocketFactory;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 public class StreamServerTest {
 
 	private ServerSocket serverSocket;
@@ -57,6 +69,121 @@ public class StreamServerTest {
 		streamServer.stop();
 	}
 
+	@Test
+	public void testVirtualThreads()
+		throws Exception {
+
+		// create and start the server, falling back to a pool on older runtimes
+		StreamServer streamServer = new StreamServer(jsonRpcServer, 5, serverSocket);
+		streamServer.setUseVirtualThreads(true);
+		streamServer.start();
+
+		// create socket
+		Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+
+		// create and connect with a client
+		Service service1 = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class,
+			jsonRpcClient, socket);
+
+		// invoke
+		assertEquals("hello dude", service1.hello("dude"));
+
+		// disconnect
+		socket.close();
+
+		// stop it
+		streamServer.stop();
+	}
+
+	@Test
+	public void testPipelining()
+		throws Exception {
+
+		// create and start the server
+		ExecutorService pipelineExecutor = Executors.newFixedThreadPool(4);
+		StreamServer streamServer = new StreamServer(jsonRpcServer, 5, serverSocket);
+		streamServer.setPipelineExecutor(pipelineExecutor);
+		streamServer.start();
+
+		// send a slow request followed by a fast one
+		Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+		OutputStream ops = socket.getOutputStream();
+		ops.write((
+			"{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"slowHello\",\"params\":[\"slow\",1000]}"
+			+"{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"hello\",\"params\":[\"fast\"]}").getBytes("UTF-8"));
+		ops.flush();
+
+		// the fast one isn't held up by the slow one
+		ObjectMapper mapper = new ObjectMapper();
+		JsonParser parser = mapper.getFactory().createParser(socket.getInputStream());
+		parser.nextToken();
+		JsonNode first = mapper.readTree(parser);
+		assertEquals(2, first.get("id").intValue());
+		assertEquals("hello fast", first.get("result").textValue());
+		parser.nextToken();
+		JsonNode second = mapper.readTree(parser);
+		assertEquals(1, second.get("id").intValue());
+		assertEquals("hello slow", second.get("result").textValue());
+
+		// disconnect
+		socket.close();
+
+		// stop it
+		streamServer.stop();
+		pipelineExecutor.shutdown();
+	}
+
+	@Test
+	public void testPipelineExecutorRejecting()
+		throws Exception {
+
+		// record what the server logs
+		final List<LogRecord> records = new CopyOnWriteArrayList<LogRecord>();
+		Handler handler = new Handler() {
+			public void publish(LogRecord record) {
+				records.add(record);
+			}
+			public void flush() { }
+			public void close() { }
+		};
+		Logger serverLogger = Logger.getLogger(StreamServer.class.getName());
+		serverLogger.addHandler(handler);
+
+		// create and start the server with an executor that's shut down
+		ExecutorService pipelineExecutor = Executors.newFixedThreadPool(1);
+		pipelineExecutor.shutdown();
+		StreamServer streamServer = new StreamServer(jsonRpcServer, 5, serverSocket);
+		streamServer.setPipelineExecutor(pipelineExecutor);
+		streamServer.start();
+		try {
+			Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+			OutputStream ops = socket.getOutputStream();
+			ops.write("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"hello\",\"params\":[\"dude\"]}"
+				.getBytes("UTF-8"));
+			ops.flush();
+
+			// the connection is closed and the rejection logged
+			assertEquals(-1, socket.getInputStream().read());
+			boolean logged = false;
+			for (LogRecord record : records) {
+				logged |= record.getThrown() instanceof RejectedExecutionException;
+			}
+			assertTrue(logged);
+			socket.close();
+		} finally {
+			serverLogger.removeHandler(handler);
+			streamServer.stop();
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testMaxInFlightRequestsBelowOne()
+		throws Exception {
+		StreamServer streamServer = new StreamServer(jsonRpcServer, 5, serverSocket);
+		streamServer.setMaxInFlightRequests(0);
+	}
+
 	@Test
 	public void testMultipleClients()
 		throws Exception {
@@ -134,6 +261,7 @@ public class StreamServerTest {
 
 	private static interface Service {
 		String hello(String whatever);
+		String slowHello(String whatever, long millis);
 		int inc();
 		void reset();
 	}
@@ -147,6 +275,15 @@ public class StreamServerTest {
 			return "hello "+whatever;
 		}
 
+		public String slowHello(String whatever, long millis) {
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return "hello "+whatever;
+		}
+
 		public int inc() {
 			LOGGER.log(Level.INFO, "server: inc():"+val);
 			return val++;
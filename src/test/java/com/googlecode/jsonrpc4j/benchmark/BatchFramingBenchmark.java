@@ -0,0 +1,181 @@
+package com.googlecode.jsonrpc4j.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ServerSocketFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.googlecode.jsonrpc4j.JsonRpcServer;
+import com.googlecode.jsonrpc4j.StreamServer;
+
+/**
+ * Round trips of a batch request through a {@link StreamServer}
+ * over a loopback socket.  Every fourth element of the batch is a
+ * notification.  Besides the latency, the number of writes to the
+ * socket (each of which is a system call) and of flushes per batch
+ * are printed after every iteration.
+ * <p>
+ * Run with {@code java -cp <test classpath> com.googlecode.jsonrpc4j.benchmark.BatchFramingBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchFramingBenchmark {
+
+	@Param({"10", "100"})
+	public int size;
+
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong writes = new AtomicLong();
+	private final AtomicLong flushes = new AtomicLong();
+
+	private byte[] request;
+	private ObjectMapper clientMapper;
+	private StreamServer streamServer;
+	private Socket socket;
+
+	@Setup
+	public void setup()
+		throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+
+		// build the batch
+		ArrayNode requests = mapper.createArrayNode();
+		for (int i=0; i<size; i++) {
+			ObjectNode node = requests.addObject();
+			node.put("jsonrpc", "2.0");
+			node.put("method", "echo");
+			node.putArray("params").add("value "+i);
+			if (i % 4 != 0) {
+				node.put("id", i);
+			}
+		}
+		request = mapper.writeValueAsBytes(requests);
+
+		// start the server
+		ServerSocket serverSocket = ServerSocketFactory.getDefault()
+			.createServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+		streamServer = new StreamServer(new CountingJsonRpcServer(mapper), 1, serverSocket);
+		streamServer.start();
+
+		// and connect to it, reading responses without closing the socket
+		socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+		clientMapper = new ObjectMapper();
+		clientMapper.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
+	}
+
+	@Setup(Level.Iteration)
+	public void resetCounters() {
+		batches.set(0);
+		writes.set(0);
+		flushes.set(0);
+	}
+
+	@TearDown(Level.Iteration)
+	public void printCounters() {
+		long count = Math.max(batches.get(), 1);
+		System.out.printf("%n%d batches: %.1f writes/batch, %.1f flushes/batch%n",
+			batches.get(), writes.get() / (double) count, flushes.get() / (double) count);
+	}
+
+	@TearDown
+	public void teardown()
+		throws Exception {
+		socket.close();
+		streamServer.stop();
+	}
+
+	@Benchmark
+	public JsonNode roundTrip()
+		throws IOException {
+		OutputStream ops = socket.getOutputStream();
+		ops.write(request);
+		ops.flush();
+		return clientMapper.readTree(socket.getInputStream());
+	}
+
+	public static void main(String[] args)
+		throws Exception {
+		new Runner(new OptionsBuilder()
+			.include(BatchFramingBenchmark.class.getSimpleName())
+			.build()).run();
+	}
+
+	public interface Service {
+		String echo(String value);
+	}
+
+	public static class ServiceImpl implements Service {
+		public String echo(String value) {
+			return value;
+		}
+	}
+
+	/**
+	 * Counts the writes to, and flushes of, the socket.
+	 */
+	private class CountingJsonRpcServer
+		extends JsonRpcServer {
+
+		CountingJsonRpcServer(ObjectMapper mapper) {
+			super(mapper, new ServiceImpl(), Service.class);
+		}
+
+		@Override
+		public void handle(InputStream ips, final OutputStream ops)
+			throws IOException {
+			super.handle(ips, new OutputStream() {
+				@Override
+				public void write(int b)
+					throws IOException {
+					writes.incrementAndGet();
+					ops.write(b);
+				}
+				@Override
+				public void write(byte[] b, int off, int len)
+					throws IOException {
+					writes.incrementAndGet();
+					ops.write(b, off, len);
+				}
+				@Override
+				public void flush()
+					throws IOException {
+					flushes.incrementAndGet();
+					ops.flush();
+				}
+			});
+			batches.incrementAndGet();
+		}
+	}
+
+}
@@ -0,0 +1,125 @@
+package com.googlecode.jsonrpc4j.benchmark;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.googlecode.jsonrpc4j.JsonRpcClient;
+import com.googlecode.jsonrpc4j.JsonRpcParam;
+import com.googlecode.jsonrpc4j.ProxyUtil;
+
+/**
+ * Measures the throughput of calls through a {@link JsonRpcClient}
+ * proxy with indexed and with named parameters.  The proxy talks to
+ * a {@link Loopback} that answers every request with the same small
+ * response, so the calls cost what the proxy and client add to them.
+ * <p>
+ * Run with {@code java -cp <test classpath> com.googlecode.jsonrpc4j.benchmark.ClientProxyBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientProxyBenchmark {
+
+	private Service indexedService;
+	private Service namedService;
+
+	@Setup
+	public void setup()
+		throws Exception {
+		JsonRpcClient client = new JsonRpcClient();
+		Loopback indexed = new Loopback(
+			"{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":[1,2,3]}".getBytes("UTF-8"));
+		Loopback named = new Loopback(
+			"{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":[1,2,3]}".getBytes("UTF-8"));
+		indexedService = ProxyUtil.createClientProxy(getClass().getClassLoader(),
+			Service.class, false, client, indexed.input, indexed.output);
+		namedService = ProxyUtil.createClientProxy(getClass().getClassLoader(),
+			Service.class, true, client, named.input, named.output);
+	}
+
+	@Benchmark
+	public Object indexed() {
+		return indexedService.find("account-1234", 10);
+	}
+
+	@Benchmark
+	public Object named() {
+		return namedService.find("account-1234", 10);
+	}
+
+	public static void main(String[] args)
+		throws Exception {
+		new Runner(new OptionsBuilder()
+			.include(ClientProxyBenchmark.class.getSimpleName())
+			.build()).run();
+	}
+
+	public interface Service {
+		List<Integer> find(@JsonRpcParam("account") String account, @JsonRpcParam("limit") int limit);
+	}
+
+	/**
+	 * Discards the requests written to its output, and rewinds
+	 * the response read from its input when a request is flushed.
+	 */
+	static class Loopback {
+
+		private final byte[] response;
+		private int position;
+
+		final InputStream input = new InputStream() {
+			@Override
+			public int read() {
+				return (position<response.length) ? response[position++] & 0xff : -1;
+			}
+			@Override
+			public int read(byte[] b, int off, int len) {
+				if (position>=response.length) {
+					return -1;
+				}
+				int n = Math.min(len, response.length-position);
+				System.arraycopy(response, position, b, off, n);
+				position += n;
+				return n;
+			}
+		};
+
+		final OutputStream output = new OutputStream() {
+			@Override
+			public void write(int b) {
+				// no-op
+			}
+			@Override
+			public void write(byte[] b, int off, int len) {
+				// no-op
+			}
+			@Override
+			public void flush() {
+				position = 0;
+			}
+		};
+
+		Loopback(byte[] response) {
+			this.response = response;
+		}
+	}
+
+}
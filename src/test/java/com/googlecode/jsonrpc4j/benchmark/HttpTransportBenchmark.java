@@ -0,0 +1,96 @@
+package com.googlecode.jsonrpc4j.benchmark;
+
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.googlecode.jsonrpc4j.JavaHttpClientTransport;
+import com.googlecode.jsonrpc4j.JsonRpcHttpClient;
+import com.googlecode.jsonrpc4j.ProxyUtil;
+import com.googlecode.jsonrpc4j.loadtest.JsonRpcService;
+import com.googlecode.jsonrpc4j.loadtest.JsonRpcServiceImpl;
+import com.googlecode.jsonrpc4j.loadtest.ServletEngine;
+
+/**
+ * Compares the calls of eight threads through a {@link JsonRpcHttpClient}
+ * using its built in {@link java.net.HttpURLConnection} transport with
+ * the same calls over a {@link JavaHttpClientTransport} preferring
+ * HTTP/1.1 and HTTP/2, against the servlet of the load tests.
+ * <p>
+ * Run with {@code java -cp <test classpath> com.googlecode.jsonrpc4j.benchmark.HttpTransportBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class HttpTransportBenchmark {
+
+	// held on to, the level would be lost along with the logger otherwise
+	private static final Logger SERVICE_LOGGER = Logger.getLogger(JsonRpcServiceImpl.class.getName());
+
+	@Param({"urlconnection", "http/1.1", "http/2"})
+	public String transport;
+
+	private ServletEngine servletEngine;
+	private JsonRpcService service;
+
+	@Setup
+	public void setup()
+		throws Exception {
+		SERVICE_LOGGER.setLevel(Level.WARNING);
+		servletEngine = new ServletEngine();
+		servletEngine.startup();
+
+		URL url = new URL("http://127.0.0.1:"+ServletEngine.PORT+"/servlet");
+		JsonRpcHttpClient client = new JsonRpcHttpClient(url);
+		if (!transport.equals("urlconnection")) {
+			JavaHttpClientTransport httpClientTransport = new JavaHttpClientTransport(
+				transport.equals("http/2") ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1,
+				60 * 1000);
+			httpClientTransport.preconnect(url, 8);
+			client.setTransport(httpClientTransport);
+		}
+		service = ProxyUtil.createClientProxy(
+			JsonRpcService.class.getClassLoader(), JsonRpcService.class, client);
+	}
+
+	@TearDown
+	public void teardown()
+		throws Exception {
+		servletEngine.stop();
+	}
+
+	@Benchmark
+	public void call() {
+		service.doSomething();
+	}
+
+	public static void main(String[] args)
+		throws Exception {
+		new Runner(new OptionsBuilder()
+			.include(HttpTransportBenchmark.class.getSimpleName())
+			.build()).run();
+	}
+
+}
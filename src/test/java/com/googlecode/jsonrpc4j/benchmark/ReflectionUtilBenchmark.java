@@ -0,0 +1,177 @@
+package com.googlecode.jsonrpc4j.benchmark;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.googlecode.jsonrpc4j.JsonRpcParam;
+import com.googlecode.jsonrpc4j.ReflectionUtil;
+
+/**
+ * Multi-threaded lookup throughput of the {@link ReflectionUtil}
+ * caches compared with the plain {@link HashMap} caches they
+ * replaced.  The legacy caches are fully populated in the setup
+ * so that the benchmark only measures (racy but non-corrupting)
+ * reads; with concurrent writes they can corrupt themselves.
+ * <p>
+ * Run with {@code java -cp <test classpath> com.googlecode.jsonrpc4j.benchmark.ReflectionUtilBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class ReflectionUtilBenchmark {
+
+	private Class<?>[] interfaces;
+	private Method method;
+
+	@Setup
+	public void setup()
+		throws Exception {
+		interfaces = new Class<?>[] {Service.class};
+		method = Service.class.getMethod("echo", String.class, int.class);
+
+		// populate both caches
+		ReflectionUtil.findMethods(interfaces, "echo");
+		ReflectionUtil.getParameterTypes(method);
+		ReflectionUtil.getParameterAnnotations(method);
+		LegacyReflectionUtil.findMethods(interfaces, "echo");
+		LegacyReflectionUtil.getParameterTypes(method);
+		LegacyReflectionUtil.getParameterAnnotations(method);
+	}
+
+	@Benchmark
+	public Object findMethods() {
+		return ReflectionUtil.findMethods(interfaces, "echo");
+	}
+
+	@Benchmark
+	public Object findMethodsLegacy() {
+		return LegacyReflectionUtil.findMethods(interfaces, "echo");
+	}
+
+	@Benchmark
+	public Object getParameterTypes() {
+		return ReflectionUtil.getParameterTypes(method);
+	}
+
+	@Benchmark
+	public Object getParameterTypesLegacy() {
+		return LegacyReflectionUtil.getParameterTypes(method);
+	}
+
+	@Benchmark
+	public Object getParameterAnnotations() {
+		return ReflectionUtil.getParameterAnnotations(method);
+	}
+
+	@Benchmark
+	public Object getParameterAnnotationsLegacy() {
+		return LegacyReflectionUtil.getParameterAnnotations(method);
+	}
+
+	public static void main(String[] args)
+		throws Exception {
+		new Runner(new OptionsBuilder()
+			.include(ReflectionUtilBenchmark.class.getSimpleName())
+			.build()).run();
+	}
+
+	public interface Service {
+		String echo(@JsonRpcParam("value") String value, @JsonRpcParam("times") int times);
+		String echo(@JsonRpcParam("value") String value);
+		void ping();
+	}
+
+	/**
+	 * The previous, {@link HashMap} based, caches.
+	 */
+	private static class LegacyReflectionUtil {
+
+		private static Map<String, Set<Method>> methodCache
+			= new HashMap<String, Set<Method>>();
+
+		private static Map<Method, List<Class<?>>> parameterTypeCache
+			= new HashMap<Method, List<Class<?>>>();
+
+		private static Map<Method, List<List<Annotation>>> methodParamAnnotationCache
+			= new HashMap<Method, List<List<Annotation>>>();
+
+		static Set<Method> findMethods(Class<?>[] clazzes, String name) {
+			StringBuilder sb = new StringBuilder();
+			for (Class<?> clazz : clazzes) {
+				sb.append(clazz.getName()).append("::");
+			}
+			String cacheKey = sb.append(name).toString();
+			if (methodCache.containsKey(cacheKey)) {
+				return methodCache.get(cacheKey);
+			}
+			Set<Method> methods = new HashSet<Method>();
+			for (Class<?> clazz : clazzes) {
+				for (Method method : clazz.getMethods()) {
+					if (method.getName().equals(name)) {
+						methods.add(method);
+					}
+				}
+			}
+			methods = Collections.unmodifiableSet(methods);
+			methodCache.put(cacheKey, methods);
+			return methods;
+		}
+
+		static List<Class<?>> getParameterTypes(Method method) {
+			if (parameterTypeCache.containsKey(method)) {
+				return parameterTypeCache.get(method);
+			}
+			List<Class<?>> types = new ArrayList<Class<?>>();
+			for (Class<?> type : method.getParameterTypes()) {
+				types.add(type);
+			}
+			types = Collections.unmodifiableList(types);
+			parameterTypeCache.put(method, types);
+			return types;
+		}
+
+		static List<List<Annotation>> getParameterAnnotations(Method method) {
+			if (methodParamAnnotationCache.containsKey(method)) {
+				return methodParamAnnotationCache.get(method);
+			}
+			List<List<Annotation>> annotations = new ArrayList<List<Annotation>>();
+			for (Annotation[] paramAnnotations : method.getParameterAnnotations()) {
+				List<Annotation> listAnnotations = new ArrayList<Annotation>();
+				for (Annotation a : paramAnnotations) {
+					listAnnotations.add(a);
+				}
+				annotations.add(listAnnotations);
+			}
+			annotations = Collections.unmodifiableList(annotations);
+			methodParamAnnotationCache.put(method, annotations);
+			return annotations;
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.googlecode.jsonrpc4j.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.googlecode.jsonrpc4j.JsonRpcClient;
+
+/**
+ * Measures the throughput of {@link JsonRpcClient} encoding requests,
+ * with generated ids, by streaming them from the arguments and by
+ * building them as a tree as it does while a
+ * {@link JsonRpcClient.RequestListener} is set.  Run with
+ * {@code -prof gc} to compare the bytes allocated per call, and
+ * with {@code -t} to see how it scales with the calling threads.
+ * <p>
+ * Run with {@code java -cp <test classpath> com.googlecode.jsonrpc4j.benchmark.RequestEncodingBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestEncodingBenchmark {
+
+	private Object[] arguments;
+	private JsonRpcClient treeClient;
+	private JsonRpcClient streamingClient;
+
+	@Setup
+	public void setup() {
+		ObjectMapper mapper = new ObjectMapper();
+		Item item = new Item();
+		item.id = 42;
+		item.name = "item 42";
+		item.price = 63d;
+		arguments = new Object[] {"account-1234", 10, item};
+
+		treeClient = new JsonRpcClient(mapper);
+		treeClient.setRequestListener(new JsonRpcClient.RequestListener() {
+			public void onBeforeRequestSent(JsonRpcClient client, ObjectNode request) {
+			}
+			public void onBeforeResponseProcessed(JsonRpcClient client, ObjectNode response) {
+			}
+		});
+		streamingClient = new JsonRpcClient(mapper);
+	}
+
+	@Benchmark
+	public void tree()
+		throws IOException {
+		treeClient.invoke("addItem", arguments, NullOutputStream.INSTANCE);
+	}
+
+	@Benchmark
+	public void streaming()
+		throws IOException {
+		streamingClient.invoke("addItem", arguments, NullOutputStream.INSTANCE);
+	}
+
+	public static void main(String[] args)
+		throws Exception {
+		new Runner(new OptionsBuilder()
+			.include(RequestEncodingBenchmark.class.getSimpleName())
+			.build()).run();
+	}
+
+	public static class Item {
+		public long id;
+		public String name;
+		public double price;
+	}
+
+	/**
+	 * Discards everything written to it.
+	 */
+	static class NullOutputStream
+		extends OutputStream {
+
+		static final NullOutputStream INSTANCE = new NullOutputStream();
+
+		@Override
+		public void write(int b) {
+			// no-op
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			// no-op
+		}
+	}
+
+}
@@ -0,0 +1,136 @@
+package com.googlecode.jsonrpc4j.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.googlecode.jsonrpc4j.JsonRpcServer;
+import com.googlecode.jsonrpc4j.ProxyUtil;
+
+/**
+ * Measures the throughput of {@link JsonRpcServer} handling a small
+ * request for a method of a single service, for one of several
+ * overloads of a method, and for a method of a composite service
+ * made by {@link ProxyUtil#createCompositeServiceProxy(ClassLoader, Object[], Class[], boolean)},
+ * as well as calling the composite service's proxy directly.
+ * <p>
+ * Run with {@code java -cp <test classpath> com.googlecode.jsonrpc4j.benchmark.ServerDispatchBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerDispatchBenchmark {
+
+	private byte[] singleRequest;
+	private byte[] overloadedRequest;
+	private byte[] compositeRequest;
+	private JsonRpcServer singleServer;
+	private JsonRpcServer compositeServer;
+	private Multiplier compositeProxy;
+
+	@Setup
+	public void setup()
+		throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		singleRequest = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"add\",\"params\":[1,2,3]}"
+			.getBytes("UTF-8");
+		overloadedRequest = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"add\",\"params\":[1,2]}"
+			.getBytes("UTF-8");
+		compositeRequest = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"multiply\",\"params\":[1,2]}"
+			.getBytes("UTF-8");
+
+		singleServer = new JsonRpcServer(mapper, new CalculatorImpl(), Calculator.class);
+		Object compositeService = ProxyUtil.createCompositeServiceProxy(
+			getClass().getClassLoader(),
+			new Object[] {new CalculatorImpl(), new MultiplierImpl()},
+			new Class<?>[] {Calculator.class, Multiplier.class},
+			false);
+		compositeServer = new JsonRpcServer(mapper, compositeService);
+		compositeProxy = (Multiplier)compositeService;
+	}
+
+	@Benchmark
+	public void single()
+		throws IOException {
+		singleServer.handle(new ByteArrayInputStream(singleRequest),
+			RequestEncodingBenchmark.NullOutputStream.INSTANCE);
+	}
+
+	@Benchmark
+	public void overloaded()
+		throws IOException {
+		singleServer.handle(new ByteArrayInputStream(overloadedRequest),
+			RequestEncodingBenchmark.NullOutputStream.INSTANCE);
+	}
+
+	@Benchmark
+	public void composite()
+		throws IOException {
+		compositeServer.handle(new ByteArrayInputStream(compositeRequest),
+			RequestEncodingBenchmark.NullOutputStream.INSTANCE);
+	}
+
+	@Benchmark
+	public int compositeProxy() {
+		return compositeProxy.multiply(6, 7);
+	}
+
+	public static void main(String[] args)
+		throws Exception {
+		new Runner(new OptionsBuilder()
+			.include(ServerDispatchBenchmark.class.getSimpleName())
+			.build()).run();
+	}
+
+	public interface Calculator {
+		int add(int a, int b, int c);
+		int add(int a, int b);
+		String add(String a, String b);
+		int add(int a);
+	}
+
+	public interface Multiplier {
+		int multiply(int a, int b);
+	}
+
+	public static class CalculatorImpl
+		implements Calculator {
+		public int add(int a, int b, int c) {
+			return a + b + c;
+		}
+		public int add(int a, int b) {
+			return a + b;
+		}
+		public String add(String a, String b) {
+			return a + b;
+		}
+		public int add(int a) {
+			return a;
+		}
+	}
+
+	public static class MultiplierImpl
+		implements Multiplier {
+		public int multiply(int a, int b) {
+			return a * b;
+		}
+	}
+
+}
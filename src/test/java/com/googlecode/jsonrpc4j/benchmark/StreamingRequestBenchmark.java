@@ -0,0 +1,131 @@
+package com.googlecode.jsonrpc4j.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.googlecode.jsonrpc4j.JsonRpcServer;
+
+/**
+ * Compares {@link JsonRpcServer} reading requests into a tree
+ * with streaming them ({@link JsonRpcServer#setStreamingRequests(boolean)})
+ * for a request whose {@code params} hold a list of beans.
+ * Run with {@code -prof gc} to compare allocation rates.
+ * <p>
+ * Run with {@code java -cp <test classpath> com.googlecode.jsonrpc4j.benchmark.StreamingRequestBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamingRequestBenchmark {
+
+	@Param({"10", "1000", "50000"})
+	public int size;
+
+	private byte[] request;
+	private JsonRpcServer treeServer;
+	private JsonRpcServer streamingServer;
+
+	@Setup
+	public void setup()
+		throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+
+		// build the request
+		ObjectNode node = mapper.createObjectNode();
+		node.put("jsonrpc", "2.0");
+		node.put("id", 1);
+		node.put("method", "count");
+		ArrayNode items = mapper.createArrayNode();
+		for (int i=0; i<size; i++) {
+			ObjectNode item = items.addObject();
+			item.put("id", i);
+			item.put("name", "item "+i);
+			item.put("price", i * 1.5d);
+		}
+		node.putArray("params").add(items);
+		request = mapper.writeValueAsBytes(node);
+
+		// and the servers
+		treeServer = new JsonRpcServer(mapper, new ServiceImpl(), Service.class);
+		streamingServer = new JsonRpcServer(mapper, new ServiceImpl(), Service.class);
+		streamingServer.setStreamingRequests(true);
+	}
+
+	@Benchmark
+	public void tree()
+		throws IOException {
+		treeServer.handle(new ByteArrayInputStream(request), NullOutputStream.INSTANCE);
+	}
+
+	@Benchmark
+	public void streaming()
+		throws IOException {
+		streamingServer.handle(new ByteArrayInputStream(request), NullOutputStream.INSTANCE);
+	}
+
+	public static void main(String[] args)
+		throws Exception {
+		new Runner(new OptionsBuilder()
+			.include(StreamingRequestBenchmark.class.getSimpleName())
+			.build()).run();
+	}
+
+	public interface Service {
+		int count(List<Item> items);
+	}
+
+	public static class ServiceImpl implements Service {
+		public int count(List<Item> items) {
+			return items.size();
+		}
+	}
+
+	public static class Item {
+		public long id;
+		public String name;
+		public double price;
+	}
+
+	/**
+	 * Discards everything written to it.
+	 */
+	static class NullOutputStream
+		extends OutputStream {
+
+		static final NullOutputStream INSTANCE = new NullOutputStream();
+
+		@Override
+		public void write(int b) {
+			// no-op
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			// no-op
+		}
+	}
+
+}
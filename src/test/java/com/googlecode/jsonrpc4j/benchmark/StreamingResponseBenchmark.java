@@ -0,0 +1,110 @@
+package com.googlecode.jsonrpc4j.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.googlecode.jsonrpc4j.JsonRpcClient;
+
+/**
+ * Compares {@link JsonRpcClient} reading responses into a tree,
+ * as it does while a {@link JsonRpcClient.RequestListener} is set,
+ * with streaming them, for a response whose {@code result} is a
+ * list of beans.  Run with {@code -prof gc} to compare allocation rates.
+ * <p>
+ * Run with {@code java -cp <test classpath> com.googlecode.jsonrpc4j.benchmark.StreamingResponseBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamingResponseBenchmark {
+
+	private static final Type LIST_OF_ITEMS = new TypeReference<List<Item>>() {}.getType();
+
+	@Param({"10", "1000", "50000"})
+	public int size;
+
+	private byte[] response;
+	private JsonRpcClient treeClient;
+	private JsonRpcClient streamingClient;
+
+	@Setup
+	public void setup() {
+		ObjectMapper mapper = new ObjectMapper();
+
+		// build the response
+		ObjectNode node = mapper.createObjectNode();
+		node.put("jsonrpc", "2.0");
+		node.put("id", 1);
+		ArrayNode items = node.putArray("result");
+		for (int i=0; i<size; i++) {
+			ObjectNode item = items.addObject();
+			item.put("id", i);
+			item.put("name", "item "+i);
+			item.put("price", i * 1.5d);
+		}
+		try {
+			response = mapper.writeValueAsBytes(node);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+
+		// and the clients
+		treeClient = new JsonRpcClient(mapper);
+		treeClient.setRequestListener(new JsonRpcClient.RequestListener() {
+			public void onBeforeRequestSent(JsonRpcClient client, ObjectNode request) {
+			}
+			public void onBeforeResponseProcessed(JsonRpcClient client, ObjectNode response) {
+			}
+		});
+		streamingClient = new JsonRpcClient(mapper);
+	}
+
+	@Benchmark
+	public Object tree()
+		throws Throwable {
+		return treeClient.readResponse(LIST_OF_ITEMS, new ByteArrayInputStream(response));
+	}
+
+	@Benchmark
+	public Object streaming()
+		throws Throwable {
+		return streamingClient.readResponse(LIST_OF_ITEMS, new ByteArrayInputStream(response));
+	}
+
+	public static void main(String[] args)
+		throws Exception {
+		new Runner(new OptionsBuilder()
+			.include(StreamingResponseBenchmark.class.getSimpleName())
+			.build()).run();
+	}
+
+	public static class Item {
+		public long id;
+		public String name;
+		public double price;
+	}
+
+}
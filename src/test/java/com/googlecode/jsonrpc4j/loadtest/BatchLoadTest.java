@@ -0,0 +1,132 @@
+package com.googlecode.jsonrpc4j.loadtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.googlecode.jsonrpc4j.JsonRpcServer;
+
+/**
+ * Compares the latency of a batch of I/O bound calls handled
+ * sequentially with the same batch handled on a batch executor.
+ * The latencies are only logged, what's checked is how many calls
+ * overlap, which doesn't depend on how loaded the machine is.
+ */
+public class BatchLoadTest {
+
+	private static final Logger LOGGER = Logger.getLogger(BatchLoadTest.class.getName());
+
+	private static final int BATCH_SIZE = 100;
+	private static final int NOTIFICATION_EVERY = 10;
+	private static final long CALL_MILLIS = 20;
+
+	private ObjectMapper mapper;
+	private ExecutorService executor;
+	private byte[] batch;
+
+	@Before
+	public void setup() throws Exception {
+		mapper = new ObjectMapper();
+		executor = Executors.newFixedThreadPool(32);
+
+		// every tenth element is a notification
+		ArrayNode requests = mapper.createArrayNode();
+		for (int i=0; i<BATCH_SIZE; i++) {
+			ObjectNode request = requests.addObject();
+			request.put("jsonrpc", "2.0");
+			request.put("method", "slowEcho");
+			request.putArray("params").add(i).add(CALL_MILLIS);
+			if (i % NOTIFICATION_EVERY != 0) {
+				request.put("id", i);
+			}
+		}
+		batch = mapper.writeValueAsBytes(requests);
+	}
+
+	@After
+	public void teardown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void loadTestBatchExecutor() throws Exception {
+		SlowServiceImpl sequentialService = new SlowServiceImpl();
+		SlowServiceImpl concurrentService = new SlowServiceImpl();
+		JsonRpcServer sequential = new JsonRpcServer(
+			mapper, sequentialService, SlowService.class);
+		JsonRpcServer concurrent = new JsonRpcServer(
+			mapper, concurrentService, SlowService.class);
+		concurrent.setBatchExecutor(executor);
+		concurrent.setMaxBatchParallelism(16);
+		concurrent.setMaxServerParallelism(32);
+
+		long sequentialMillis = timeBatch(sequential);
+		long concurrentMillis = timeBatch(concurrent);
+		LOGGER.info("Batch of "+BATCH_SIZE+" calls: sequential "+sequentialMillis
+			+"ms, concurrent "+concurrentMillis+"ms");
+
+		// calls overlap on the executor, up to the batch's limit
+		assertEquals(1, sequentialService.peak.get());
+		assertTrue(concurrentService.peak.get() > 1);
+		assertTrue(concurrentService.peak.get() <= 16);
+	}
+
+	private long timeBatch(JsonRpcServer server) throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		long start = System.nanoTime();
+		server.handle(new ByteArrayInputStream(batch), baos);
+		long millis = (System.nanoTime() - start) / 1000000;
+
+		// responses are in request order without the notifications
+		JsonNode responses = mapper.readTree(baos.toByteArray());
+		assertEquals(BATCH_SIZE - BATCH_SIZE / NOTIFICATION_EVERY, responses.size());
+		int previous = -1;
+		for (JsonNode response : responses) {
+			int id = response.get("id").intValue();
+			assertTrue(id > previous);
+			assertTrue(id % NOTIFICATION_EVERY != 0);
+			assertEquals(id, response.get("result").intValue());
+			previous = id;
+		}
+		return millis;
+	}
+
+	public interface SlowService {
+		int slowEcho(int value, long millis);
+	}
+
+	public static class SlowServiceImpl implements SlowService {
+		private final AtomicInteger running = new AtomicInteger();
+		private final AtomicInteger peak = new AtomicInteger();
+
+		public int slowEcho(int value, long millis) {
+			int now = running.incrementAndGet();
+			for (int max = peak.get(); now > max; max = peak.get()) {
+				peak.compareAndSet(max, now);
+			}
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				running.decrementAndGet();
+			}
+			return value;
+		}
+	}
+
+}
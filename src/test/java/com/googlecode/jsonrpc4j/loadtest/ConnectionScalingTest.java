@@ -0,0 +1,135 @@
+package com.googlecode.jsonrpc4j.loadtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ServerSocketFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.googlecode.jsonrpc4j.JsonRpcClient;
+import com.googlecode.jsonrpc4j.JsonRpcServer;
+import com.googlecode.jsonrpc4j.ProxyUtil;
+import com.googlecode.jsonrpc4j.StreamServer;
+
+/**
+ * Opens {@code jsonrpc4j.scalingTest.clients} (10k by default)
+ * concurrent connections to a {@link StreamServer} running on
+ * virtual threads and has every one of them make a call at the
+ * same time.  Both ends of every connection live in this JVM, so
+ * it needs twice as many file descriptors as clients, more than
+ * the usual limit.  It only runs when asked for with
+ * {@code -Djsonrpc4j.scalingTest=true}, and is skipped on
+ * runtimes without virtual threads.
+ */
+public class ConnectionScalingTest {
+
+	private static final int CLIENTS = Integer.getInteger("jsonrpc4j.scalingTest.clients", 10000);
+
+	private Logger streamServerLogger;
+	private Level streamServerLevel;
+
+	@Before
+	public void setup() {
+
+		// one log line per connection is too much here
+		streamServerLogger = Logger.getLogger(StreamServer.class.getName());
+		streamServerLevel = streamServerLogger.getLevel();
+		streamServerLogger.setLevel(Level.OFF);
+	}
+
+	@After
+	public void teardown() {
+		streamServerLogger.setLevel(streamServerLevel);
+	}
+
+	@Test
+	public void loadTestVirtualThreadConnections() throws Exception {
+		assumeTrue(Boolean.getBoolean("jsonrpc4j.scalingTest"));
+		ExecutorService clients = newVirtualThreadExecutor();
+		assumeTrue(clients!=null);
+
+		// start the server
+		ServerSocket serverSocket = ServerSocketFactory.getDefault()
+			.createServerSocket(0, 4096, InetAddress.getByName("127.0.0.1"));
+		StreamServer streamServer = new StreamServer(
+			new JsonRpcServer(new EchoServiceImpl(), EchoService.class), 10, serverSocket);
+		streamServer.setUseVirtualThreads(true);
+		streamServer.start();
+
+		Socket[] sockets = new Socket[CLIENTS];
+		try {
+			assertTrue(streamServer.isUsingVirtualThreads());
+
+			// open every connection before using any of them
+			JsonRpcClient jsonRpcClient = new JsonRpcClient();
+			final EchoService[] services = new EchoService[CLIENTS];
+			for (int i=0; i<CLIENTS; i++) {
+				sockets[i] = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+				services[i] = ProxyUtil.createClientProxy(
+					EchoService.class.getClassLoader(), EchoService.class,
+					jsonRpcClient, sockets[i]);
+			}
+
+			// then call through all of them at once
+			long start = System.nanoTime();
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i=0; i<CLIENTS; i++) {
+				final int client = i;
+				results.add(clients.submit(new Callable<String>() {
+					public String call() {
+						return services[client].echo("client "+client);
+					}
+				}));
+			}
+			for (int i=0; i<CLIENTS; i++) {
+				assertEquals("client "+i, results.get(i).get());
+			}
+			Logger.getLogger(ConnectionScalingTest.class.getName()).info(
+				CLIENTS+" concurrent connections served in "+(System.nanoTime() - start) / 1000000+"ms");
+		} finally {
+			streamServer.stop();
+			clients.shutdownNow();
+			for (Socket socket : sockets) {
+				if (socket!=null) {
+					socket.close();
+				}
+			}
+		}
+	}
+
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return ExecutorService.class.cast(
+				Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null));
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	public interface EchoService {
+		String echo(String value);
+	}
+
+	public static class EchoServiceImpl implements EchoService {
+		public String echo(String value) {
+			return value;
+		}
+	}
+
+}